@@ -0,0 +1,252 @@
+package com.perficient.meetingschedulear.renderer;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.Matrix;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.perficient.meetingschedulear.R;
+import com.perficient.meetingschedulear.model.MeetingRoomInfo;
+import com.perficient.meetingschedulear.task.SnapshotSaver;
+import com.perficient.meetingschedulear.ui.activity.MainActivity;
+import com.perficient.meetingschedulear.util.ARManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
+import javax.microedition.khronos.egl.EGLSurface;
+
+import cn.easyar.Matrix44F;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the renderers on a real GL context, init, draw and release again and again, and checks
+ * that every GL object they create is deleted: the registry is empty, and the driver knows none
+ * of the handles any more, so an object created without being registered is caught too.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GLResourceLeakTest {
+
+    private static final int CYCLES = 5;
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    /**
+     * Handles checked with glIs*, far more than the renderers create in a context
+     */
+    private static final int MAX_HANDLE = 1024;
+
+    private static final long UPLOAD_TIMEOUT_MS = 10000;
+
+    /**
+     * Perspective projection with fovy of 60 degrees, aspect of 16:9, near 0.2 and far 500
+     */
+    private static final float[] PROJECTION = {
+            0.974f, 0, 0, 0,
+            0, 1.732f, 0, 0,
+            0, 0, -1.0008f, -1,
+            0, 0, -0.4002f, 0};
+
+    private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+    private static final int EGL_OPENGL_ES2_BIT = 0x0004;
+
+    /**
+     * Launched by the test which needs EasyAR, the activity initializes the engine
+     */
+    @Rule
+    public ActivityTestRule<MainActivity> mActivityRule = new ActivityTestRule<>(MainActivity.class, false, false);
+
+    private Context mContext;
+
+    private EGL10 mEgl;
+    private EGLDisplay mDisplay;
+    private EGLContext mEglContext;
+    private EGLSurface mSurface;
+
+    @Before
+    public void setUp() throws Exception {
+        mContext = InstrumentationRegistry.getTargetContext();
+
+        mEgl = (EGL10) EGLContext.getEGL();
+        mDisplay = mEgl.eglGetDisplay(EGL10.EGL_DEFAULT_DISPLAY);
+        assertTrue(mEgl.eglInitialize(mDisplay, new int[2]));
+        int[] attrib = {EGL10.EGL_RED_SIZE, 8, EGL10.EGL_GREEN_SIZE, 8, EGL10.EGL_BLUE_SIZE, 8,
+                EGL10.EGL_DEPTH_SIZE, 16, EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT,
+                EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT, EGL10.EGL_NONE};
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] configCount = new int[1];
+        assertTrue(mEgl.eglChooseConfig(mDisplay, attrib, configs, 1, configCount));
+        assertTrue("no pbuffer config", configCount[0] > 0);
+
+        // the same versions as GLView, 3.0 first so the pixel buffers and the program binaries run too
+        mEglContext = mEgl.eglCreateContext(mDisplay, configs[0], EGL10.EGL_NO_CONTEXT,
+                new int[]{EGL_CONTEXT_CLIENT_VERSION, 3, EGL10.EGL_NONE});
+        if (mEglContext == null || mEglContext == EGL10.EGL_NO_CONTEXT) {
+            mEglContext = mEgl.eglCreateContext(mDisplay, configs[0], EGL10.EGL_NO_CONTEXT,
+                    new int[]{EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE});
+        }
+        assertNotEquals(EGL10.EGL_NO_CONTEXT, mEglContext);
+        mSurface = mEgl.eglCreatePbufferSurface(mDisplay, configs[0],
+                new int[]{EGL10.EGL_WIDTH, WIDTH, EGL10.EGL_HEIGHT, HEIGHT, EGL10.EGL_NONE});
+        assertTrue(mEgl.eglMakeCurrent(mDisplay, mSurface, mSurface, mEglContext));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mEgl.eglMakeCurrent(mDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT);
+        mEgl.eglDestroySurface(mDisplay, mSurface);
+        mEgl.eglDestroyContext(mDisplay, mEglContext);
+        mEgl.eglTerminate(mDisplay);
+    }
+
+    @Test
+    public void renderers_initDrawRelease_leaveNothing() throws Exception {
+        SnapshotSaver saver = new SnapshotSaver(mContext);
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            GLStateCache glState = new GLStateCache();
+            GLResourceRegistry resources = new GLResourceRegistry(glState);
+            ProgramManager programs = new ProgramManager(mContext, resources);
+            BlackboardRenderer renderer = new BlackboardRenderer(mContext, glState, programs, resources);
+            FrameCapture capture = new FrameCapture(glState, resources, saver);
+
+            drawBoards(renderer, capture, "2:00 PM - 3:00 PM Review");
+            // a new schedule, only the changed rows are uploaded
+            drawBoards(renderer, capture, "4:00 PM - 5:00 PM Retro");
+            // back to the first schedule on a tiny budget, a layer is evicted once it's not drawn
+            renderer.setTextureBudget(1);
+            drawBoards(renderer, capture, "2:00 PM - 3:00 PM Review");
+
+            renderer.dispose();
+            capture.dispose();
+            resources.releaseAll();
+
+            assertEquals("leak after cycle " + cycle + ", " + resources, 0, resources.getLiveCount());
+            assertEquals("leak after cycle " + cycle + ", " + resources, 0, resources.getLiveBytes());
+            assertNoObjects("cycle " + cycle);
+        }
+        saver.shutdown();
+    }
+
+    @Test
+    public void arManager_initGLRenderReleaseGL_leavesNothing() throws Exception {
+        mActivityRule.launchActivity(null);
+        ARManager manager = new ARManager(mContext);
+        int liveAfterFirstCycle = -1;
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            manager.initGL();
+            manager.resizeGL(WIDTH, HEIGHT);
+            for (int frame = 0; frame < 10; frame++) {
+                manager.render();
+            }
+            manager.releaseGL();
+
+            GLResourceRegistry resources = manager.getResourceRegistry();
+            assertEquals("leak after cycle " + cycle + ", " + resources, 0, resources.getLiveCount());
+            assertEquals("leak after cycle " + cycle + ", " + resources, 0, resources.getLiveBytes());
+            // EasyAR may keep its own objects for the context, but they must not pile up
+            int live = countObjects();
+            if (liveAfterFirstCycle < 0) {
+                liveAfterFirstCycle = live;
+            }
+            assertEquals("GL objects after cycle " + cycle, liveAfterFirstCycle, live);
+        }
+        manager.dispose();
+    }
+
+    /**
+     * Draw three boards until all their textures are uploaded: one with glyph text, one with a
+     * text layer, and one with a schedule too long for the board
+     */
+    private void drawBoards(BlackboardRenderer renderer, FrameCapture capture, String lastMeeting) {
+        Matrix44F projection = new Matrix44F();
+        projection.data = PROJECTION.clone();
+        renderer.setProjection(projection, HEIGHT);
+
+        List<String> longSchedule = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            longSchedule.add((8 + i / 2) + ":" + (i % 2 == 0 ? "00" : "30") + " Sync " + i);
+        }
+        MeetingRoomInfo[] rooms = {
+                new MeetingRoomInfo("Room A", Arrays.asList("10:00 AM - 11:00 AM Standup", lastMeeting)),
+                new MeetingRoomInfo("会议室 B", Arrays.asList("10:00 AM - 11:00 AM 周会", lastMeeting)),
+                new MeetingRoomInfo("Room C", longSchedule)};
+        int[] drawables = {R.drawable.texture_blackboard, R.drawable.texture_chalkboard, R.drawable.texture_blackboard};
+        Board[] boards = new Board[rooms.length];
+        TrackedTarget[] targets = new TrackedTarget[rooms.length];
+        for (int i = 0; i < rooms.length; i++) {
+            boards[i] = new Board();
+            targets[i] = new TrackedTarget(i + 1, "target" + i, 0.2f, 0.15f);
+        }
+
+        long deadline = SystemClock.uptimeMillis() + UPLOAD_TIMEOUT_MS;
+        boolean captured = false;
+        do {
+            renderer.beginFrame();
+            for (int i = 0; i < boards.length; i++) {
+                boards[i].set(targets[i].getWidth(), targets[i].getHeight());
+                float[] pose = boards[i].getPose();
+                Matrix.setIdentityM(pose, 0);
+                pose[12] = (i - 1) * 0.25f;
+                pose[14] = -0.6f;
+                boards[i].updateMVP(PROJECTION);
+                renderer.prepare(boards[i], targets[i], rooms[i], drawables[i]);
+            }
+            GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+            renderer.render(boards, boards.length);
+            if (!captured) {
+                capture.request(Bitmap.CompressFormat.JPEG, null);
+                captured = true;
+            }
+            capture.onFrameDrawn(WIDTH, HEIGHT);
+            SystemClock.sleep(10);
+        } while ((renderer.hasPendingUploads() || capture.isBusy()) && SystemClock.uptimeMillis() < deadline);
+
+        assertFalse("boards not uploaded", renderer.hasPendingUploads());
+        assertEquals(GLES20.GL_NO_ERROR, GLES20.glGetError());
+    }
+
+    private void assertNoObjects(String message) {
+        for (int handle = 1; handle <= MAX_HANDLE; handle++) {
+            assertFalse(message + ": texture " + handle, GLES20.glIsTexture(handle));
+            assertFalse(message + ": buffer " + handle, GLES20.glIsBuffer(handle));
+            assertFalse(message + ": program " + handle, GLES20.glIsProgram(handle));
+            assertFalse(message + ": shader " + handle, GLES20.glIsShader(handle));
+        }
+    }
+
+    private static int countObjects() {
+        int count = 0;
+        for (int handle = 1; handle <= MAX_HANDLE; handle++) {
+            if (GLES20.glIsTexture(handle)) {
+                count++;
+            }
+            if (GLES20.glIsBuffer(handle)) {
+                count++;
+            }
+            if (GLES20.glIsProgram(handle)) {
+                count++;
+            }
+            if (GLES20.glIsShader(handle)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -7,6 +7,11 @@ public class Constants {
      * */
     public static final String PREF_MEETING_INFO = "pref_meeting_info";
 
+    /**
+     * SharedPreference file name for the AR state kept across sessions, e.g. the last zone
+     * */
+    public static final String PREF_AR_STATE = "pref_ar_state";
+
     /**
      *
      * */
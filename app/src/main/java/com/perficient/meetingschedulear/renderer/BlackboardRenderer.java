@@ -2,19 +2,26 @@ package com.perficient.meetingschedulear.renderer;
 
 
 import android.content.Context;
+import android.graphics.Color;
+import android.opengl.ETC1Util;
 import android.opengl.GLES20;
+import android.os.SystemClock;
 import android.support.annotation.DrawableRes;
+import android.util.Log;
 
 import com.perficient.meetingschedulear.model.MeetingRoomInfo;
+import com.perficient.meetingschedulear.task.BoardComposer;
+import com.perficient.meetingschedulear.util.IntObjectMap;
 import com.perficient.meetingschedulear.util.TextureHelper;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import cn.easyar.Matrix44F;
-import cn.easyar.Vec2F;
 
 /**
  * VBO: Vertex Buffer Object
@@ -38,25 +45,21 @@ public class BlackboardRenderer {
      */
     private int mColorHandle;
     /**
-     * This will be used to pass in the modelview matrix.
-     */
-    private int mMVMatrixHandle;
-    /**
-     * This will be used to pass in the transformation matrix.
+     * This will be used to pass in projection * modelview of each board, see {@link Board#getMVP()}.
      */
     private int mMVPMatrixHandle;
     /**
-     * This will be used to pass in the texture.
+     * This will be used to pass in the background texture.
      */
     private int mTextureUniformHandle;
     /**
-     * This will be used to pass in model texture coordinate information.
+     * This will be used to pass in the text layer.
      */
-    private int mTextureCoordinateHandle;
+    private int mTextTextureUniformHandle;
     /**
-     * This is a handle to our texture data.
+     * This will be used to pass in model texture coordinate information.
      */
-    private int mTextureDataHandle;
+    private int mTextureCoordinateHandle;
 
     /**
      * VBO for cube coordinate
@@ -71,52 +74,137 @@ public class BlackboardRenderer {
      */
     private int mFacesVBO;
     /**
-     * VBO for cube's text
+     * VBO for cube texture coordinates
      */
-    private int mTextVBO;
-
-    private FloatBuffer mCubeTextureCoordinates;
-
-    private final FloatBuffer mCubeTextureCoordinatesForPlane;
-
-    private final int mTextureCoordinateDataSize = 2;
+    private int mTexCoordVBO;
+    /**
+     * This will be used to pass in the size of the board.
+     */
+    private int mScaleHandle;
+    /**
+     * This will be used to pass in the scroll window of the texture.
+     */
+    private int mScrollHandle;
+    /**
+     * This will be used to pass in the scroll offset of the meeting list.
+     */
+    private int mScrollOffsetHandle;
 
     /**
-     * Notice that the y axis of the texture coordinate is on the opposite direction
-     * compared to the android coordinate system, so we have to adjust it to
-     * make the texture looks normal on the object.
+     * Index count of the triangles in {@link #mFacesVBO}
      */
-    final float[] mCubeTextureCoordinateData =
-            {
-                    // Front face
-                    0.0f, 0.0f,
-                    0.0f, 1.0f,
-                    1.0f, 0.0f,
-                    0.0f, 1.0f,
-                    1.0f, 1.0f,
-                    1.0f, 0.0f,
-            };
+    private int mFaceIndexCount;
+
+    private final int mTextureCoordinateDataSize = 2;
 
     /**
+     * Texture coordinates of the 8 cube vertices, the +z face shows the whole texture.
      * Because images have a Y axis pointing downward (values increase as you move down the image) while
      * OpenGL has a Y axis pointing upward, we adjust for that here by flipping the Y axis.
      */
-    private final float[] mCubeTextureCoordinateDataForPlane =
+    private final float[][] mCubeTextureCoordinateData =
             {
-                    // Front face
-                    0.0f, 0.0f,
-                    0.0f, 25.0f,
-                    25.0f, 0.0f,
-                    0.0f, 25.0f,
-                    25.0f, 25.0f,
-                    25.0f, 0.0f,
+                    // +z
+                    {1.0f, 0.0f},
+                    {1.0f, 1.0f},
+                    {0.0f, 1.0f},
+                    {0.0f, 0.0f},
+                    // -z
+                    {1.0f, 0.0f},
+                    {1.0f, 1.0f},
+                    {0.0f, 1.0f},
+                    {0.0f, 0.0f},
             };
 
     private Context mContext;
 
+    /**
+     * Textures of the boards we have seen, so switching between targets won't upload again
+     */
+    private final TextureCache mTextureCache;
+
+    /**
+     * All the GL state is set through it, so the redundant changes are skipped
+     */
+    private final GLStateCache mGLState;
+
+    /**
+     * Every GL object created here is registered, they are deleted all together on dispose
+     */
+    private final GLResourceRegistry mResources;
+
+    /**
+     * Max bitmaps uploaded in one frame, so a burst of new boards won't stall a frame
+     */
+    private static final int MAX_UPLOADS_PER_FRAME = 1;
+
+    /**
+     * Color of the board shown while its background is being loaded
+     */
+    private static final int PLACEHOLDER_COLOR = 0xFF2F4F4F;
+
+    /**
+     * Composes board textures off the GL thread
+     */
+    private final BoardComposer mComposer;
+
+    /**
+     * Scroll speed of the meeting list, in visible list heights per second
+     */
+    private static final float SCROLL_SPEED = 0.1f;
+
+    /**
+     * Keys of the textures being composed, along with the lines of the text layers,
+     * the lines of a background are null
+     */
+    private final Map<String, List<String>> mPendingLines = new HashMap<>();
+
+    /**
+     * Keys which failed to load, they are submitted again only after a delay which doubles
+     * with each failure, instead of once per frame
+     */
+    private final Map<String, Failure> mFailures = new HashMap<>();
+
+    private static final long FIRST_RETRY_DELAY_MS = 1000;
+    private static final long MAX_RETRY_DELAY_MS = 60 * 1000;
+
+    /**
+     * For the boards with a text layer, the cache key of the latest uploaded layer of each room
+     * and the lines drawn in it, so a schedule change can update the rows in place
+     */
+    private final Map<String, String> mSlotKeys = new HashMap<>();
+    private final Map<String, List<String>> mSlotLines = new HashMap<>();
+
+    private int mPlaceholderTexture;
+
+    /**
+     * Transparent text layer for the boards without one
+     */
+    private int mNoTextTexture;
+
+    /**
+     * Projection of this frame, column major
+     */
+    private final float[] mProjection = new float[16];
+    private int mViewportHeight;
+
+    /**
+     * Height and cache keys of each background, keyed by drawable
+     */
+    private final IntObjectMap<Background> mBackgrounds = new IntObjectMap<>();
+
+    /**
+     * Draws the text with the glyph atlas when all the glyphs are available
+     */
+    private final TextRenderer mTextRenderer;
+
+    private final long mStartTime = SystemClock.uptimeMillis();
+
+    private static final String PROGRAM_NAME = "blackboard";
+
     private static final String VERTEX_SHADER =
-            "uniform mat4 u_MVMatrix;\n"                // model/view matrix
-                    + "uniform mat4 u_MVPMatrix;\n"     // model/view/projection matrix
+            "uniform mat4 u_MVPMatrix;\n"              // model/view/projection matrix, combined on CPU
+                    + "uniform vec3 u_Scale;\n"         // board width, height and depth
                     + "attribute vec4 a_Position;\n"
                     + "attribute vec4 a_Color;\n"
                     + "attribute vec2 a_TexCoordinate;\n"
@@ -127,69 +215,112 @@ public class BlackboardRenderer {
                     + "{\n"
                     + "    v_Color = a_Color;\n"
                     + "    v_TexCoordinate = a_TexCoordinate;\n"
-                    + "    gl_Position = u_MVPMatrix * u_MVMatrix * a_Position;\n"
+                    + "    gl_Position = u_MVPMatrix * vec4(a_Position.xyz * u_Scale, 1.0);\n"
                     + "}\n"
                     + "\n";
 
-    private static String FRAGMENT_SHADER =
+    private static final String FRAGMENT_SHADER =
             "#ifdef GL_ES\n"
                     + "precision highp float;\n"
                     + "#endif\n"
-                    + "uniform sampler2D u_Texture;\n"
+                    + "uniform sampler2D u_Texture;\n"      // background
+                    + "uniform sampler2D u_TextTexture;\n"  // text layer, only alpha is used
+                    // header height on the board, header height and list height in the texture,
+                    // visible part of the list, the header covers the whole board if not scrolling
+                    + "uniform vec4 u_Scroll;\n"
+                    + "uniform float u_ScrollOffset;\n"  // scroll offset of the list, in list heights
                     + "varying vec4 v_Color;\n"
                     + "varying vec2 v_TexCoordinate;\n"
                     + "\n"
                     + "void main()\n"
                     + "{\n"
-                    + "    gl_FragColor = v_Color * texture2D(u_Texture, v_TexCoordinate);\n"
+                    + "    vec2 uv = v_TexCoordinate;\n"
+                    + "    if (uv.y > u_Scroll.x) {\n"
+                    + "        float list = (uv.y - u_Scroll.x) / (1.0 - u_Scroll.x) * u_Scroll.w + u_ScrollOffset;\n"
+                    + "        uv.y = u_Scroll.y + fract(list) * u_Scroll.z;\n"
+                    + "    }\n"
+                    + "    vec4 background = texture2D(u_Texture, v_TexCoordinate);\n"
+                    + "    float text = texture2D(u_TextTexture, uv).a;\n"
+                    // the text is white
+                    + "    gl_FragColor = v_Color * vec4(mix(background.rgb, vec3(1.0), text), background.a);\n"
                     + "}\n"
                     + "\n";
 
     /**
-     * Initiate vertex shader, fragment shader and link program
+     * Get the program and build the cube
      */
-    public BlackboardRenderer(Context context) {
+    public BlackboardRenderer(Context context, GLStateCache glState, ProgramManager programs,
+                              GLResourceRegistry resources) {
         mContext = context;
-
-        // init buffer for cube texture coordinates data
-        mCubeTextureCoordinates = ByteBuffer.allocateDirect(mCubeTextureCoordinateData.length * 4)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-        mCubeTextureCoordinates.put(mCubeTextureCoordinateData).position(0);
-
-        mCubeTextureCoordinatesForPlane = ByteBuffer.allocateDirect(mCubeTextureCoordinateDataForPlane.length * 4)
-                .order(ByteOrder.nativeOrder()).asFloatBuffer();
-        mCubeTextureCoordinatesForPlane.put(mCubeTextureCoordinateDataForPlane).position(0);
-
-        mProgramHandle = GLES20.glCreateProgram();
-
-        int vertShader = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
-        GLES20.glShaderSource(vertShader, VERTEX_SHADER);
-        GLES20.glCompileShader(vertShader);
-        GLES20.glAttachShader(mProgramHandle, vertShader);
-
-        int fragShader = GLES20.glCreateShader(GLES20.GL_FRAGMENT_SHADER);
-        GLES20.glShaderSource(fragShader, FRAGMENT_SHADER);
-        GLES20.glCompileShader(fragShader);
-        GLES20.glAttachShader(mProgramHandle, fragShader);
-
-        GLES20.glLinkProgram(mProgramHandle);
-        GLES20.glUseProgram(mProgramHandle);
+        mGLState = glState;
+        mResources = resources;
+        mTextureCache = new TextureCache(resources);
+        boolean etc1Supported = ETC1Util.isETC1Supported();
+        Log.d(TAG, "BlackboardRenderer: ETC1 supported: " + etc1Supported);
+        mComposer = new BoardComposer(context, etc1Supported);
+        mPlaceholderTexture = TextureHelper.createSolidTexture(PLACEHOLDER_COLOR);
+        mResources.register(GLResourceRegistry.TEXTURE, mPlaceholderTexture, 4);
+        mNoTextTexture = TextureHelper.createSolidTexture(Color.TRANSPARENT);
+        mResources.register(GLResourceRegistry.TEXTURE, mNoTextTexture, 4);
+        mGLState.invalidateTextures();
+        mTextRenderer = new TextRenderer(context, glState, programs, resources);
+
+        mProgramHandle = programs.getProgram(PROGRAM_NAME, VERTEX_SHADER, FRAGMENT_SHADER);
+        mGLState.useProgram(mProgramHandle);
 
         // init all the attributes' locations
         mPositionHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Position");
         mColorHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Color");
-        mMVMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_MVMatrix");
         mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_MVPMatrix");
 
         mTextureUniformHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_Texture");
+        mTextTextureUniformHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_TextTexture");
         mTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_TexCoordinate");
+        mScaleHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_Scale");
+        mScrollHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_Scroll");
+        mScrollOffsetHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_ScrollOffset");
 
-        // create buffer for coordinates
+        /*
+        * The cube is built only once as a unit cube, each board scales it with u_Scale,
+        * so there is no buffer upload while rendering.
+        * We are using NDC coordinate system here, it's a left handed coordinate system,
+        * so the starting point will be on the left top from our viewport.
+        * */
         mCoordVBO = generateOneBuffer();
+        mGLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mCoordVBO);
+        float cube_vertices[][] = {
+                // +z
+                {0.5f, 0.5f, 0.5f},
+                {0.5f, -0.5f, 0.5f},
+                {-0.5f, -0.5f, 0.5f},
+                {-0.5f, 0.5f, 0.5f},
+                // -z
+                {0.5f, 0.5f, -0.5f},
+                {0.5f, -0.5f, -0.5f},
+                {-0.5f, -0.5f, -0.5f},
+                {-0.5f, 0.5f, -0.5f}};
+        FloatBuffer cube_vertices_buffer = FloatBuffer.wrap(flatten(cube_vertices));
+        GLES20.glBufferData(
+                GLES20.GL_ARRAY_BUFFER,
+                cube_vertices_buffer.limit() * 4,
+                cube_vertices_buffer,
+                GLES20.GL_STATIC_DRAW);
+        mResources.register(GLResourceRegistry.BUFFER, mCoordVBO, cube_vertices_buffer.limit() * 4);
+
+        // create buffer for texture coordinates, the texture is mapped on the +z face
+        mTexCoordVBO = generateOneBuffer();
+        mGLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mTexCoordVBO);
+        FloatBuffer cube_tex_coords_buffer = FloatBuffer.wrap(flatten(mCubeTextureCoordinateData));
+        GLES20.glBufferData(
+                GLES20.GL_ARRAY_BUFFER,
+                cube_tex_coords_buffer.limit() * 4,
+                cube_tex_coords_buffer,
+                GLES20.GL_STATIC_DRAW);
+        mResources.register(GLResourceRegistry.BUFFER, mTexCoordVBO, cube_tex_coords_buffer.limit() * 4);
 
         // create buffer for cube vertices' color
         mColorVBO = generateOneBuffer();
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mColorVBO);
+        mGLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mColorVBO);
         int cube_vertex_colors[][] = {
                 //{255, 0, 0, 255},       // red
                 //{255, 255, 0, 255},     // yellow
@@ -215,118 +346,400 @@ public class BlackboardRenderer {
                 cube_vertex_colors_buffer.limit(),
                 cube_vertex_colors_buffer,
                 GLES20.GL_STATIC_DRAW);
+        mResources.register(GLResourceRegistry.BUFFER, mColorVBO, cube_vertex_colors_buffer.limit());
 
         // create buffer for drawing cube faces
         mFacesVBO = generateOneBuffer();
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mFacesVBO);
+        mGLState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mFacesVBO);
+        /*
+        * Each face is split into 2 triangles, so that the whole cube can be drawn
+        * with GL_TRIANGLES in one call, for example, face {3, 2, 1, 0} is drawn as
+        * {3, 2, 1} and {3, 1, 0}.
+        * */
         short cube_faces[][] = {
-                /* +z */{3, 2, 1, 0},
-                ///* -y */{2, 3, 7, 6},// disable the right face
-                /* -y */{0, 0, 0, 0},
-                /* +y */{0, 1, 5, 4},
-                /* -x */{3, 0, 4, 7},
-                /* +x */{1, 2, 6, 5},
-                /* -z */{4, 5, 6, 7}};
+                /* +z */{3, 2, 1, 3, 1, 0},
+                ///* -y */{2, 3, 7, 2, 7, 6},// disable the right face
+                /* +y */{0, 1, 5, 0, 5, 4},
+                /* -x */{3, 0, 4, 3, 4, 7},
+                /* +x */{1, 2, 6, 1, 6, 5},
+                /* -z */{4, 5, 6, 4, 6, 7}};
         ShortBuffer cube_faces_buffer =
                 ShortBuffer.wrap(flatten(cube_faces));
+        mFaceIndexCount = cube_faces_buffer.limit();
         // allocate memory in this buffer for drawing faces
         GLES20.glBufferData(
                 GLES20.GL_ELEMENT_ARRAY_BUFFER,
                 cube_faces_buffer.limit() * 2,
                 cube_faces_buffer,
                 GLES20.GL_STATIC_DRAW);
+        mResources.register(GLResourceRegistry.BUFFER, mFacesVBO, cube_faces_buffer.limit() * 2);
     }
 
     /**
-     * Render graphics
+     * Render all the boards in one pass, the state shared by the boards is only set once,
+     * then each board costs a texture bind, 2 uniforms and one draw call.
+     *
+     * @param boards boards sorted from back to front
      */
-    public void render(Matrix44F projectionMatrix, Matrix44F cameraView, Vec2F size) {
-        float imageWidth = size.data[0]; // image target width
-        float imageHeight = size.data[1]; // image target height
-
-        // load shader program
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-        GLES20.glUseProgram(mProgramHandle);
+    public void render(Board[] boards, int count) {
+        if (count <= 0) {
+            return;
+        }
 
-        // bind buffer data for cube vertices
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mCoordVBO);
-
-        /*
-        * We are using NDC coordinate system here, it's a left handed coordinate system,
-        * so the starting point will be on the left top from our viewport.
-        * */
-        float cube_vertices[][] = {
-                // +z
-                {imageWidth / 2, imageHeight / 2, imageWidth / 10},
-                {imageWidth / 2, -imageHeight / 2, imageWidth / 10},
-                {-imageWidth / 2, -imageHeight / 2, imageWidth / 10},
-                {-imageWidth / 2, imageHeight / 2, imageWidth / 10},
-                // -z
-                {imageWidth / 2, imageHeight / 2, -imageWidth / 10},
-                {imageWidth / 2, -imageHeight / 2, -imageWidth / 10},
-                {-imageWidth / 2, -imageHeight / 2, -imageWidth / 10},
-                {-imageWidth / 2, imageHeight / 2, -imageWidth / 10}};
-        FloatBuffer cube_vertices_buffer = FloatBuffer.wrap(flatten(cube_vertices));
-        GLES20.glBufferData(
-                GLES20.GL_ARRAY_BUFFER,
-                cube_vertices_buffer.limit() * 4,
-                cube_vertices_buffer,
-                GLES20.GL_DYNAMIC_DRAW);
+        // load shader program, the state cache skips what is already set
+        mGLState.enable(GLES20.GL_BLEND);
+        mGLState.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        mGLState.enable(GLES20.GL_DEPTH_TEST);
+        mGLState.useProgram(mProgramHandle);
 
         // determine final coordinates position
-        GLES20.glEnableVertexAttribArray(mPositionHandle);
+        mGLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mCoordVBO);
+        mGLState.enableVertexAttribArray(mPositionHandle);
         GLES20.glVertexAttribPointer(mPositionHandle, 3, GLES20.GL_FLOAT, false, 0, 0);
 
         // determine final colors
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mColorVBO);
-        GLES20.glEnableVertexAttribArray(mColorHandle);
+        mGLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mColorVBO);
+        mGLState.enableVertexAttribArray(mColorHandle);
         GLES20.glVertexAttribPointer(mColorHandle, 4, GLES20.GL_UNSIGNED_BYTE, true, 0, 0);
 
-        // view transformation, 4 float vector
-        GLES20.glUniformMatrix4fv(mMVMatrixHandle, 1, false, cameraView.data, 0);
-        // projection
-        GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, projectionMatrix.data, 0);
+        // determine texture coordinates
+        mGLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mTexCoordVBO);
+        mGLState.enableVertexAttribArray(mTextureCoordinateHandle);
+        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, mTextureCoordinateDataSize,
+                GLES20.GL_FLOAT, false, 0, 0);
+
+        // the background of each board is bound to texture unit 0, and the text layer to unit 1
+        GLES20.glUniform1i(mTextureUniformHandle, 0);
+        GLES20.glUniform1i(mTextTextureUniformHandle, 1);
+
+        mGLState.bindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mFacesVBO);
+
+        // the list scrolls with time, so there is nothing to compose or upload for scrolling
+        float seconds = (SystemClock.uptimeMillis() - mStartTime) / 1000f;
+
+        float[] boundScroll = null;
+        for (int i = 0; i < count; i++) {
+            Board board = boards[i];
+            mGLState.activeTexture(GLES20.GL_TEXTURE0);
+            mGLState.bindTexture(board.getTexture());
+            mGLState.activeTexture(GLES20.GL_TEXTURE1);
+            mGLState.bindTexture(board.getTextTexture() != 0 ? board.getTextTexture() : mNoTextTexture);
+            if (board.getScroll() != boundScroll) {
+                boundScroll = board.getScroll();
+                GLES20.glUniform4fv(mScrollHandle, 1, boundScroll, 0);
+            }
+            if (board.isScrolling()) {
+                float offset = seconds * SCROLL_SPEED * boundScroll[3];
+                GLES20.glUniform1f(mScrollOffsetHandle, offset - (float) Math.floor(offset));
+            }
+
+            // projection * view, combined once per frame by the culler
+            GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, board.getMVP(), 0);
+            // scale the unit cube to the target size, the depth of the board is 1/5 of its width
+            GLES20.glUniform3f(mScaleHandle, board.getWidth(), board.getHeight(), board.getWidth() / 5);
 
-        /*
-        * Here we draw the faces with GL_TRIANGLE_FAN, it means we draw each triangle based on
-        * the first point, for example, as for {3, 2, 1, 0}, we draw the triangle starts with 3,
-        * first {3, 2, 1} and then {3, 1, 0}, so that compose one face.
-        * */
-        for (int i = 0; i < 6; i++) {
-            //GLES20.glDrawArrays();
             GLES20.glDrawElements(
-                    GLES20.GL_TRIANGLE_FAN,     // mode
-                    4,                          // count
+                    GLES20.GL_TRIANGLES,        // mode
+                    mFaceIndexCount,            // count
                     GLES20.GL_UNSIGNED_SHORT,   // type
-                    i * 4 * 2                   // offset for VBO indices
+                    0                           // offset for VBO indices
             );
         }
+
+        // then the text on top of the boards
+        mTextRenderer.render(boards, count);
     }
 
-    private void drawTexture() {
-        mCubeTextureCoordinates.position(0);
-        GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
-        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, mTextureCoordinateDataSize,
-                GLES20.GL_FLOAT, false,
-                0, mCubeTextureCoordinates);
-
-        // Set the active texture unit to texture unit 0.
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        // Bind the texture to this unit.
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTextureDataHandle);
-        // Tell the texture uniform sampler to use this texture in the shader by binding to texture unit 0.
-        GLES20.glUniform1i(mTextureUniformHandle, 0);
+    /**
+     * Call it at the beginning of each frame, before loading textures of the boards,
+     * it uploads the boards composed since last frame.
+     */
+    public void beginFrame() {
+        mTextureCache.beginFrame();
+
+        BoardComposer.Result result;
+        int uploads = 0;
+        while (uploads < MAX_UPLOADS_PER_FRAME && (result = mComposer.poll()) != null) {
+            // null for a background
+            List<String> lines = mPendingLines.remove(result.getKey());
+            uploads++;
+            if (result.isPartial()) {
+                String slot = TextureCache.slotOfKey(result.getKey());
+                if (updateTexture(result, lines)) {
+                    mSlotKeys.put(slot, result.getKey());
+                    mSlotLines.put(slot, lines);
+                } else {
+                    // compose the layer as a whole next time
+                    mSlotKeys.remove(slot);
+                    mSlotLines.remove(slot);
+                }
+                continue;
+            }
+            if (result.isFailed()) {
+                // not pending any more, it's loaded again when the board is prepared after the delay
+                Failure failure = mFailures.get(result.getKey());
+                if (failure == null) {
+                    failure = new Failure();
+                    mFailures.put(result.getKey(), failure);
+                }
+                failure.mDelay = failure.mDelay == 0
+                        ? FIRST_RETRY_DELAY_MS : Math.min(failure.mDelay * 2, MAX_RETRY_DELAY_MS);
+                failure.mRetryTime = SystemClock.uptimeMillis() + failure.mDelay;
+                Log.w(TAG, "beginFrame: failed to load " + result.getKey() + ", retry in " + failure.mDelay + " ms");
+                continue;
+            }
+            mFailures.remove(result.getKey());
+
+            int texture;
+            int byteCount;
+            if (result.getCompressed() != null) {
+                // ETC1 is 4 bits per pixel
+                byteCount = result.getCompressed().getData().remaining();
+                texture = TextureHelper.uploadCompressedTexture(result.getCompressed());
+            } else {
+                // RGB565 for a background, ALPHA_8 for a text layer
+                byteCount = result.getBitmap().getByteCount();
+                texture = TextureHelper.uploadTexture(result.getBitmap(), null);
+            }
+            mGLState.invalidateTextures();
+            mResources.register(GLResourceRegistry.TEXTURE, texture, byteCount);
+            mTextureCache.put(result.getKey(), texture, byteCount, result.getScroll(), lines);
+            if (lines != null) {
+                String slot = TextureCache.slotOfKey(result.getKey());
+                mSlotKeys.put(slot, result.getKey());
+                mSlotLines.put(slot, lines);
+            }
+        }
+        if (mResources.isOverBudget()) {
+            // the cached textures are the only objects which can be dropped
+            mTextureCache.trim(mResources.getLiveBytes() - mResources.getBudgetBytes());
+        }
+        if (uploads > 0) {
+            mTextureCache.logStats();
+            TextureHelper.getBitmapPool().logStats();
+            if (mResources.isOverBudget()) {
+                Log.w(TAG, "beginFrame: still over GPU memory budget, " + mResources);
+            }
+        }
+    }
 
-        mCubeTextureCoordinatesForPlane.position(0);
-        GLES20.glEnableVertexAttribArray(mTextureCoordinateHandle);
-        GLES20.glVertexAttribPointer(mTextureCoordinateHandle, mTextureCoordinateDataSize, GLES20.GL_FLOAT, false,
-                0, mCubeTextureCoordinatesForPlane);
+    /**
+     * Upload the changed rows into the text layer of the previous schedule,
+     * then the layer belongs to the new schedule.
+     *
+     * @return false if the old texture is evicted or the strips failed
+     */
+    private boolean updateTexture(BoardComposer.Result result, List<String> lines) {
+        TextureHelper.Strip[] strips = result.getStrips();
+        int texture = strips != null ? mTextureCache.rekey(result.getReplacedKey(), result.getKey(), lines) : 0;
+        if (texture == 0) {
+            result.recycle();
+            return false;
+        }
+        TextureHelper.updateTexture(texture, strips);
+        mGLState.invalidateTextures();
+        return true;
     }
 
-    public void loadTexture(MeetingRoomInfo meetingRoomInfo, @DrawableRes int drawableResTex) {
-        mTextureDataHandle = TextureHelper.loadTexture(mContext, drawableResTex, meetingRoomInfo);
+    /**
+     * Set the projection of this frame, call it before preparing the boards,
+     * it's used to pick the resolution of the board textures.
+     */
+    public void setProjection(Matrix44F projectionMatrix, int viewportHeight) {
+        System.arraycopy(projectionMatrix.data, 0, mProjection, 0, 16);
+        mViewportHeight = viewportHeight;
+    }
+
+    /**
+     * Set the background and the text of this board.
+     * If the text can be drawn with the glyph atlas, there is no text layer,
+     * otherwise the text is drawn in a text layer blended on the background.
+     * The resolution of the textures steps down as the board gets smaller on screen,
+     * and a simplified board has no text at all.
+     * Nothing is allocated for a board whose textures are all cached.
+     *
+     * @param target the resolution level and the cache keys are kept in it
+     */
+    public void prepare(Board board, TrackedTarget target, MeetingRoomInfo meetingRoomInfo,
+                        @DrawableRes int drawableResTex) {
+        target.setContent(meetingRoomInfo, drawableResTex);
+        Background background = getBackground(drawableResTex);
+        float projectedHeight = TextureLod.projectedHeight(
+                board.getPose(), board.getHeight(), mProjection, mViewportHeight);
+        int level = TextureLod.update(target.getLodLevel(), projectedHeight, background.mHeight);
+        target.setLodLevel(level);
+
+        loadBackground(board, background, level);
+        if (board.isSimplified() || meetingRoomInfo == null) {
+            return;
+        }
+        if (target.isGlyphText()) {
+            board.setTextMesh(mTextRenderer.obtainMesh(meetingRoomInfo, board.getWidth() / board.getHeight()));
+        } else {
+            loadTextLayer(board, target, meetingRoomInfo, drawableResTex, level);
+        }
+    }
+
+    private Background getBackground(@DrawableRes int drawableResTex) {
+        Background background = mBackgrounds.get(drawableResTex);
+        if (background == null) {
+            background = new Background(drawableResTex,
+                    TextureHelper.getBackgroundSize(mContext, drawableResTex)[1]);
+            mBackgrounds.put(drawableResTex, background);
+        }
+        return background;
+    }
+
+    /**
+     * Set the background of this board, it's shared by all the boards on this background
+     * at the same level. If it's not in the cache, it's loaded in background and the background
+     * of another level is shown until it's uploaded, or a placeholder texture if there is none.
+     */
+    private void loadBackground(Board board, Background background, int level) {
+        String key = background.mKeys[level];
+        int texture = mTextureCache.get(key);
+        if (texture == 0) {
+            if (canSubmit(key) && mComposer.submitBackground(key, background.mDrawableRes, level)) {
+                mPendingLines.put(key, null);
+            }
+            // the nearest level first
+            for (int distance = 1; texture == 0 && distance <= TextureLod.MAX_LEVEL; distance++) {
+                if (level - distance >= 0) {
+                    texture = mTextureCache.get(background.mKeys[level - distance]);
+                }
+                if (texture == 0 && level + distance <= TextureLod.MAX_LEVEL) {
+                    texture = mTextureCache.get(background.mKeys[level + distance]);
+                }
+            }
+            if (texture == 0) {
+                texture = mPlaceholderTexture;
+            }
+        }
+        board.setTexture(texture);
+    }
+
+    /**
+     * Set the text layer of this board and its scroll window. If it's not in the cache, the layer
+     * is composed in background and the board has no text until it's uploaded.
+     * If the layer of the previous schedule of this room is still cached, only the
+     * changed lines are composed and the previous layer is shown until they are uploaded.
+     * The previous layer is also shown while the layer of a new level is composed.
+     */
+    private void loadTextLayer(Board board, TrackedTarget target, MeetingRoomInfo meetingRoomInfo,
+                               @DrawableRes int drawableResTex, int level) {
+        String key = target.getTextKey(level);
+        List<String> lines = target.getLines();
+        int texture = mTextureCache.get(key, lines);
+        if (texture != 0) {
+            board.setTextTexture(texture);
+            board.setScroll(mTextureCache.getScroll(key));
+            return;
+        }
+
+        String slot = target.getSlot();
+        String previousKey = mSlotKeys.get(slot);
+        List<String> previousLines = mSlotLines.get(slot);
+        int previousTexture = previousKey != null ? mTextureCache.get(previousKey, previousLines) : 0;
+        float[] previousScroll = previousTexture != 0 ? mTextureCache.getScroll(previousKey) : null;
+
+        if (canSubmit(key)) {
+            // a scrolling layer has a different layout, and a layer of another level has a different size,
+            // so they are always composed as a whole
+            boolean submitted;
+            if (previousTexture != 0 && previousLines != null && !TextureHelper.isScrolling(previousScroll)
+                    && TextureCache.levelOfKey(previousKey) == level) {
+                int[] changedLines = TextureHelper.diffLines(previousLines, lines);
+                submitted = mComposer.submitStrips(key, previousKey, drawableResTex, lines, changedLines, level);
+            } else {
+                submitted = mComposer.submit(key, meetingRoomInfo, drawableResTex, level);
+            }
+            if (submitted) {
+                mPendingLines.put(key, lines);
+            }
+        }
+        board.setTextTexture(previousTexture);
+        board.setScroll(previousScroll);
+    }
+
+    /**
+     * @return the key is neither being composed nor waiting for a retry
+     */
+    private boolean canSubmit(String key) {
+        if (mPendingLines.containsKey(key)) {
+            return false;
+        }
+        Failure failure = mFailures.get(key);
+        return failure == null || SystemClock.uptimeMillis() >= failure.mRetryTime;
+    }
+
+    /**
+     * Load the boards which failed at once, called when the schedules change
+     */
+    public void clearFailures() {
+        mFailures.clear();
+    }
+
+    /**
+     * @return boards are being composed or waiting to be uploaded, frames are needed to show them.
+     * The failed boards waiting for a retry are not counted.
+     */
+    public boolean hasPendingUploads() {
+        return !mPendingLines.isEmpty();
+    }
+
+    /**
+     * Stop composing boards, must be called before dropping this renderer.
+     * The GL objects are deleted by {@link GLResourceRegistry#releaseAll()}.
+     */
+    public void dispose() {
+        mComposer.shutdown();
+        mPendingLines.clear();
+        mFailures.clear();
+        mSlotKeys.clear();
+        mSlotLines.clear();
+    }
+
+    /**
+     * Set the max bytes of board textures kept on GPU
+     */
+    public void setTextureBudget(int budgetBytes) {
+        mTextureCache.setBudgetBytes(budgetBytes);
+    }
+
+    public TextureCache getTextureCache() {
+        return mTextureCache;
+    }
+
+    /**
+     * When a failed key is submitted again
+     */
+    private static class Failure {
+        private long mRetryTime;
+        private long mDelay;
+    }
+
+    /**
+     * A background drawable, with the cache keys of all its levels
+     */
+    private static class Background {
+
+        @DrawableRes
+        private final int mDrawableRes;
+
+        /**
+         * Full resolution height
+         */
+        private final int mHeight;
+
+        private final String[] mKeys = new String[TextureLod.MAX_LEVEL + 1];
+
+        Background(@DrawableRes int drawableRes, int height) {
+            mDrawableRes = drawableRes;
+            mHeight = height;
+            for (int level = 0; level < mKeys.length; level++) {
+                mKeys[level] = TextureCache.keyOf(null, drawableRes, level);
+            }
+        }
     }
 
     private float[] flatten(float[][] a) {
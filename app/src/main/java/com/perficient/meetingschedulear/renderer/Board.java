@@ -0,0 +1,162 @@
+package com.perficient.meetingschedulear.renderer;
+
+import com.perficient.meetingschedulear.util.MatrixMath;
+import com.perficient.meetingschedulear.util.TextureHelper;
+
+/**
+ * A tracked board to be drawn in this frame, the instances are reused across frames.
+ */
+public class Board {
+
+    /**
+     * OpenGL model view matrix of the target, column major
+     */
+    private final float[] mPose = new float[16];
+
+    /**
+     * Projection * pose, combined once per frame so the shaders transform each vertex by one matrix
+     */
+    private final float[] mMVP = new float[16];
+
+    private float mWidth;
+
+    private float mHeight;
+
+    /**
+     * Background texture
+     */
+    private int mTexture;
+
+    /**
+     * Text layer blended on the background, 0 if there is none
+     */
+    private int mTextTexture;
+
+    /**
+     * Scroll window of the text layer, see {@link TextureHelper#composeTextLayer}
+     */
+    private float[] mScroll = TextureHelper.SCROLL_NONE;
+
+    /**
+     * Text drawn with the glyph atlas, null if the text is drawn in the texture
+     */
+    private TextRenderer.TextMesh mTextMesh;
+
+    /**
+     * The board is too small on screen for the text, only the background is drawn
+     */
+    private boolean mSimplified;
+
+    /**
+     * Reset the board for a target of this size, the pose is written into {@link #getPose()}
+     */
+    public void set(float width, float height) {
+        mWidth = width;
+        mHeight = height;
+        mTexture = 0;
+        mTextTexture = 0;
+        mScroll = TextureHelper.SCROLL_NONE;
+        mTextMesh = null;
+        mSimplified = false;
+    }
+
+    public float[] getPose() {
+        return mPose;
+    }
+
+    /**
+     * Combine the projection with the pose, call it after the pose of this frame is written
+     *
+     * @param projection OpenGL projection matrix, column major
+     */
+    public void updateMVP(float[] projection) {
+        MatrixMath.multiply(mMVP, projection, mPose);
+    }
+
+    /**
+     * @return projection * pose, see {@link #updateMVP(float[])}
+     */
+    public float[] getMVP() {
+        return mMVP;
+    }
+
+    public float getWidth() {
+        return mWidth;
+    }
+
+    public float getHeight() {
+        return mHeight;
+    }
+
+    public int getTexture() {
+        return mTexture;
+    }
+
+    public void setTexture(int texture) {
+        mTexture = texture;
+    }
+
+    public int getTextTexture() {
+        return mTextTexture;
+    }
+
+    public void setTextTexture(int textTexture) {
+        mTextTexture = textTexture;
+    }
+
+    public float[] getScroll() {
+        return mScroll;
+    }
+
+    /**
+     * @param scroll scroll window of the text layer, null if the text is not scrolling
+     */
+    public void setScroll(float[] scroll) {
+        mScroll = scroll != null ? scroll : TextureHelper.SCROLL_NONE;
+    }
+
+    public boolean isScrolling() {
+        return TextureHelper.isScrolling(mScroll);
+    }
+
+    public TextRenderer.TextMesh getTextMesh() {
+        return mTextMesh;
+    }
+
+    public void setTextMesh(TextRenderer.TextMesh textMesh) {
+        mTextMesh = textMesh;
+    }
+
+    public boolean isSimplified() {
+        return mSimplified;
+    }
+
+    public void setSimplified(boolean simplified) {
+        mSimplified = simplified;
+    }
+
+    /**
+     * Z of the board center in camera coordinates, the camera looks down the -z axis,
+     * so the smaller the value is, the farther the board is.
+     */
+    public float getDepth() {
+        return mPose[14];
+    }
+
+    /**
+     * Sort boards from back to front, so alpha blending of the nearer boards is correct.
+     * Insertion sort is used since there are only a few boards and it sorts in place.
+     */
+    public static void sortBackToFront(Board[] boards, int count) {
+        for (int i = 1; i < count; i++) {
+            Board board = boards[i];
+            float depth = board.getDepth();
+            int j = i - 1;
+            while (j >= 0 && boards[j].getDepth() > depth) {
+                boards[j + 1] = boards[j];
+                j--;
+            }
+            boards[j + 1] = board;
+        }
+    }
+}
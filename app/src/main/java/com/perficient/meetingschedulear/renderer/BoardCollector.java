@@ -0,0 +1,136 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+/**
+ * Collects the boards to draw from the tracked targets of a frame.
+ * <p>
+ * The targets are kept by runtime id in a {@link TargetStateTable}, and the boards are reused,
+ * so once the tracking is stable, collecting the boards allocates nothing. The pose of each target
+ * goes through its {@link PoseFilter} before the board is culled.
+ * <p>
+ * Must be accessed on the GL thread only.
+ */
+public class BoardCollector {
+
+    public interface Callback {
+
+        /**
+         * Set the textures and the text of a board which is going to be drawn
+         */
+        void onPrepareBoard(Board board, TrackedTarget target);
+    }
+
+    private final BoardCuller mCuller;
+
+    private final Callback mCallback;
+
+    private final TargetStateTable mTargets;
+
+    private final PoseFilter.Params mPoseFilterParams = new PoseFilter.Params();
+
+    /**
+     * A pose drawn in the last frame is still being predicted
+     */
+    private boolean mMoving;
+
+    private double mPreviousTimestamp = Double.NaN;
+
+    public BoardCollector(BoardCuller culler, TargetStateTable targets, Callback callback) {
+        mCuller = culler;
+        mTargets = targets;
+        mCallback = callback;
+    }
+
+    /**
+     * Set the boards of the tracked targets in this frame, the culled targets are skipped.
+     * Call {@link BoardCuller#beginFrame(float[], int, int)} before it.
+     *
+     * @param limit max number of boards
+     * @return number of boards set, sorted from back to front
+     */
+    public int collect(FrameSource frame, Board[] boards, int limit) {
+        return collect(frame, boards, limit, System.nanoTime());
+    }
+
+    /**
+     * @param nowNanos System.nanoTime() of this frame, the poses are predicted from it
+     * @see #collect(FrameSource, Board[], int)
+     */
+    public int collect(FrameSource frame, Board[] boards, int limit, long nowNanos) {
+        mMoving = false;
+        boolean filtered = mPoseFilterParams.isEnabled();
+        double timestamp = frame.getTimestamp();
+        // the last frame is kept by the tracker, and it's got again after resume
+        boolean newFrame = timestamp != mPreviousTimestamp;
+        mPreviousTimestamp = timestamp;
+        mTargets.beginFrame(newFrame, nowNanos);
+        int count = 0;
+
+        int targetCount = frame.getTargetCount();
+        for (int i = 0; i < targetCount; i++) {
+            int id = frame.getTrackedTargetId(i);
+            if (id == 0) {
+                continue;
+            }
+            // every target is followed, even the ones over the limit
+            TrackedTarget target = mTargets.track(id, frame, i);
+            if (count >= limit) {
+                continue;
+            }
+            if (target.mPoseFilter == null) {
+                target.mPoseFilter = new PoseFilter(mPoseFilterParams);
+            }
+
+            // keep the Camera Coordinates along with the target size for drawing
+            Board board = boards[count];
+            board.set(target.getWidth(), target.getHeight());
+            frame.getPose(i, board.getPose());
+            if (filtered) {
+                // a target lost for long starts over, see PoseFilter.Params#setMaxGap(float)
+                target.mPoseFilter.update(board.getPose(), timestamp, nowNanos);
+                target.mPoseFilter.predict(board.getPose(), nowNanos);
+            }
+
+            int visibility = mCuller.test(board);
+            if (visibility == BoardCuller.CULLED) {
+                // the board is reused by the next target
+                continue;
+            }
+            board.setSimplified(visibility == BoardCuller.SIMPLIFIED);
+            count++;
+            mMoving |= filtered && target.mPoseFilter.isMoving();
+            mCallback.onPrepareBoard(board, target);
+            target.setTextures(board.getTexture(), board.getTextTexture());
+        }
+        mTargets.endFrame();
+
+        // draw the far boards first, so the near ones are blended on top of them
+        Board.sortBackToFront(boards, count);
+        return count;
+    }
+
+    /**
+     * @return parameters of the pose filters of all the targets
+     */
+    public PoseFilter.Params getPoseFilterParams() {
+        return mPoseFilterParams;
+    }
+
+    /**
+     * @return a board drawn in the last frame moves in the next one, even without a new camera frame
+     */
+    public boolean isMoving() {
+        return mMoving;
+    }
+
+    /**
+     * Forget all the targets, they are found again when tracked next time
+     */
+    public void reset() {
+        mTargets.clear();
+    }
+
+    public TargetStateTable getTargets() {
+        return mTargets;
+    }
+}
@@ -0,0 +1,232 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+import android.util.Log;
+
+import com.perficient.meetingschedulear.util.MatrixMath;
+
+/**
+ * Tests the boards against the view frustum and their size on screen before drawing,
+ * so a board at the edge of the screen or too small to read costs nothing on GPU.
+ * <p>
+ * The box of each board is the one drawn by {@link BlackboardRenderer}: the target size,
+ * with the depth of 1/5 of its width. A board is culled if all the corners of its box are
+ * outside one plane of the frustum, or its area on screen is below {@link #setMinScreenArea(float)}.
+ * A board smaller than {@link #setSimplifyScreenArea(float)} is drawn without text.
+ * <p>
+ * Must be accessed on the GL thread only.
+ */
+public class BoardCuller {
+
+    private static final String TAG = BoardCuller.class.getSimpleName();
+
+    public static final int CULLED = 0;
+    public static final int SIMPLIFIED = 1;
+    public static final int DRAWN = 2;
+
+    /**
+     * Default min area in pixels, about 16 x 16
+     */
+    public static final float DEFAULT_MIN_SCREEN_AREA = 256;
+
+    /**
+     * Default area in pixels below which the text is not readable, about 64 x 48
+     */
+    public static final float DEFAULT_SIMPLIFY_SCREEN_AREA = 3072;
+
+    /**
+     * Log the counters every this many frames, enable with adb shell setprop log.tag.BoardCuller DEBUG
+     */
+    private static final int LOG_INTERVAL_FRAMES = 300;
+
+    /**
+     * Corners of the unit cube drawn for each board
+     */
+    private static final float[] CORNERS = {
+            0.5f, 0.5f, 0.5f,
+            0.5f, -0.5f, 0.5f,
+            -0.5f, -0.5f, 0.5f,
+            -0.5f, 0.5f, 0.5f,
+            0.5f, 0.5f, -0.5f,
+            0.5f, -0.5f, -0.5f,
+            -0.5f, -0.5f, -0.5f,
+            -0.5f, 0.5f, -0.5f};
+
+    private float mMinScreenArea = DEFAULT_MIN_SCREEN_AREA;
+    private float mSimplifyScreenArea = DEFAULT_SIMPLIFY_SCREEN_AREA;
+
+    private final float[] mProjection = new float[16];
+    private int mViewportWidth;
+    private int mViewportHeight;
+
+    /**
+     * Corners of the box in clip coordinates, x, y, z and w of each
+     */
+    private final float[] mClip = new float[CORNERS.length / 3 * 4];
+
+    private int mFrameCount;
+    private int mCulledCount;
+    private int mSimplifiedCount;
+    private int mDrawnCount;
+    private int mLastCulledCount;
+    private int mLastSimplifiedCount;
+    private int mLastDrawnCount;
+    private long mTotalCulledCount;
+    private long mTotalSimplifiedCount;
+    private long mTotalDrawnCount;
+
+    /**
+     * Call it at the beginning of each frame, it keeps the counters of the previous frame
+     *
+     * @param projection OpenGL projection matrix, column major
+     */
+    public void beginFrame(float[] projection, int viewportWidth, int viewportHeight) {
+        System.arraycopy(projection, 0, mProjection, 0, 16);
+        mViewportWidth = viewportWidth;
+        mViewportHeight = viewportHeight;
+
+        mLastCulledCount = mCulledCount;
+        mLastSimplifiedCount = mSimplifiedCount;
+        mLastDrawnCount = mDrawnCount;
+        mCulledCount = 0;
+        mSimplifiedCount = 0;
+        mDrawnCount = 0;
+        // building the log allocates, so it's only done when debug logging is enabled
+        if (++mFrameCount % LOG_INTERVAL_FRAMES == 0 && Log.isLoggable(TAG, Log.DEBUG)) {
+            logStats();
+        }
+    }
+
+    /**
+     * Also combines the projection of this frame with the pose of the board, see {@link Board#getMVP()}
+     *
+     * @return {@link #CULLED}, {@link #SIMPLIFIED} or {@link #DRAWN}
+     */
+    public int test(Board board) {
+        board.updateMVP(mProjection);
+        int result = classify(board.getMVP(), board.getWidth(), board.getHeight());
+        switch (result) {
+            case CULLED:
+                mCulledCount++;
+                mTotalCulledCount++;
+                break;
+            case SIMPLIFIED:
+                mSimplifiedCount++;
+                mTotalSimplifiedCount++;
+                break;
+            default:
+                mDrawnCount++;
+                mTotalDrawnCount++;
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * @param mvp projection * model view matrix of the board, column major
+     */
+    int classify(float[] mvp, float width, float height) {
+        float depth = width / 5;
+        int cornerCount = CORNERS.length / 3;
+        for (int i = 0; i < cornerCount; i++) {
+            MatrixMath.transformPoint(mClip, i * 4, mvp,
+                    CORNERS[i * 3] * width, CORNERS[i * 3 + 1] * height, CORNERS[i * 3 + 2] * depth);
+        }
+
+        // outside if all the corners are outside the same plane, -w <= x, y, z <= w
+        for (int axis = 0; axis < 3; axis++) {
+            boolean allBelow = true;
+            boolean allAbove = true;
+            for (int i = 0; i < cornerCount && (allBelow || allAbove); i++) {
+                float value = mClip[i * 4 + axis];
+                float w = mClip[i * 4 + 3];
+                allBelow &= value < -w;
+                allAbove &= value > w;
+            }
+            if (allBelow || allAbove) {
+                return CULLED;
+            }
+        }
+
+        // area of the bounding rect on screen, only when the box is all in front of the camera,
+        // otherwise it's large anyway
+        float minX = Float.MAX_VALUE;
+        float minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE;
+        float maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < cornerCount; i++) {
+            float w = mClip[i * 4 + 3];
+            if (w <= 0) {
+                return DRAWN;
+            }
+            float x = Math.max(-1f, Math.min(1f, mClip[i * 4] / w));
+            float y = Math.max(-1f, Math.min(1f, mClip[i * 4 + 1] / w));
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        float area = (maxX - minX) * 0.5f * mViewportWidth * (maxY - minY) * 0.5f * mViewportHeight;
+        if (area < mMinScreenArea) {
+            return CULLED;
+        }
+        return area < mSimplifyScreenArea ? SIMPLIFIED : DRAWN;
+    }
+
+    /**
+     * @param minScreenArea boards smaller than this many pixels on screen are not drawn
+     */
+    public void setMinScreenArea(float minScreenArea) {
+        mMinScreenArea = minScreenArea;
+    }
+
+    public float getMinScreenArea() {
+        return mMinScreenArea;
+    }
+
+    /**
+     * @param simplifyScreenArea boards smaller than this many pixels on screen are drawn without text
+     */
+    public void setSimplifyScreenArea(float simplifyScreenArea) {
+        mSimplifyScreenArea = simplifyScreenArea;
+    }
+
+    public float getSimplifyScreenArea() {
+        return mSimplifyScreenArea;
+    }
+
+    /**
+     * @return boards culled in the previous frame
+     */
+    public int getCulledCount() {
+        return mLastCulledCount;
+    }
+
+    /**
+     * @return boards drawn without text in the previous frame
+     */
+    public int getSimplifiedCount() {
+        return mLastSimplifiedCount;
+    }
+
+    /**
+     * @return boards fully drawn in the previous frame
+     */
+    public int getDrawnCount() {
+        return mLastDrawnCount;
+    }
+
+    public void logStats() {
+        Log.d(TAG, "logStats: " + toString());
+    }
+
+    @Override
+    public String toString() {
+        return "BoardCuller{culled=" + mLastCulledCount
+                + ", simplified=" + mLastSimplifiedCount
+                + ", drawn=" + mLastDrawnCount
+                + ", total culled=" + mTotalCulledCount
+                + ", total simplified=" + mTotalSimplifiedCount
+                + ", total drawn=" + mTotalDrawnCount + "}";
+    }
+}
@@ -0,0 +1,271 @@
+package com.perficient.meetingschedulear.renderer;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import com.perficient.meetingschedulear.task.SnapshotSaver;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Captures what is drawn on the screen without stalling the pipeline.
+ * <p>
+ * On an OpenGL ES 3.0 context the frame is read into one of two pixel buffer objects, glReadPixels
+ * then returns at once and the copy runs on GPU. The buffer is mapped a few frames later, when its
+ * fence is signaled, so the GL thread never waits for the copy. With two buffers a second capture
+ * can start while the first one is still in flight.
+ * <p>
+ * On OpenGL ES 2.0 there are no pixel buffers, the frame is read with a plain glReadPixels, which
+ * blocks the frame the capture is taken in, and only that one.
+ * <p>
+ * Encoding and saving run on the {@link SnapshotSaver} thread.
+ * {@link #request(Bitmap.CompressFormat, SnapshotSaver.Callback)} can be called on any thread,
+ * everything else must be called on the GL thread.
+ */
+public class FrameCapture {
+
+    private static final String TAG = FrameCapture.class.getSimpleName();
+
+    private static final int BUFFER_COUNT = 2;
+
+    /**
+     * Map the buffer anyway after this many frames, in case the fence is never signaled
+     */
+    private static final int MAX_PENDING_FRAMES = 4;
+
+    private final GLStateCache mGLState;
+
+    private final GLResourceRegistry mResources;
+
+    private final SnapshotSaver mSaver;
+
+    private final boolean mPixelBufferSupported;
+
+    private final Queue<Request> mRequests = new ConcurrentLinkedQueue<>();
+
+    private final int[] mPixelBuffers = new int[BUFFER_COUNT];
+
+    /**
+     * Size the pixel buffers are allocated for
+     */
+    private int mBufferWidth;
+    private int mBufferHeight;
+
+    /**
+     * Capture in flight of each pixel buffer, null if the buffer is free
+     */
+    private final Request[] mPending = new Request[BUFFER_COUNT];
+    private final long[] mFences = new long[BUFFER_COUNT];
+    private final int[] mPendingFrames = new int[BUFFER_COUNT];
+
+    private int mNextBuffer;
+
+    /**
+     * Number of captures in flight, read on any thread
+     */
+    private volatile int mInFlightCount;
+
+    private volatile boolean mDisposed;
+
+    public FrameCapture(GLStateCache glState, GLResourceRegistry resources, SnapshotSaver saver) {
+        mGLState = glState;
+        mResources = resources;
+        mSaver = saver;
+        mPixelBufferSupported = isPixelBufferSupported(GLES20.glGetString(GLES20.GL_VERSION));
+        Log.d(TAG, "FrameCapture: pixel buffer supported: " + mPixelBufferSupported);
+    }
+
+    /**
+     * Pixel buffer objects and fences are only exposed in the Java bindings of OpenGL ES 3.0
+     */
+    private static boolean isPixelBufferSupported(String version) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2
+                && version != null && version.startsWith("OpenGL ES ") && !version.startsWith("OpenGL ES 2");
+    }
+
+    /**
+     * Capture the next frame drawn, the callback is called on the main thread once it's saved,
+     * or once it failed if the capture is disposed
+     */
+    public void request(Bitmap.CompressFormat format, SnapshotSaver.Callback callback) {
+        mRequests.offer(new Request(format, callback));
+        if (mDisposed) {
+            // disposed while it was queued, nothing is going to take it
+            failRequests();
+        }
+    }
+
+    /**
+     * @return a capture is requested or in flight, more frames are needed to finish it.
+     * It can be called on any thread.
+     */
+    public boolean isBusy() {
+        return !mRequests.isEmpty() || mInFlightCount > 0;
+    }
+
+    /**
+     * Call it after the frame is drawn, before the buffers are swapped. It finishes the captures
+     * which are read back, and starts the one requested if any.
+     *
+     * @param width  width of the surface
+     * @param height height of the surface
+     */
+    public void onFrameDrawn(int width, int height) {
+        if (mPixelBufferSupported) {
+            finishReadbacks(false);
+        }
+        if (mRequests.isEmpty() || width <= 0 || height <= 0) {
+            return;
+        }
+        if (mPixelBufferSupported) {
+            startReadback(width, height);
+        } else {
+            readNow(width, height);
+        }
+    }
+
+    private void readNow(int width, int height) {
+        Request request = mRequests.poll();
+        ByteBuffer pixels = mSaver.obtainBuffer(width, height);
+        GLES20.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels);
+        mSaver.save(pixels, width, height, request.mFormat, request.mCallback);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void startReadback(int width, int height) {
+        int index = mNextBuffer;
+        if (mPending[index] != null) {
+            // both buffers are in flight, the request waits for the next frame
+            return;
+        }
+        if (width != mBufferWidth || height != mBufferHeight) {
+            finishReadbacks(true);
+            allocateBuffers(width, height);
+        }
+
+        Request request = mRequests.poll();
+        mGLState.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, mPixelBuffers[index]);
+        // with a pack buffer bound, the pixels are written at this offset of the buffer
+        GLES30.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0);
+        mGLState.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+
+        mFences[index] = GLES30.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        mPending[index] = request;
+        mPendingFrames[index] = 0;
+        mInFlightCount++;
+        mNextBuffer = (index + 1) % BUFFER_COUNT;
+    }
+
+    /**
+     * Map the buffers whose copy is done, and hand the pixels to the saver
+     *
+     * @param force map all the buffers in flight, it may wait for the copy
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void finishReadbacks(boolean force) {
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            Request request = mPending[i];
+            if (request == null) {
+                continue;
+            }
+            if (!force && !isSignaled(mFences[i]) && ++mPendingFrames[i] < MAX_PENDING_FRAMES) {
+                continue;
+            }
+            GLES30.glDeleteSync(mFences[i]);
+            mFences[i] = 0;
+            mPending[i] = null;
+            mInFlightCount--;
+
+            int bytes = mBufferWidth * mBufferHeight * 4;
+            mGLState.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, mPixelBuffers[i]);
+            Buffer mapped = GLES30.glMapBufferRange(GLES30.GL_PIXEL_PACK_BUFFER, 0, bytes, GLES30.GL_MAP_READ_BIT);
+            if (mapped instanceof ByteBuffer) {
+                ByteBuffer pixels = mSaver.obtainBuffer(mBufferWidth, mBufferHeight);
+                pixels.put((ByteBuffer) mapped);
+                pixels.rewind();
+                GLES30.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER);
+                mSaver.save(pixels, mBufferWidth, mBufferHeight, request.mFormat, request.mCallback);
+            } else {
+                Log.w(TAG, "finishReadbacks: failed to map the pixel buffer, error " + GLES20.glGetError());
+                mSaver.fail(request.mCallback);
+            }
+            mGLState.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static boolean isSignaled(long fence) {
+        int status = GLES30.glClientWaitSync(fence, 0, 0);
+        return status == GLES30.GL_ALREADY_SIGNALED || status == GLES30.GL_CONDITION_SATISFIED
+                || status == GLES30.GL_WAIT_FAILED;
+    }
+
+    /**
+     * Bytes of the pixel buffers allocated once a frame of this size is captured
+     */
+    public static long getBufferBytes(int width, int height) {
+        return (long) BUFFER_COUNT * width * height * 4;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private void allocateBuffers(int width, int height) {
+        int bytes = (int) (getBufferBytes(width, height) / BUFFER_COUNT);
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            if (mPixelBuffers[i] == 0) {
+                int[] buffer = {0};
+                GLES20.glGenBuffers(1, buffer, 0);
+                mPixelBuffers[i] = buffer[0];
+            }
+            mGLState.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, mPixelBuffers[i]);
+            GLES20.glBufferData(GLES30.GL_PIXEL_PACK_BUFFER, bytes, null, GLES30.GL_STREAM_READ);
+            mResources.register(GLResourceRegistry.BUFFER, mPixelBuffers[i], bytes);
+        }
+        mGLState.bindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0);
+        mBufferWidth = width;
+        mBufferHeight = height;
+        Log.d(TAG, "allocateBuffers: " + width + "x" + height);
+    }
+
+    /**
+     * Fail the captures not finished, no GL calls are made. The pixel buffers are released
+     * along with the registry, and the fences go away with the context.
+     */
+    public void dispose() {
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            if (mPending[i] != null) {
+                mFences[i] = 0;
+                mSaver.fail(mPending[i].mCallback);
+                mPending[i] = null;
+            }
+        }
+        mInFlightCount = 0;
+        mDisposed = true;
+        failRequests();
+    }
+
+    private void failRequests() {
+        Request request;
+        while ((request = mRequests.poll()) != null) {
+            mSaver.fail(request.mCallback);
+        }
+    }
+
+    private static class Request {
+
+        private final Bitmap.CompressFormat mFormat;
+
+        private final SnapshotSaver.Callback mCallback;
+
+        Request(Bitmap.CompressFormat format, SnapshotSaver.Callback callback) {
+            mFormat = format;
+            mCallback = callback;
+        }
+    }
+}
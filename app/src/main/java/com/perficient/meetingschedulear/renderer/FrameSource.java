@@ -0,0 +1,35 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+/**
+ * The targets of a camera frame, so collecting the boards doesn't depend on the tracker.
+ * The targets are accessed by index, so a frame is read without creating objects for them.
+ */
+public interface FrameSource {
+
+    double getTimestamp();
+
+    int getTargetCount();
+
+    /**
+     * @return runtime id of the image target at this index, 0 if it's not tracked or not an image target
+     */
+    int getTrackedTargetId(int index);
+
+    /**
+     * Only called when a target is seen for the first time
+     */
+    String getTargetName(int index);
+
+    /**
+     * Only called when a target is seen for the first time, the size of a target doesn't change
+     *
+     * @param outSize width and height of the target will be written into it
+     */
+    void getTargetSize(int index, float[] outSize);
+
+    /**
+     * @param outPose OpenGL model view matrix of the target will be written into it, column major
+     */
+    void getPose(int index, float[] outPose);
+}
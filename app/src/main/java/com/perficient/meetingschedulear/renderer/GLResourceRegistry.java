@@ -0,0 +1,182 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of all the GL objects created in a GL context along with their estimated size,
+ * so they can all be freed when the renderer is disposed, and leaks can be found by the counts.
+ * <p>
+ * Objects are deleted through a {@link Releaser}, which makes the GL calls on a real context,
+ * see {@link GLStateCache}. When the context is lost, the objects are gone with it, so
+ * {@link #abandonAll()} just forgets them.
+ * <p>
+ * Must be accessed on the GL thread only.
+ */
+public class GLResourceRegistry {
+
+    public static final int TEXTURE = 0;
+    public static final int BUFFER = 1;
+    public static final int PROGRAM = 2;
+    public static final int SHADER = 3;
+
+    private static final int TYPE_COUNT = 4;
+
+    private static final String[] TYPE_NAMES = {"textures", "buffers", "programs", "shaders"};
+
+    /**
+     * Deletes the GL objects
+     */
+    public interface Releaser {
+
+        /**
+         * @param type one of {@link #TEXTURE}, {@link #BUFFER}, {@link #PROGRAM} and {@link #SHADER}
+         */
+        void release(int type, int handle);
+    }
+
+    private final Releaser mReleaser;
+
+    /**
+     * Estimated bytes of the live objects of each type, keyed by handle
+     */
+    private final List<Map<Integer, Long>> mObjects = new ArrayList<>(TYPE_COUNT);
+
+    private final long[] mLiveBytes = new long[TYPE_COUNT];
+
+    /**
+     * Total bytes allowed, 0 for no budget
+     */
+    private long mBudgetBytes;
+
+    private int mReleasedCount;
+    private int mAbandonedCount;
+
+    public GLResourceRegistry(Releaser releaser) {
+        mReleaser = releaser;
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            mObjects.add(new HashMap<Integer, Long>());
+        }
+    }
+
+    /**
+     * Track a newly created object, register it again to update its size.
+     *
+     * @param bytes estimated size on GPU
+     */
+    public void register(int type, int handle, long bytes) {
+        if (handle == 0) {
+            return;
+        }
+        Long previous = mObjects.get(type).put(handle, bytes);
+        mLiveBytes[type] += bytes - (previous != null ? previous : 0);
+    }
+
+    /**
+     * Delete an object and stop tracking it, objects not registered are ignored
+     */
+    public void release(int type, int handle) {
+        Long bytes = mObjects.get(type).remove(handle);
+        if (bytes == null) {
+            return;
+        }
+        mLiveBytes[type] -= bytes;
+        mReleasedCount++;
+        mReleaser.release(type, handle);
+    }
+
+    /**
+     * Delete all the objects, must be called while the context is still current
+     */
+    public void releaseAll() {
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            Map<Integer, Long> objects = mObjects.get(type);
+            for (int handle : objects.keySet()) {
+                mReleaser.release(type, handle);
+                mReleasedCount++;
+            }
+            objects.clear();
+            mLiveBytes[type] = 0;
+        }
+    }
+
+    /**
+     * Forget all the objects without deleting them, when the context is lost they are already gone,
+     * and their handles may be reused by the new context.
+     */
+    public void abandonAll() {
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            Map<Integer, Long> objects = mObjects.get(type);
+            mAbandonedCount += objects.size();
+            objects.clear();
+            mLiveBytes[type] = 0;
+        }
+    }
+
+    public boolean contains(int type, int handle) {
+        return mObjects.get(type).containsKey(handle);
+    }
+
+    public int getLiveCount(int type) {
+        return mObjects.get(type).size();
+    }
+
+    public int getLiveCount() {
+        int count = 0;
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            count += getLiveCount(type);
+        }
+        return count;
+    }
+
+    public long getLiveBytes(int type) {
+        return mLiveBytes[type];
+    }
+
+    public long getLiveBytes() {
+        long bytes = 0;
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            bytes += mLiveBytes[type];
+        }
+        return bytes;
+    }
+
+    /**
+     * @param budgetBytes total bytes allowed for all the objects, 0 for no budget
+     */
+    public void setBudgetBytes(long budgetBytes) {
+        mBudgetBytes = budgetBytes;
+    }
+
+    public long getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    public boolean isOverBudget() {
+        return mBudgetBytes > 0 && getLiveBytes() > mBudgetBytes;
+    }
+
+    public int getReleasedCount() {
+        return mReleasedCount;
+    }
+
+    public int getAbandonedCount() {
+        return mAbandonedCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("GLResourceRegistry{");
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            builder.append(TYPE_NAMES[type]).append('=').append(getLiveCount(type))
+                    .append('/').append(mLiveBytes[type]).append("B, ");
+        }
+        return builder.append("budget=").append(mBudgetBytes)
+                .append(", released=").append(mReleasedCount)
+                .append(", abandoned=").append(mAbandonedCount)
+                .append('}').toString();
+    }
+}
@@ -0,0 +1,371 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * Tracks the GL state set by our renderers, so a state change is only issued to
+ * the driver when the value really changes.
+ * <p>
+ * All the renderer code should set the state through this class. When the state is changed
+ * by others, e.g. the camera background drawn by EasyAR, call {@link #invalidate()} so the
+ * next change is always issued.
+ * <p>
+ * It's also the releaser of {@link GLResourceRegistry}, so deleting an object resets the state
+ * which refers to it.
+ * <p>
+ * Must be accessed on the GL thread only, one instance per GL context.
+ */
+public class GLStateCache implements GLResourceRegistry.Releaser {
+
+    private static final String TAG = GLStateCache.class.getSimpleName();
+
+    /**
+     * The state is not known, the next change will be issued
+     */
+    private static final int UNKNOWN = -1;
+
+    /**
+     * Texture units tracked, bindings of the other units are issued every time
+     */
+    private static final int MAX_TEXTURE_UNITS = 8;
+
+    /**
+     * Vertex attributes tracked, one bit for each
+     */
+    private static final int MAX_VERTEX_ATTRIBS = 32;
+
+    /**
+     * Log the counters every this many frames, enable with adb shell setprop log.tag.GLStateCache DEBUG
+     */
+    private static final int LOG_INTERVAL_FRAMES = 300;
+
+    private int mBlend;
+    private int mDepthTest;
+    private int mCullFace;
+
+    private int mBlendSrc;
+    private int mBlendDst;
+
+    private int mProgram;
+
+    private int mArrayBuffer;
+    private int mElementArrayBuffer;
+
+    private int mActiveTexture;
+    private final int[] mBoundTextures = new int[MAX_TEXTURE_UNITS];
+
+    /**
+     * Bits of the enabled attributes, only the bits in {@link #mKnownAttribs} are valid
+     */
+    private int mEnabledAttribs;
+    private int mKnownAttribs;
+
+    private final int[] mViewport = new int[4];
+    private boolean mViewportKnown;
+
+    private final float[] mClearColor = new float[4];
+    private boolean mClearColorKnown;
+
+    private int mFrameCount;
+    private int mIssuedCount;
+    private int mAvoidedCount;
+    private int mLastIssuedCount;
+    private int mLastAvoidedCount;
+
+    public GLStateCache() {
+        invalidate();
+    }
+
+    /**
+     * Forget all the tracked state, call it after someone else touched the GL state
+     */
+    public void invalidate() {
+        mBlend = UNKNOWN;
+        mDepthTest = UNKNOWN;
+        mCullFace = UNKNOWN;
+        mBlendSrc = UNKNOWN;
+        mBlendDst = UNKNOWN;
+        mProgram = UNKNOWN;
+        mArrayBuffer = UNKNOWN;
+        mElementArrayBuffer = UNKNOWN;
+        mActiveTexture = UNKNOWN;
+        invalidateTextures();
+        mKnownAttribs = 0;
+        mViewportKnown = false;
+        mClearColorKnown = false;
+    }
+
+    /**
+     * Forget the texture bindings, call it after a texture is bound without this class,
+     * e.g. by {@link com.perficient.meetingschedulear.util.TextureHelper}
+     */
+    public void invalidateTextures() {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            mBoundTextures[i] = UNKNOWN;
+        }
+    }
+
+    /**
+     * Call it at the beginning of each frame, it keeps the counters of the previous frame
+     */
+    public void beginFrame() {
+        mLastIssuedCount = mIssuedCount;
+        mLastAvoidedCount = mAvoidedCount;
+        mIssuedCount = 0;
+        mAvoidedCount = 0;
+        // building the log allocates, so it's only done when debug logging is enabled
+        if (++mFrameCount % LOG_INTERVAL_FRAMES == 0 && Log.isLoggable(TAG, Log.DEBUG)) {
+            logStats();
+        }
+    }
+
+    public void enable(int cap) {
+        setCapability(cap, true);
+    }
+
+    public void disable(int cap) {
+        setCapability(cap, false);
+    }
+
+    private void setCapability(int cap, boolean enabled) {
+        int value = enabled ? 1 : 0;
+        switch (cap) {
+            case GLES20.GL_BLEND:
+                if (mBlend == value) {
+                    mAvoidedCount++;
+                    return;
+                }
+                mBlend = value;
+                break;
+            case GLES20.GL_DEPTH_TEST:
+                if (mDepthTest == value) {
+                    mAvoidedCount++;
+                    return;
+                }
+                mDepthTest = value;
+                break;
+            case GLES20.GL_CULL_FACE:
+                if (mCullFace == value) {
+                    mAvoidedCount++;
+                    return;
+                }
+                mCullFace = value;
+                break;
+            default:
+                // not tracked
+                break;
+        }
+        mIssuedCount++;
+        if (enabled) {
+            GLES20.glEnable(cap);
+        } else {
+            GLES20.glDisable(cap);
+        }
+    }
+
+    public void blendFunc(int src, int dst) {
+        if (mBlendSrc == src && mBlendDst == dst) {
+            mAvoidedCount++;
+            return;
+        }
+        mBlendSrc = src;
+        mBlendDst = dst;
+        mIssuedCount++;
+        GLES20.glBlendFunc(src, dst);
+    }
+
+    public void useProgram(int program) {
+        if (mProgram == program) {
+            mAvoidedCount++;
+            return;
+        }
+        mProgram = program;
+        mIssuedCount++;
+        GLES20.glUseProgram(program);
+    }
+
+    public void bindBuffer(int target, int buffer) {
+        if (target == GLES20.GL_ARRAY_BUFFER) {
+            if (mArrayBuffer == buffer) {
+                mAvoidedCount++;
+                return;
+            }
+            mArrayBuffer = buffer;
+        } else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+            if (mElementArrayBuffer == buffer) {
+                mAvoidedCount++;
+                return;
+            }
+            mElementArrayBuffer = buffer;
+        }
+        mIssuedCount++;
+        GLES20.glBindBuffer(target, buffer);
+    }
+
+    /**
+     * Delete a buffer, the binding falls back to 0 if it's bound
+     */
+    public void deleteBuffer(int buffer) {
+        if (mArrayBuffer == buffer) {
+            mArrayBuffer = 0;
+        }
+        if (mElementArrayBuffer == buffer) {
+            mElementArrayBuffer = 0;
+        }
+        GLES20.glDeleteBuffers(1, new int[]{buffer}, 0);
+    }
+
+    /**
+     * @param unit texture unit, e.g. {@link GLES20#GL_TEXTURE0}
+     */
+    public void activeTexture(int unit) {
+        if (mActiveTexture == unit) {
+            mAvoidedCount++;
+            return;
+        }
+        mActiveTexture = unit;
+        mIssuedCount++;
+        GLES20.glActiveTexture(unit);
+    }
+
+    /**
+     * Bind a 2D texture to the active texture unit
+     */
+    public void bindTexture(int texture) {
+        int index = mActiveTexture - GLES20.GL_TEXTURE0;
+        if (mActiveTexture != UNKNOWN && index >= 0 && index < MAX_TEXTURE_UNITS) {
+            if (mBoundTextures[index] == texture) {
+                mAvoidedCount++;
+                return;
+            }
+            mBoundTextures[index] = texture;
+        }
+        mIssuedCount++;
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+    }
+
+    /**
+     * Delete a texture, the units it's bound to fall back to 0
+     */
+    public void deleteTexture(int texture) {
+        for (int i = 0; i < MAX_TEXTURE_UNITS; i++) {
+            if (mBoundTextures[i] == texture) {
+                mBoundTextures[i] = 0;
+            }
+        }
+        GLES20.glDeleteTextures(1, new int[]{texture}, 0);
+    }
+
+    public void deleteProgram(int program) {
+        if (mProgram == program) {
+            mProgram = 0;
+        }
+        GLES20.glDeleteProgram(program);
+    }
+
+    @Override
+    public void release(int type, int handle) {
+        switch (type) {
+            case GLResourceRegistry.TEXTURE:
+                deleteTexture(handle);
+                break;
+            case GLResourceRegistry.BUFFER:
+                deleteBuffer(handle);
+                break;
+            case GLResourceRegistry.PROGRAM:
+                deleteProgram(handle);
+                break;
+            case GLResourceRegistry.SHADER:
+                GLES20.glDeleteShader(handle);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown GL object type " + type);
+        }
+    }
+
+    public void enableVertexAttribArray(int index) {
+        setVertexAttribArray(index, true);
+    }
+
+    public void disableVertexAttribArray(int index) {
+        setVertexAttribArray(index, false);
+    }
+
+    private void setVertexAttribArray(int index, boolean enabled) {
+        if (index < 0) {
+            // the attribute is not used by the program
+            return;
+        }
+        if (index < MAX_VERTEX_ATTRIBS) {
+            int bit = 1 << index;
+            if ((mKnownAttribs & bit) != 0 && ((mEnabledAttribs & bit) != 0) == enabled) {
+                mAvoidedCount++;
+                return;
+            }
+            mKnownAttribs |= bit;
+            mEnabledAttribs = enabled ? mEnabledAttribs | bit : mEnabledAttribs & ~bit;
+        }
+        mIssuedCount++;
+        if (enabled) {
+            GLES20.glEnableVertexAttribArray(index);
+        } else {
+            GLES20.glDisableVertexAttribArray(index);
+        }
+    }
+
+    public void viewport(int x, int y, int width, int height) {
+        if (mViewportKnown && mViewport[0] == x && mViewport[1] == y
+                && mViewport[2] == width && mViewport[3] == height) {
+            mAvoidedCount++;
+            return;
+        }
+        mViewport[0] = x;
+        mViewport[1] = y;
+        mViewport[2] = width;
+        mViewport[3] = height;
+        mViewportKnown = true;
+        mIssuedCount++;
+        GLES20.glViewport(x, y, width, height);
+    }
+
+    public void clearColor(float red, float green, float blue, float alpha) {
+        if (mClearColorKnown && mClearColor[0] == red && mClearColor[1] == green
+                && mClearColor[2] == blue && mClearColor[3] == alpha) {
+            mAvoidedCount++;
+            return;
+        }
+        mClearColor[0] = red;
+        mClearColor[1] = green;
+        mClearColor[2] = blue;
+        mClearColor[3] = alpha;
+        mClearColorKnown = true;
+        mIssuedCount++;
+        GLES20.glClearColor(red, green, blue, alpha);
+    }
+
+    /**
+     * @return state changes issued to the driver in the previous frame
+     */
+    public int getIssuedCount() {
+        return mLastIssuedCount;
+    }
+
+    /**
+     * @return redundant state changes skipped in the previous frame
+     */
+    public int getAvoidedCount() {
+        return mLastAvoidedCount;
+    }
+
+    public void logStats() {
+        Log.d(TAG, "logStats: " + toString());
+    }
+
+    @Override
+    public String toString() {
+        return "GLStateCache{issued=" + mLastIssuedCount
+                + ", avoided=" + mLastAvoidedCount + "}";
+    }
+}
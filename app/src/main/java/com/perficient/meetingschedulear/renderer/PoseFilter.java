@@ -0,0 +1,316 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+import com.perficient.meetingschedulear.util.MatrixMath;
+
+/**
+ * Smooths the pose of a target across camera frames and predicts it to the time it's displayed.
+ * <p>
+ * The translation and the rotation, as a quaternion, go through an alpha-beta filter, which tracks
+ * the value along with its speed, so a steady motion is followed without lag. Its gain is picked
+ * the One-Euro way: from a cutoff frequency which rises with the smoothed speed, so a still board
+ * doesn't jitter and a moving one follows quickly. The speed then extrapolates the pose by the time
+ * from the camera frame to the display, which makes up for the frame the tracking is behind, and
+ * keeps the board moving between camera frames when the camera runs slower than the display.
+ * <p>
+ * All the state is preallocated, a frame allocates nothing. Must be accessed on the GL thread only.
+ */
+public class PoseFilter {
+
+    /**
+     * Translation x, y, z, then rotation quaternion x, y, z, w
+     */
+    private static final int CHANNELS = 7;
+    private static final int ROTATION = 3;
+
+    /**
+     * Below these speeds, in units and quaternion units per second, the board is at rest
+     */
+    private static final float REST_TRANSLATION_SPEED = 1e-3f;
+    private static final float REST_ROTATION_SPEED = 1e-3f;
+
+    /**
+     * Tunable parameters, shared by the filters of all the targets. The setters can be called on
+     * any thread, the change takes effect from the next frame.
+     */
+    public static class Params {
+
+        private volatile boolean mEnabled = true;
+
+        private volatile float mMinCutoff = 1.0f;
+
+        private volatile float mTranslationBeta = 2.0f;
+
+        private volatile float mRotationBeta = 0.5f;
+
+        private volatile float mDerivativeCutoff = 1.0f;
+
+        private volatile float mLatency = 0.033f;
+
+        private volatile float mMaxPrediction = 0.1f;
+
+        private volatile float mMaxGap = 0.25f;
+
+        /**
+         * @param enabled filter and predict the poses, otherwise the poses are drawn as tracked
+         */
+        public void setEnabled(boolean enabled) {
+            mEnabled = enabled;
+        }
+
+        public boolean isEnabled() {
+            return mEnabled;
+        }
+
+        /**
+         * @param minCutoff cutoff frequency in Hz of a still board, lower for less jitter and more lag
+         */
+        public void setMinCutoff(float minCutoff) {
+            if (minCutoff <= 0) {
+                throw new IllegalArgumentException("minCutoff must be positive");
+            }
+            mMinCutoff = minCutoff;
+        }
+
+        public float getMinCutoff() {
+            return mMinCutoff;
+        }
+
+        /**
+         * @param translationBeta how fast the cutoff rises with the speed of the translation,
+         *                        higher for less lag when moving
+         * @param rotationBeta    the same for the rotation
+         */
+        public void setBeta(float translationBeta, float rotationBeta) {
+            if (translationBeta < 0 || rotationBeta < 0) {
+                throw new IllegalArgumentException("beta must not be negative");
+            }
+            mTranslationBeta = translationBeta;
+            mRotationBeta = rotationBeta;
+        }
+
+        public float getTranslationBeta() {
+            return mTranslationBeta;
+        }
+
+        public float getRotationBeta() {
+            return mRotationBeta;
+        }
+
+        /**
+         * @param derivativeCutoff cutoff frequency in Hz of the speed the cutoff rises with
+         */
+        public void setDerivativeCutoff(float derivativeCutoff) {
+            if (derivativeCutoff <= 0) {
+                throw new IllegalArgumentException("derivativeCutoff must be positive");
+            }
+            mDerivativeCutoff = derivativeCutoff;
+        }
+
+        public float getDerivativeCutoff() {
+            return mDerivativeCutoff;
+        }
+
+        /**
+         * @param latency       seconds from the camera frame to the display, the pose is predicted
+         *                      this far ahead, plus the time the frame is drawn again. 0 to only smooth.
+         * @param maxPrediction the pose is never predicted further than this many seconds
+         */
+        public void setPrediction(float latency, float maxPrediction) {
+            if (latency < 0 || maxPrediction < 0) {
+                throw new IllegalArgumentException("prediction must not be negative");
+            }
+            mLatency = latency;
+            mMaxPrediction = maxPrediction;
+        }
+
+        public float getLatency() {
+            return mLatency;
+        }
+
+        public float getMaxPrediction() {
+            return mMaxPrediction;
+        }
+
+        /**
+         * @param maxGap seconds between two camera frames after which the filter starts over
+         */
+        public void setMaxGap(float maxGap) {
+            if (maxGap <= 0) {
+                throw new IllegalArgumentException("maxGap must be positive");
+            }
+            mMaxGap = maxGap;
+        }
+
+        public float getMaxGap() {
+            return mMaxGap;
+        }
+    }
+
+    private final Params mParams;
+
+    private final float[] mRaw = new float[CHANNELS];
+
+    private final float[] mValue = new float[CHANNELS];
+
+    /**
+     * Estimated speed of each channel, per second
+     */
+    private final float[] mSpeed = new float[CHANNELS];
+
+    private final float[] mPredicted = new float[CHANNELS];
+
+    /**
+     * Low passed speed of the translation and the rotation, the cutoff rises with it
+     */
+    private float mTranslationSpeed;
+    private float mRotationSpeed;
+
+    private boolean mInitialized;
+
+    /**
+     * Camera timestamp of the last pose, in seconds
+     */
+    private double mTimestamp;
+
+    /**
+     * When the last pose was received, System.nanoTime()
+     */
+    private long mReceivedNanos;
+
+    private boolean mMoving;
+
+    public PoseFilter(Params params) {
+        mParams = params;
+    }
+
+    /**
+     * Forget the poses before, e.g. when the target is found again
+     */
+    public void reset() {
+        mInitialized = false;
+        mMoving = false;
+    }
+
+    /**
+     * Filter the pose of a new camera frame, the same frame again is ignored
+     *
+     * @param pose      OpenGL model view matrix of the target, column major
+     * @param timestamp camera timestamp of the frame, in seconds
+     * @param nowNanos  System.nanoTime() when the frame is received
+     */
+    public void update(float[] pose, double timestamp, long nowNanos) {
+        if (mInitialized && timestamp == mTimestamp) {
+            return;
+        }
+        float[] raw = mRaw;
+        raw[0] = pose[12];
+        raw[1] = pose[13];
+        raw[2] = pose[14];
+        MatrixMath.toQuaternion(raw, ROTATION, pose);
+
+        float dt = (float) (timestamp - mTimestamp);
+        if (!mInitialized || dt < 0 || dt > mParams.mMaxGap) {
+            System.arraycopy(raw, 0, mValue, 0, CHANNELS);
+            for (int i = 0; i < CHANNELS; i++) {
+                mSpeed[i] = 0;
+            }
+            mTranslationSpeed = 0;
+            mRotationSpeed = 0;
+            mInitialized = true;
+            mTimestamp = timestamp;
+            mReceivedNanos = nowNanos;
+            return;
+        }
+
+        // q and -q are the same rotation, take the one closer to the last
+        float[] value = mValue;
+        if (raw[3] * value[3] + raw[4] * value[4] + raw[5] * value[5] + raw[6] * value[6] < 0) {
+            for (int i = ROTATION; i < CHANNELS; i++) {
+                raw[i] = -raw[i];
+            }
+        }
+
+        float derivativeAlpha = alpha(mParams.mDerivativeCutoff, dt);
+        mTranslationSpeed += derivativeAlpha * (length(mSpeed, 0, ROTATION) - mTranslationSpeed);
+        mRotationSpeed += derivativeAlpha * (length(mSpeed, ROTATION, CHANNELS) - mRotationSpeed);
+        filter(0, ROTATION, dt, mParams.mMinCutoff + mParams.mTranslationBeta * mTranslationSpeed);
+        filter(ROTATION, CHANNELS, dt, mParams.mMinCutoff + mParams.mRotationBeta * mRotationSpeed);
+        MatrixMath.normalizeQuaternion(value, ROTATION);
+
+        mTimestamp = timestamp;
+        mReceivedNanos = nowNanos;
+    }
+
+    /**
+     * Alpha-beta filter on the channels from start to end: the value is moved by its speed, then
+     * corrected by part of the error. The speed gain is derived from the value gain, so the filter
+     * is critically damped.
+     */
+    private void filter(int start, int end, float dt, float cutoff) {
+        float alpha = alpha(cutoff, dt);
+        float beta = alpha * alpha / (2f - alpha) / dt;
+        float[] raw = mRaw;
+        float[] value = mValue;
+        float[] speed = mSpeed;
+        for (int i = start; i < end; i++) {
+            float expected = value[i] + speed[i] * dt;
+            float error = raw[i] - expected;
+            value[i] = expected + alpha * error;
+            speed[i] += beta * error;
+        }
+    }
+
+    /**
+     * Smoothing factor of an exponential low pass filter with this cutoff frequency
+     */
+    private static float alpha(float cutoff, float dt) {
+        float tau = 1f / (2f * (float) Math.PI * cutoff);
+        return 1f / (1f + tau / dt);
+    }
+
+    /**
+     * Write the filtered pose, extrapolated to the time it's displayed. Call it after
+     * {@link #update(float[], double, long)}, for every frame drawn.
+     *
+     * @param outPose  OpenGL model view matrix of the target will be written into it, column major
+     * @param nowNanos System.nanoTime() when the frame is drawn
+     */
+    public void predict(float[] outPose, long nowNanos) {
+        float latency = mParams.mLatency;
+        float maxPrediction = mParams.mMaxPrediction;
+        float horizon = latency + (nowNanos - mReceivedNanos) / 1e9f;
+        boolean clamped = horizon >= maxPrediction;
+        if (clamped) {
+            horizon = maxPrediction;
+        }
+
+        float[] predicted = mPredicted;
+        float[] value = mValue;
+        float[] speed = mSpeed;
+        for (int i = 0; i < CHANNELS; i++) {
+            predicted[i] = value[i] + speed[i] * horizon;
+        }
+        MatrixMath.normalizeQuaternion(predicted, ROTATION);
+        MatrixMath.setRotationTranslation(outPose, predicted, ROTATION, predicted[0], predicted[1], predicted[2]);
+
+        // the prediction changes with time until it's clamped
+        mMoving = !clamped && (length(speed, 0, ROTATION) > REST_TRANSLATION_SPEED
+                || length(speed, ROTATION, CHANNELS) > REST_ROTATION_SPEED);
+    }
+
+    private static float length(float[] v, int start, int end) {
+        float sum = 0;
+        for (int i = start; i < end; i++) {
+            sum += v[i] * v[i];
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    /**
+     * @return the pose predicted changes in the next frame even without a new camera frame
+     */
+    public boolean isMoving() {
+        return mMoving;
+    }
+}
@@ -0,0 +1,304 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+import android.content.Context;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compile and link the shader programs once per GL context, and check the status of them.
+ * <p>
+ * On an OpenGL ES 3.0 context the linked binaries are saved in the cache dir, and loaded
+ * with glProgramBinary next time, so the shaders are not compiled again on resume and cold start.
+ * The binaries are keyed by a SHA-1 of the shader source and the driver, a binary rejected by the driver
+ * is simply compiled again from source.
+ * <p>
+ * The programs are registered in {@link GLResourceRegistry}, which deletes them on dispose.
+ * <p>
+ * Must be accessed on the GL thread only.
+ */
+public class ProgramManager {
+
+    private static final String TAG = ProgramManager.class.getSimpleName();
+
+    private static final String BINARY_DIR = "programs";
+
+    /**
+     * Programs of this context, keyed by name
+     */
+    private final Map<String, Integer> mPrograms = new HashMap<>();
+
+    private final File mBinaryDir;
+
+    /**
+     * GL_RENDERER and GL_VERSION, a binary only works on the driver it's got from
+     */
+    private final String mDriver;
+
+    private final boolean mBinarySupported;
+
+    private int mCompiledCount;
+    private int mBinaryLoadedCount;
+
+    private final GLResourceRegistry mResources;
+
+    public ProgramManager(Context context, GLResourceRegistry resources) {
+        mResources = resources;
+        mBinaryDir = new File(context.getCacheDir(), BINARY_DIR);
+        String version = GLES20.glGetString(GLES20.GL_VERSION);
+        mDriver = GLES20.glGetString(GLES20.GL_RENDERER) + "|" + version;
+        mBinarySupported = isBinarySupported(version);
+        Log.d(TAG, "ProgramManager: " + mDriver + ", binary supported: " + mBinarySupported);
+    }
+
+    /**
+     * glGetProgramBinary is only exposed in the Java bindings of OpenGL ES 3.0
+     */
+    private static boolean isBinarySupported(String version) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2
+                || version == null || !version.startsWith("OpenGL ES ") || version.startsWith("OpenGL ES 2")) {
+            return false;
+        }
+        int[] formatCount = new int[1];
+        GLES20.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formatCount, 0);
+        return formatCount[0] > 0;
+    }
+
+    /**
+     * Get the program of this name, it's loaded from the saved binary or compiled from source
+     * the first time in this context.
+     *
+     * @throws RuntimeException if the shaders fail to compile or link
+     */
+    public int getProgram(String name, String vertexShader, String fragmentShader) {
+        Integer program = mPrograms.get(name);
+        if (program != null) {
+            return program;
+        }
+
+        byte[] key = mBinarySupported ? keyOf(vertexShader, fragmentShader) : null;
+        int handle = key != null ? loadBinary(name, key) : 0;
+        if (handle == 0) {
+            handle = compile(vertexShader, fragmentShader);
+            mCompiledCount++;
+            if (key != null) {
+                saveBinary(name, key, handle);
+            }
+        } else {
+            mBinaryLoadedCount++;
+        }
+        // the driver doesn't tell the size of a program, it's small compared to the textures
+        mResources.register(GLResourceRegistry.PROGRAM, handle, 0);
+        mPrograms.put(name, handle);
+        return handle;
+    }
+
+    /**
+     * @return SHA-1 of the driver and the shader sources, null if SHA-1 is not available
+     */
+    private byte[] keyOf(String vertexShader, String fragmentShader) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((mDriver + "\n" + vertexShader + "\n" + fragmentShader).getBytes(Charset.forName("UTF-8")));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            Log.w(TAG, "keyOf: no SHA-1, the binaries are not cached", e);
+            return null;
+        }
+    }
+
+    private int compile(String vertexShader, String fragmentShader) {
+        int vertShader = compileShader(GLES20.GL_VERTEX_SHADER, vertexShader);
+        int fragShader;
+        try {
+            fragShader = compileShader(GLES20.GL_FRAGMENT_SHADER, fragmentShader);
+        } catch (RuntimeException e) {
+            mResources.release(GLResourceRegistry.SHADER, vertShader);
+            throw e;
+        }
+
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vertShader);
+        GLES20.glAttachShader(program, fragShader);
+        if (mBinarySupported) {
+            GLES30.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+        GLES20.glLinkProgram(program);
+
+        // the shaders are not needed once the program is linked
+        GLES20.glDetachShader(program, vertShader);
+        GLES20.glDetachShader(program, fragShader);
+        mResources.release(GLResourceRegistry.SHADER, vertShader);
+        mResources.release(GLResourceRegistry.SHADER, fragShader);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            String log = GLES20.glGetProgramInfoLog(program);
+            GLES20.glDeleteProgram(program);
+            Log.e(TAG, "compile: link failed: " + log);
+            throw new RuntimeException("Error linking program: " + log);
+        }
+        return program;
+    }
+
+    private int compileShader(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        mResources.register(GLResourceRegistry.SHADER, shader, 0);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            String log = GLES20.glGetShaderInfoLog(shader);
+            mResources.release(GLResourceRegistry.SHADER, shader);
+            Log.e(TAG, "compileShader: compile failed: " + log);
+            throw new RuntimeException("Error compiling shader: " + log);
+        }
+        return shader;
+    }
+
+    /**
+     * @return the program linked from the saved binary, or 0 if there is none or the driver rejects it
+     */
+    private int loadBinary(String name, byte[] key) {
+        File file = new File(mBinaryDir, name + ".bin");
+        if (!file.exists()) {
+            return 0;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            byte[] savedKey = new byte[key.length];
+            in.readFully(savedKey);
+            if (!Arrays.equals(savedKey, key)) {
+                // the shaders or the driver have changed
+                return 0;
+            }
+            int format = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length > file.length()) {
+                Log.w(TAG, "loadBinary: binary of " + name + " is broken, length " + length);
+                return 0;
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+
+            ByteBuffer binary = ByteBuffer.allocateDirect(length).order(ByteOrder.nativeOrder());
+            binary.put(data).position(0);
+
+            int program = GLES20.glCreateProgram();
+            GLES30.glProgramBinary(program, format, binary, length);
+            int[] status = new int[1];
+            GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+            if (status[0] == 0) {
+                Log.w(TAG, "loadBinary: binary of " + name + " is rejected");
+                GLES20.glDeleteProgram(program);
+                return 0;
+            }
+            return program;
+        } catch (IOException e) {
+            Log.w(TAG, "loadBinary: failed to read " + file, e);
+            return 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the binary of the program on the GL thread, and write it in background
+     */
+    private void saveBinary(String name, final byte[] key, int program) {
+        int[] length = new int[1];
+        GLES20.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if (length[0] <= 0) {
+            return;
+        }
+        ByteBuffer binary = ByteBuffer.allocateDirect(length[0]).order(ByteOrder.nativeOrder());
+        int[] format = new int[1];
+        GLES30.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+
+        final byte[] data = new byte[length[0]];
+        binary.position(0);
+        binary.get(data);
+        final int binaryFormat = format[0];
+        final File file = new File(mBinaryDir, name + ".bin");
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeBinary(file, key, binaryFormat, data);
+            }
+        });
+    }
+
+    private static void writeBinary(File file, byte[] key, int format, byte[] data) {
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "writeBinary: failed to create " + dir);
+            return;
+        }
+
+        // write to a temp file first, so a broken binary is never loaded
+        File temp = new File(dir, file.getName() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            out.write(key);
+            out.writeInt(format);
+            out.writeInt(data.length);
+            out.write(data);
+            out.close();
+            out = null;
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "writeBinary: failed to rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "writeBinary: failed to write " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    public int getCompiledCount() {
+        return mCompiledCount;
+    }
+
+    public int getBinaryLoadedCount() {
+        return mBinaryLoadedCount;
+    }
+}
@@ -0,0 +1,245 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+import com.perficient.meetingschedulear.util.IntObjectMap;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * The state of every target seen, keyed by runtime id, so any number of targets are followed at
+ * once without comparing names.
+ * <p>
+ * A target goes from {@link TrackedTarget#LOST} to {@link TrackedTarget#FOUND} when it's seen, to
+ * {@link TrackedTarget#TRACKED} once it's seen in enough camera frames in a row, and back to lost
+ * once it's missed in enough camera frames in a row. A target seen for a frame or two by mistake is
+ * never reported, and a tracked one dropped for a frame or two is not lost and found again.
+ * <p>
+ * The found and lost events are delivered to the listeners through the executor, e.g. on the main
+ * thread, so the GL thread never runs them. Everything else must be accessed on the GL thread only.
+ */
+public class TargetStateTable {
+
+    private static final int DEFAULT_FOUND_FRAMES = 2;
+    private static final int DEFAULT_LOST_FRAMES = 10;
+
+    /**
+     * Receives the events through the executor of the table
+     */
+    public interface Listener {
+
+        void onTargetFound(int id, String name);
+
+        void onTargetLost(int id, String name);
+    }
+
+    private final Executor mExecutor;
+
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    private final IntObjectMap<TrackedTarget> mTargets = new IntObjectMap<>();
+
+    private final float[] mSize = new float[2];
+
+    private int mFoundFrames = DEFAULT_FOUND_FRAMES;
+
+    private int mLostFrames = DEFAULT_LOST_FRAMES;
+
+    /**
+     * Counts the calls of {@link #beginFrame(boolean, long)}, a target seen in this frame has it
+     */
+    private int mFrame;
+
+    private boolean mNewFrame;
+
+    /**
+     * Targets tracked in this frame
+     */
+    private int mSeenCount;
+
+    /**
+     * The target which became tracked last
+     */
+    private TrackedTarget mLastFound;
+
+    private long mNowNanos;
+
+    public TargetStateTable(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * @param foundFrames camera frames in a row a target must be seen in before it's found
+     * @param lostFrames  camera frames in a row a target must be missed in before it's lost
+     */
+    public void setHysteresis(int foundFrames, int lostFrames) {
+        if (foundFrames < 1 || lostFrames < 1) {
+            throw new IllegalArgumentException("frames must be positive");
+        }
+        mFoundFrames = foundFrames;
+        mLostFrames = lostFrames;
+    }
+
+    /**
+     * Can be called on any thread
+     */
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Can be called on any thread, an event already posted may still be delivered
+     */
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Call it before the targets of a frame are tracked
+     *
+     * @param newFrame the camera frame is not the same as the last one, only new frames count
+     *                 for the hysteresis
+     * @param nowNanos System.nanoTime() of this frame
+     */
+    public void beginFrame(boolean newFrame, long nowNanos) {
+        mFrame++;
+        mSeenCount = 0;
+        mNewFrame = newFrame;
+        mNowNanos = nowNanos;
+    }
+
+    /**
+     * The target at this index of the frame is tracked by the tracker
+     *
+     * @return the state of the target, created the first time it's seen
+     */
+    public TrackedTarget track(int id, FrameSource frame, int index) {
+        TrackedTarget target = mTargets.get(id);
+        if (target == null) {
+            frame.getTargetSize(index, mSize);
+            target = new TrackedTarget(id, frame.getTargetName(index), mSize[0], mSize[1]);
+            target.mFirstSeenNanos = mNowNanos;
+            mTargets.put(id, target);
+        }
+        if (target.mLastSeenFrame == mFrame) {
+            return target;
+        }
+        target.mLastSeenFrame = mFrame;
+        target.mLastSeenNanos = mNowNanos;
+        mSeenCount++;
+        if (!mNewFrame) {
+            return target;
+        }
+
+        target.mMissedFrames = 0;
+        target.mSeenFrames++;
+        if (target.mState == TrackedTarget.LOST) {
+            target.mState = TrackedTarget.FOUND;
+        }
+        if (target.mState == TrackedTarget.FOUND && target.mSeenFrames >= mFoundFrames) {
+            target.mState = TrackedTarget.TRACKED;
+            mLastFound = target;
+            publish(target, true);
+        }
+        return target;
+    }
+
+    /**
+     * Call it after all the targets of the frame are tracked, the ones not seen are missed
+     */
+    public void endFrame() {
+        if (!mNewFrame) {
+            return;
+        }
+        IntObjectMap<TrackedTarget> targets = mTargets;
+        for (int slot = 0; slot < targets.capacity(); slot++) {
+            TrackedTarget target = targets.valueAt(slot);
+            if (target == null || target.mLastSeenFrame == mFrame || target.mState == TrackedTarget.LOST) {
+                continue;
+            }
+            target.mSeenFrames = 0;
+            target.mMissedFrames++;
+            if (target.mState == TrackedTarget.FOUND) {
+                // never reported, a false positive
+                target.mState = TrackedTarget.LOST;
+            } else if (target.mMissedFrames >= mLostFrames) {
+                target.mState = TrackedTarget.LOST;
+                publish(target, false);
+            }
+        }
+    }
+
+    private void publish(TrackedTarget target, final boolean found) {
+        if (mListeners.isEmpty()) {
+            return;
+        }
+        final int id = target.getId();
+        final String name = target.getName();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : mListeners) {
+                    if (found) {
+                        listener.onTargetFound(id, name);
+                    } else {
+                        listener.onTargetLost(id, name);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the target of this runtime id, or null if it's never seen
+     */
+    public TrackedTarget get(int id) {
+        return mTargets.get(id);
+    }
+
+    public int size() {
+        return mTargets.size();
+    }
+
+    /**
+     * @return number of targets tracked in the last frame, including the ones not confirmed yet
+     */
+    public int getSeenCount() {
+        return mSeenCount;
+    }
+
+    /**
+     * @return the target found last, it may be lost since, null if none is found yet
+     */
+    public TrackedTarget getLastFound() {
+        return mLastFound;
+    }
+
+    /**
+     * @return number of targets tracked now, the ones found but not confirmed yet are not counted
+     */
+    public int getTrackedCount() {
+        int count = 0;
+        for (int slot = 0; slot < mTargets.capacity(); slot++) {
+            TrackedTarget target = mTargets.valueAt(slot);
+            if (target != null && target.mState == TrackedTarget.TRACKED) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Forget all the targets, the tracked ones are reported lost
+     */
+    public void clear() {
+        for (int slot = 0; slot < mTargets.capacity(); slot++) {
+            TrackedTarget target = mTargets.valueAt(slot);
+            if (target != null && target.mState == TrackedTarget.TRACKED) {
+                publish(target, false);
+            }
+        }
+        mTargets.clear();
+        mLastFound = null;
+    }
+}
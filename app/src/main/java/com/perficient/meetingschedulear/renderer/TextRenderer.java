@@ -0,0 +1,370 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.GLES20;
+import android.opengl.GLUtils;
+
+import com.perficient.meetingschedulear.R;
+import com.perficient.meetingschedulear.model.MeetingRoomInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Draw the meeting text on the boards as textured quads from the glyph atlas in
+ * res/drawable/font.png, all the lines of a board are drawn in one call.
+ * <p>
+ * The meshes are kept per room, so changing the schedule of a room only updates
+ * the vertices, no bitmap is drawn or uploaded.
+ */
+public class TextRenderer {
+
+    private static final String TAG = TextRenderer.class.getSimpleName();
+
+    /**
+     * font.png is a 8 x 8 grid of 64px cells, these are the glyphs in it from left to right,
+     * top to bottom, the atlas has upper case letters only.
+     */
+    private static final String GLYPHS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789!?+-=:.,*$€";
+    private static final int GRID_SIZE = 8;
+
+    /**
+     * Layout of the lines in board height, it's the same as {@link com.perficient.meetingschedulear.util.TextureHelper}
+     * that the title starts at 40% of the board height.
+     */
+    private static final float FIRST_LINE = 0.4f;
+    private static final float LINE_HEIGHT = 0.062f;
+    private static final float GLYPH_HEIGHT = 0.06f;
+    /**
+     * The glyphs don't fill their cells, so the advance is smaller than the cell width
+     */
+    private static final float GLYPH_ADVANCE = 0.75f;
+    private static final float MAX_LINE_WIDTH = 0.9f;
+    /**
+     * Lines from the title down to the bottom margin of the board, a longer schedule is drawn in a
+     * scrolling text layer instead
+     */
+    private static final int MAX_LINES = (int) ((1f - FIRST_LINE - 0.05f) / LINE_HEIGHT) + 1;
+    /**
+     * Text is drawn a little bit in front of the +z face of the unit cube to avoid z-fighting
+     */
+    private static final float TEXT_Z = 0.51f;
+
+    /**
+     * x, y, z, u, v
+     */
+    private static final int FLOATS_PER_VERTEX = 5;
+    private static final int VERTICES_PER_GLYPH = 6;
+
+    private static final String PROGRAM_NAME = "text";
+
+    private static final String VERTEX_SHADER =
+            "uniform mat4 u_MVPMatrix;\n"
+                    + "uniform vec3 u_Scale;\n"
+                    + "attribute vec4 a_Position;\n"
+                    + "attribute vec2 a_TexCoordinate;\n"
+                    + "varying vec2 v_TexCoordinate;\n"
+                    + "\n"
+                    + "void main()\n"
+                    + "{\n"
+                    + "    v_TexCoordinate = a_TexCoordinate;\n"
+                    + "    gl_Position = u_MVPMatrix * vec4(a_Position.xyz * u_Scale, 1.0);\n"
+                    + "}\n"
+                    + "\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#ifdef GL_ES\n"
+                    + "precision mediump float;\n"
+                    + "#endif\n"
+                    + "uniform sampler2D u_Texture;\n"
+                    + "uniform vec4 u_Color;\n"
+                    + "varying vec2 v_TexCoordinate;\n"
+                    + "\n"
+                    + "void main()\n"
+                    + "{\n"
+                    + "    gl_FragColor = vec4(u_Color.rgb, u_Color.a * texture2D(u_Texture, v_TexCoordinate).a);\n"
+                    + "}\n"
+                    + "\n";
+
+    private int mProgramHandle;
+    private int mPositionHandle;
+    private int mTextureCoordinateHandle;
+    private int mMVPMatrixHandle;
+    private int mScaleHandle;
+    private int mTextureUniformHandle;
+    private int mColorHandle;
+
+    private int mAtlasTexture;
+
+    private final GLStateCache mGLState;
+
+    private final GLResourceRegistry mResources;
+
+    /**
+     * Meshes of the rooms, keyed by room name
+     */
+    private final Map<String, TextMesh> mMeshes = new HashMap<>();
+
+    /**
+     * Reused to build the vertices
+     */
+    private FloatBuffer mVertexBuffer;
+
+    public TextRenderer(Context context, GLStateCache glState, ProgramManager programs,
+                        GLResourceRegistry resources) {
+        mGLState = glState;
+        mResources = resources;
+        mProgramHandle = programs.getProgram(PROGRAM_NAME, VERTEX_SHADER, FRAGMENT_SHADER);
+
+        mPositionHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_Position");
+        mTextureCoordinateHandle = GLES20.glGetAttribLocation(mProgramHandle, "a_TexCoordinate");
+        mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_MVPMatrix");
+        mScaleHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_Scale");
+        mTextureUniformHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_Texture");
+        mColorHandle = GLES20.glGetUniformLocation(mProgramHandle, "u_Color");
+
+        mAtlasTexture = loadAtlas(context);
+    }
+
+    private int loadAtlas(Context context) {
+        final int[] textureHandle = new int[1];
+        GLES20.glGenTextures(1, textureHandle, 0);
+        if (textureHandle[0] == 0) {
+            throw new RuntimeException("Error loading texture.");
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;    // No pre-scaling
+        Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), R.drawable.font, options);
+
+        mGLState.bindTexture(textureHandle[0]);
+        // the atlas is power of two, so it can be mipmapped for the small text of far boards
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR_MIPMAP_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        GLES20.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+        // RGBA with the mipmaps, which take another third
+        mResources.register(GLResourceRegistry.TEXTURE, textureHandle[0],
+                bitmap.getWidth() * bitmap.getHeight() * 4 * 4 / 3);
+        bitmap.recycle();
+
+        return textureHandle[0];
+    }
+
+    /**
+     * @return true if all the text of this room can be drawn with the glyphs in the atlas,
+     * and all the lines fit on the board
+     */
+    public static boolean canRender(MeetingRoomInfo meetingRoomInfo) {
+        if (meetingRoomInfo == null || meetingRoomInfo.getRoomName() == null) {
+            return false;
+        }
+        if (!canRender(meetingRoomInfo.getRoomName())) {
+            return false;
+        }
+        if (meetingRoomInfo.getMeetings() != null) {
+            // the title is a line too
+            if (meetingRoomInfo.getMeetings().size() + 1 > MAX_LINES) {
+                return false;
+            }
+            for (String meeting : meetingRoomInfo.getMeetings()) {
+                if (!canRender(meeting)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean canRender(String text) {
+        if (text == null) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c != ' ' && glyphIndex(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int glyphIndex(char c) {
+        return GLYPHS.indexOf(Character.toUpperCase(c));
+    }
+
+    /**
+     * Get the text mesh of this room, the vertices are only rebuilt when the text changes
+     *
+     * @param aspect width / height of the board, so that the glyphs are not stretched
+     */
+    public TextMesh obtainMesh(MeetingRoomInfo meetingRoomInfo, float aspect) {
+        String roomName = meetingRoomInfo.getRoomName();
+        TextMesh mesh = mMeshes.get(roomName);
+        if (mesh == null) {
+            mesh = new TextMesh();
+            mMeshes.put(roomName, mesh);
+        }
+        if (mesh.mMeetingRoomInfo == meetingRoomInfo && mesh.mAspect == aspect) {
+            // the same content as last frame
+            return mesh;
+        }
+        int contentHash = meetingRoomInfo.getMeetings() != null ? meetingRoomInfo.getMeetings().hashCode() : 0;
+        if (mesh.mVertexCount < 0 || mesh.mContentHash != contentHash || mesh.mAspect != aspect) {
+            List<String> lines = new ArrayList<>();
+            lines.add(roomName); // add room name as title
+            if (meetingRoomInfo.getMeetings() != null) {
+                lines.addAll(meetingRoomInfo.getMeetings()); // add all the meeting items
+            }
+            updateMesh(mesh, lines, aspect);
+            mesh.mContentHash = contentHash;
+            mesh.mAspect = aspect;
+        }
+        mesh.mMeetingRoomInfo = meetingRoomInfo;
+        return mesh;
+    }
+
+    private void updateMesh(TextMesh mesh, List<String> lines, float aspect) {
+        int glyphCount = 0;
+        for (String line : lines) {
+            glyphCount += line.length();
+        }
+        int floatCount = glyphCount * VERTICES_PER_GLYPH * FLOATS_PER_VERTEX;
+        if (mVertexBuffer == null || mVertexBuffer.capacity() < floatCount) {
+            mVertexBuffer = ByteBuffer.allocateDirect(floatCount * 4)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+        mVertexBuffer.clear();
+
+        float cellHeight = GLYPH_HEIGHT;
+        float cellWidth = cellHeight / aspect;
+        float cellUV = 1.0f / GRID_SIZE;
+        int vertexCount = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            // shrink the glyphs if the line is too long for the board
+            float advance = cellWidth * GLYPH_ADVANCE;
+            float scale = Math.min(1f, MAX_LINE_WIDTH / (advance * line.length()));
+            float width = cellWidth * scale;
+            float height = cellHeight * scale;
+            advance *= scale;
+
+            // the unit cube is from -0.5 to 0.5, and y is upward
+            float x = -(advance * (line.length() - 1) + width) / 2;
+            float baseline = 0.5f - (FIRST_LINE + i * LINE_HEIGHT);
+            for (int j = 0; j < line.length(); j++, x += advance) {
+                int index = glyphIndex(line.charAt(j));
+                if (index < 0) {
+                    // space
+                    continue;
+                }
+                float u0 = (index % GRID_SIZE) * cellUV;
+                float v0 = (index / GRID_SIZE) * cellUV;
+                float u1 = u0 + cellUV;
+                float v1 = v0 + cellUV;
+                float bottom = baseline - height * 0.15f;
+                float top = bottom + height;
+
+                putVertex(x, top, u0, v0);
+                putVertex(x, bottom, u0, v1);
+                putVertex(x + width, bottom, u1, v1);
+                putVertex(x, top, u0, v0);
+                putVertex(x + width, bottom, u1, v1);
+                putVertex(x + width, top, u1, v0);
+                vertexCount += VERTICES_PER_GLYPH;
+            }
+        }
+        mVertexBuffer.position(0);
+
+        if (mesh.mVBO == 0) {
+            int[] buffer = {0};
+            GLES20.glGenBuffers(1, buffer, 0);
+            mesh.mVBO = buffer[0];
+            // tracked from now on, so it's deleted even if it never gets any vertices
+            mResources.register(GLResourceRegistry.BUFFER, mesh.mVBO, 0);
+        }
+        mGLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.mVBO);
+        int byteCount = vertexCount * FLOATS_PER_VERTEX * 4;
+        if (byteCount > mesh.mCapacityBytes) {
+            GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, byteCount, mVertexBuffer, GLES20.GL_DYNAMIC_DRAW);
+            mesh.mCapacityBytes = byteCount;
+            // update its size
+            mResources.register(GLResourceRegistry.BUFFER, mesh.mVBO, byteCount);
+        } else if (byteCount > 0) {
+            // the buffer is large enough, only update the vertices
+            GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, byteCount, mVertexBuffer);
+        }
+        mesh.mVertexCount = vertexCount;
+    }
+
+    private void putVertex(float x, float y, float u, float v) {
+        mVertexBuffer.put(x).put(y).put(TEXT_Z).put(u).put(v);
+    }
+
+    /**
+     * Draw the text of the boards, must be called after the boards are drawn,
+     * so the text is blended on them.
+     */
+    public void render(Board[] boards, int count) {
+        mGLState.useProgram(mProgramHandle);
+
+        mGLState.activeTexture(GLES20.GL_TEXTURE0);
+        mGLState.bindTexture(mAtlasTexture);
+        GLES20.glUniform1i(mTextureUniformHandle, 0);
+        // text color - white
+        GLES20.glUniform4f(mColorHandle, 1f, 1f, 1f, 1f);
+
+        mGLState.enableVertexAttribArray(mPositionHandle);
+        mGLState.enableVertexAttribArray(mTextureCoordinateHandle);
+
+        for (int i = 0; i < count; i++) {
+            Board board = boards[i];
+            TextMesh mesh = board.getTextMesh();
+            if (mesh == null || mesh.mVertexCount <= 0) {
+                continue;
+            }
+
+            mGLState.bindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.mVBO);
+            GLES20.glVertexAttribPointer(mPositionHandle, 3, GLES20.GL_FLOAT, false,
+                    FLOATS_PER_VERTEX * 4, 0);
+            GLES20.glVertexAttribPointer(mTextureCoordinateHandle, 2, GLES20.GL_FLOAT, false,
+                    FLOATS_PER_VERTEX * 4, 3 * 4);
+
+            GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, board.getMVP(), 0);
+            GLES20.glUniform3f(mScaleHandle, board.getWidth(), board.getHeight(), board.getWidth() / 5);
+
+            GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, mesh.mVertexCount);
+        }
+    }
+
+    /**
+     * Vertices of all the lines of a board
+     */
+    public static class TextMesh {
+
+        private int mVBO;
+
+        private int mCapacityBytes;
+
+        private int mVertexCount = -1;
+
+        private int mContentHash;
+
+        private float mAspect;
+
+        /**
+         * Content of the mesh, compared by identity to skip hashing the text every frame
+         */
+        private MeetingRoomInfo mMeetingRoomInfo;
+    }
+}
@@ -0,0 +1,340 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+import android.support.annotation.DrawableRes;
+import android.util.Log;
+
+import com.perficient.meetingschedulear.model.MeetingRoomInfo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A LRU cache for the board textures uploaded to GPU.
+ * <p>
+ * Textures are keyed by room name, background drawable and a hash of the meeting list,
+ * when the total size goes over the byte budget, the least recently used textures
+ * will be deleted through glDeleteTextures. A text layer keeps its lines too, so two schedules
+ * whose hashes collide never share a texture.
+ * <p>
+ * Must be accessed on the GL thread only.
+ */
+public class TextureCache {
+
+    private static final String TAG = TextureCache.class.getSimpleName();
+
+    /**
+     * Default budget. A full size 1080 x 810 background takes 0.4 MB in ETC1 or 1.7 MB in RGB565,
+     * and is shared by all the boards on it at the same level, while the ALPHA_8 text layer of
+     * each board takes up to 0.9 MB. So 4 boards on two backgrounds take about 7 MB, the rest
+     * keeps the other levels and the layers of the previous schedules.
+     */
+    public static final int DEFAULT_BUDGET_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Entries in access order, so the eldest one is the least recently used
+     */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int mBudgetBytes;
+    private int mSizeBytes;
+
+    /**
+     * Textures used in the current frame are never evicted
+     */
+    private int mFrame;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+    private int mCollisionCount;
+
+    /**
+     * The textures are registered by the renderer when uploaded, and deleted through it
+     */
+    private final GLResourceRegistry mResources;
+
+    public TextureCache(GLResourceRegistry resources) {
+        this(resources, DEFAULT_BUDGET_BYTES);
+    }
+
+    public TextureCache(GLResourceRegistry resources, int budgetBytes) {
+        mResources = resources;
+        mBudgetBytes = budgetBytes;
+    }
+
+    /**
+     * Build the cache key for the board of this room drawn on the given background
+     */
+    public static String keyOf(MeetingRoomInfo meetingRoomInfo, @DrawableRes int drawableRes) {
+        return keyOf(meetingRoomInfo, drawableRes, 0);
+    }
+
+    /**
+     * @param level resolution level of the texture, see {@link TextureLod}
+     */
+    public static String keyOf(MeetingRoomInfo meetingRoomInfo, @DrawableRes int drawableRes, int level) {
+        if (meetingRoomInfo == null) {
+            return "|" + drawableRes + "|0@" + level;
+        }
+        return meetingRoomInfo.getRoomName() + "|" + drawableRes + "|"
+                + Integer.toHexString(contentHash(meetingRoomInfo)) + "@" + level;
+    }
+
+    /**
+     * Build the key shared by all the versions of this room's board on the given background
+     */
+    public static String slotOf(MeetingRoomInfo meetingRoomInfo, @DrawableRes int drawableRes) {
+        return (meetingRoomInfo != null ? meetingRoomInfo.getRoomName() : "") + "|" + drawableRes;
+    }
+
+    /**
+     * @return the slot of a key built by {@link #keyOf(MeetingRoomInfo, int, int)},
+     * the textures of all the levels share the slot
+     */
+    public static String slotOfKey(String key) {
+        return key.substring(0, key.lastIndexOf('|'));
+    }
+
+    /**
+     * @return the resolution level of a key built by {@link #keyOf(MeetingRoomInfo, int, int)}
+     */
+    public static int levelOfKey(String key) {
+        return Integer.parseInt(key.substring(key.lastIndexOf('@') + 1));
+    }
+
+    private static int contentHash(MeetingRoomInfo meetingRoomInfo) {
+        int hash = meetingRoomInfo.getRoomName() != null ? meetingRoomInfo.getRoomName().hashCode() : 0;
+        hash = 31 * hash + (meetingRoomInfo.getMeetings() != null ? meetingRoomInfo.getMeetings().hashCode() : 0);
+        return hash;
+    }
+
+    /**
+     * Call it at the beginning of each frame
+     */
+    public void beginFrame() {
+        mFrame++;
+    }
+
+    /**
+     * @return texture handle of this key, or 0 if it's not cached
+     */
+    public int get(String key) {
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            mMissCount++;
+            return 0;
+        }
+        mHitCount++;
+        entry.frame = mFrame;
+        return entry.texture;
+    }
+
+    /**
+     * @param lines the lines drawn in the text layer, a texture of other lines under the same key
+     *              is not returned
+     * @return texture handle of this key, or 0 if it's not cached
+     */
+    public int get(String key, List<String> lines) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && entry.lines != lines && lines != null && entry.lines != null) {
+            if (!sameLines(entry.lines, lines)) {
+                Log.w(TAG, "get: hash collision on " + key);
+                mCollisionCount++;
+                mMissCount++;
+                return 0;
+            }
+            // the same lines, compared by reference next time
+            entry.lines = lines;
+        }
+        return get(key);
+    }
+
+    /**
+     * Compare without an iterator, it's called in every frame
+     */
+    private static boolean sameLines(List<String> a, List<String> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            String line = a.get(i);
+            if (line != null ? !line.equals(b.get(i)) : b.get(i) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return scroll window of the texture of this key, or null if it's not cached
+     */
+    public float[] getScroll(String key) {
+        Entry entry = mEntries.get(key);
+        return entry != null ? entry.scroll : null;
+    }
+
+    /**
+     * Put a newly uploaded texture into cache, this may evict other textures.
+     */
+    public void put(String key, int texture, int byteCount) {
+        put(key, texture, byteCount, null, null);
+    }
+
+    /**
+     * @param scroll scroll window of a scrolling board, see
+     *               {@link com.perficient.meetingschedulear.util.TextureHelper#composeTextLayer}
+     * @param lines  the lines drawn in a text layer, null for a background
+     */
+    public void put(String key, int texture, int byteCount, float[] scroll, List<String> lines) {
+        Entry previous = mEntries.put(key, new Entry(texture, byteCount, mFrame, scroll, lines));
+        mSizeBytes += byteCount;
+        if (previous != null) {
+            mSizeBytes -= previous.byteCount;
+            if (previous.texture != texture) {
+                deleteTexture(previous.texture);
+            }
+        }
+        trimToSize(mBudgetBytes);
+    }
+
+    /**
+     * Move the texture of the old key to the new key, used when the texture is updated in place
+     *
+     * @param lines the lines drawn in the texture once it's updated
+     * @return texture handle, or 0 if the old key is not cached
+     */
+    public int rekey(String oldKey, String newKey, List<String> lines) {
+        Entry entry = mEntries.remove(oldKey);
+        if (entry == null) {
+            return 0;
+        }
+        entry.frame = mFrame;
+        entry.lines = lines;
+        Entry previous = mEntries.put(newKey, entry);
+        if (previous != null) {
+            mSizeBytes -= previous.byteCount;
+            deleteTexture(previous.texture);
+        }
+        return entry.texture;
+    }
+
+    public void setBudgetBytes(int budgetBytes) {
+        mBudgetBytes = budgetBytes;
+        trimToSize(budgetBytes);
+    }
+
+    /**
+     * Evict the least recently used textures to free at least these bytes,
+     * used when the GL objects all together are over their budget
+     *
+     * @return bytes actually freed, less if the rest are used in the current frame
+     */
+    public int trim(long bytes) {
+        int sizeBefore = mSizeBytes;
+        trimToSize((int) Math.max(0, mSizeBytes - bytes));
+        return sizeBefore - mSizeBytes;
+    }
+
+    /**
+     * Delete all the cached textures
+     */
+    public void clear() {
+        for (Entry entry : mEntries.values()) {
+            deleteTexture(entry.texture);
+        }
+        mEntries.clear();
+        mSizeBytes = 0;
+    }
+
+    /**
+     * Evict the least recently used textures until the size fits,
+     * textures used in the current frame are kept since they are being drawn.
+     */
+    private void trimToSize(int maxBytes) {
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mSizeBytes > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            if (eldest.frame == mFrame) {
+                // entries are in access order, the rest are all used in this frame
+                break;
+            }
+            iterator.remove();
+            mSizeBytes -= eldest.byteCount;
+            mEvictionCount++;
+            deleteTexture(eldest.texture);
+        }
+    }
+
+    private void deleteTexture(int texture) {
+        mResources.release(GLResourceRegistry.TEXTURE, texture);
+    }
+
+    public int getSizeBytes() {
+        return mSizeBytes;
+    }
+
+    public int getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public int getEvictionCount() {
+        return mEvictionCount;
+    }
+
+    public int getCollisionCount() {
+        return mCollisionCount;
+    }
+
+    public boolean contains(String key) {
+        return mEntries.containsKey(key);
+    }
+
+    public void logStats() {
+        Log.d(TAG, "logStats: " + toString());
+    }
+
+    @Override
+    public String toString() {
+        return "TextureCache{entries=" + mEntries.size()
+                + ", size=" + mSizeBytes + "/" + mBudgetBytes
+                + ", hits=" + mHitCount
+                + ", misses=" + mMissCount
+                + ", evictions=" + mEvictionCount
+                + ", collisions=" + mCollisionCount + "}";
+    }
+
+    private static class Entry {
+
+        private final int texture;
+
+        private final int byteCount;
+
+        private final float[] scroll;
+
+        private int frame;
+
+        /**
+         * Lines of a text layer, the content the key is a hash of
+         */
+        private List<String> lines;
+
+        Entry(int texture, int byteCount, int frame, float[] scroll, List<String> lines) {
+            this.texture = texture;
+            this.byteCount = byteCount;
+            this.frame = frame;
+            this.scroll = scroll;
+            this.lines = lines;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+/**
+ * Picks the resolution level of the board textures from the size of the board on screen.
+ * Level 0 is the full resolution, each level above halves the width and height.
+ * <p>
+ * The level of each target only steps down when the next level is still sharp enough by a margin,
+ * and steps up when the current level is too blurry by a margin, so a board at the edge of two
+ * levels doesn't flip between them and get composed again every frame.
+ * The level of each target is kept in {@link TrackedTarget}.
+ */
+public class TextureLod {
+
+    /**
+     * The smallest level is 1/8 of the full resolution
+     */
+    public static final int MAX_LEVEL = 3;
+
+    /**
+     * Relative margin of the projected size before the level steps
+     */
+    private static final float HYSTERESIS = 0.25f;
+
+    /**
+     * Height of the board on screen in pixels.
+     *
+     * @param pose           OpenGL model view matrix of the target, column major
+     * @param boardHeight    height of the target
+     * @param projection     OpenGL projection matrix, column major
+     * @param viewportHeight height of the viewport in pixels
+     * @return 0 if the board is behind the camera
+     */
+    public static float projectedHeight(float[] pose, float boardHeight, float[] projection, int viewportHeight) {
+        // the camera looks down the -z axis
+        float depth = -pose[14];
+        if (depth <= 0) {
+            return 0;
+        }
+        return boardHeight * projection[5] / depth * viewportHeight * 0.5f;
+    }
+
+    /**
+     * @return the smallest level not lower than the projected size, without hysteresis
+     */
+    public static int levelOf(float projectedHeight, int textureHeight) {
+        int level = 0;
+        while (level < MAX_LEVEL && (textureHeight >> (level + 1)) >= projectedHeight) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Step the level from the current one towards the projected size of the board, with hysteresis.
+     */
+    public static int step(int level, float projectedHeight, int textureHeight) {
+        // too blurry, step up
+        while (level > 0 && (textureHeight >> level) * (1f + HYSTERESIS) < projectedHeight) {
+            level--;
+        }
+        // sharp enough with a lower level, step down
+        while (level < MAX_LEVEL && (textureHeight >> (level + 1)) >= projectedHeight * (1f + HYSTERESIS)) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Update the level of a target with its size on screen in this frame.
+     *
+     * @param level         current level of the target, -1 if it's not picked yet
+     * @param textureHeight height of the full resolution texture
+     * @return level of the board textures
+     */
+    public static int update(int level, float projectedHeight, int textureHeight) {
+        return level < 0
+                ? levelOf(projectedHeight, textureHeight)
+                : step(level, projectedHeight, textureHeight);
+    }
+
+    /**
+     * @return the size of a texture at this level, never 0
+     */
+    public static int scale(int size, int level) {
+        return Math.max(1, (size + (1 << level) - 1) >> level);
+    }
+}
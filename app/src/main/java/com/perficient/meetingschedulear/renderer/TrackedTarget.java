@@ -0,0 +1,229 @@
+package com.perficient.meetingschedulear.renderer;
+
+
+import android.support.annotation.DrawableRes;
+
+import com.perficient.meetingschedulear.model.MeetingRoomInfo;
+import com.perficient.meetingschedulear.util.TextureHelper;
+
+import java.util.List;
+
+/**
+ * The state of an image target kept across frames by {@link TargetStateTable}, created the first
+ * time the target is seen.
+ * What's derived from the content of the board is cached here until the content changes,
+ * so a stable board costs no allocation per frame.
+ * <p>
+ * Must be accessed on the GL thread only.
+ */
+public class TrackedTarget {
+
+    /**
+     * Not seen, or missed long enough
+     */
+    public static final int LOST = 0;
+
+    /**
+     * Seen, but not in enough frames yet to be reported
+     */
+    public static final int FOUND = 1;
+
+    /**
+     * Seen in enough frames, reported found
+     */
+    public static final int TRACKED = 2;
+
+    private final int mId;
+
+    private final String mName;
+
+    private final float mWidth;
+
+    private final float mHeight;
+
+    /**
+     * State kept by {@link TargetStateTable}
+     */
+    int mState = LOST;
+
+    /**
+     * Frame number of {@link TargetStateTable} when the target was seen last time
+     */
+    int mLastSeenFrame = -1;
+
+    /**
+     * Camera frames in a row the target is seen in, or missed in
+     */
+    int mSeenFrames;
+    int mMissedFrames;
+
+    /**
+     * System.nanoTime() when the target is seen the first time, and the last time
+     */
+    long mFirstSeenNanos;
+    long mLastSeenNanos;
+
+    /**
+     * Textures the board of the target was last drawn with, 0 if there is none
+     */
+    private int mTexture;
+    private int mTextTexture;
+
+    /**
+     * Smooths the pose of the target, set by {@link BoardCollector}
+     */
+    PoseFilter mPoseFilter;
+
+    /**
+     * Resolution level of the textures, -1 before the first pick
+     */
+    private int mLodLevel = -1;
+
+    /**
+     * Content the cached values below are derived from, compared by identity
+     */
+    private MeetingRoomInfo mMeetingRoomInfo;
+    @DrawableRes
+    private int mDrawableRes;
+
+    /**
+     * Cache keys of the text layer of each level, built on demand
+     */
+    private final String[] mTextKeys = new String[TextureLod.MAX_LEVEL + 1];
+    private String mSlot;
+
+    /**
+     * Lines of the text layer, built on demand
+     */
+    private List<String> mLines;
+
+    /**
+     * 1 if the text can be drawn with the glyph atlas, 0 if not, -1 if not known yet
+     */
+    private int mGlyphText = -1;
+
+    public TrackedTarget(int id, String name, float width, float height) {
+        mId = id;
+        mName = name;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public float getWidth() {
+        return mWidth;
+    }
+
+    public float getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return {@link #LOST}, {@link #FOUND} or {@link #TRACKED}
+     */
+    public int getState() {
+        return mState;
+    }
+
+    public long getFirstSeenNanos() {
+        return mFirstSeenNanos;
+    }
+
+    public long getLastSeenNanos() {
+        return mLastSeenNanos;
+    }
+
+    /**
+     * Keep the textures the board is drawn with in this frame
+     */
+    public void setTextures(int texture, int textTexture) {
+        mTexture = texture;
+        mTextTexture = textTexture;
+    }
+
+    public int getTexture() {
+        return mTexture;
+    }
+
+    public int getTextTexture() {
+        return mTextTexture;
+    }
+
+    public int getLodLevel() {
+        return mLodLevel;
+    }
+
+    public void setLodLevel(int lodLevel) {
+        mLodLevel = lodLevel;
+    }
+
+    /**
+     * Set the content shown on the board, the cached values are dropped if it's changed
+     */
+    public void setContent(MeetingRoomInfo meetingRoomInfo, @DrawableRes int drawableRes) {
+        if (meetingRoomInfo == mMeetingRoomInfo && drawableRes == mDrawableRes) {
+            return;
+        }
+        mMeetingRoomInfo = meetingRoomInfo;
+        mDrawableRes = drawableRes;
+        for (int i = 0; i < mTextKeys.length; i++) {
+            mTextKeys[i] = null;
+        }
+        mSlot = null;
+        mLines = null;
+        mGlyphText = -1;
+    }
+
+    /**
+     * @return key of the text layer of the content at this level, see {@link TextureCache#keyOf(MeetingRoomInfo, int, int)}
+     */
+    public String getTextKey(int level) {
+        if (mTextKeys[level] == null) {
+            mTextKeys[level] = TextureCache.keyOf(mMeetingRoomInfo, mDrawableRes, level);
+        }
+        return mTextKeys[level];
+    }
+
+    /**
+     * @return slot of the text layer of the content, see {@link TextureCache#slotOf(MeetingRoomInfo, int)}
+     */
+    public String getSlot() {
+        if (mSlot == null) {
+            mSlot = TextureCache.slotOf(mMeetingRoomInfo, mDrawableRes);
+        }
+        return mSlot;
+    }
+
+    /**
+     * @return lines of the text layer of the content, see {@link TextureHelper#toLines(MeetingRoomInfo)}
+     */
+    public List<String> getLines() {
+        if (mLines == null) {
+            mLines = TextureHelper.toLines(mMeetingRoomInfo);
+        }
+        return mLines;
+    }
+
+    /**
+     * @return true if the text of the content can be drawn with the glyph atlas,
+     * a schedule too long for the board is drawn in a scrolling text layer
+     */
+    public boolean isGlyphText() {
+        if (mGlyphText < 0) {
+            mGlyphText = TextRenderer.canRender(mMeetingRoomInfo) ? 1 : 0;
+        }
+        return mGlyphText == 1;
+    }
+
+    @Override
+    public String toString() {
+        return "TrackedTarget{" + mName + "(" + mId + ")}";
+    }
+}
@@ -0,0 +1,310 @@
+package com.perficient.meetingschedulear.task;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.opengl.ETC1Util;
+import android.os.Process;
+import android.support.annotation.DrawableRes;
+import android.util.Log;
+
+import com.perficient.meetingschedulear.model.MeetingRoomInfo;
+import com.perficient.meetingschedulear.util.TextureHelper;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Load the board backgrounds and compose the text layers on a worker pool, so decoding and
+ * drawing the text won't block the GL thread. Finished results are queued, and the GL thread
+ * polls them with {@link #poll()} to upload.
+ */
+public class BoardComposer {
+
+    private static final String TAG = BoardComposer.class.getSimpleName();
+
+    private static final int WORKER_COUNT = 2;
+
+    private final Context mContext;
+
+    private final ExecutorService mExecutor;
+
+    private final Queue<Result> mResults = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean mShutdown;
+
+    /**
+     * Backgrounds are loaded as ETC1 if supported, otherwise decoded as RGB565
+     */
+    private final boolean mEtc1Supported;
+
+    public BoardComposer(Context context, boolean etc1Supported) {
+        mContext = context.getApplicationContext();
+        mEtc1Supported = etc1Supported;
+        mExecutor = Executors.newFixedThreadPool(WORKER_COUNT, new WorkerFactory());
+    }
+
+    /**
+     * Load the background in background
+     *
+     * @param key   key of the background, it's passed back along with the texture
+     * @param level resolution level, see {@link com.perficient.meetingschedulear.renderer.TextureLod}
+     * @return the background is going to be loaded, false if the composer is shut down
+     */
+    public boolean submitBackground(final String key, @DrawableRes final int drawableRes, final int level) {
+        return execute("submitBackground", key, new Runnable() {
+            @Override
+            public void run() {
+                Result result = null;
+                try {
+                    ETC1Util.ETC1Texture compressed = mEtc1Supported
+                            ? TextureHelper.loadCompressedBackground(mContext, drawableRes, level)
+                            : null;
+                    if (compressed != null) {
+                        result = new Result(key, compressed);
+                    } else {
+                        Bitmap bitmap = TextureHelper.decodeBackground(mContext, drawableRes, level);
+                        if (bitmap != null) {
+                            result = new Result(key, bitmap, null);
+                        }
+                    }
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    Log.e(TAG, "submitBackground: failed to load " + key, e);
+                }
+                deliver(result != null ? result : new Result(key));
+            }
+        });
+    }
+
+    /**
+     * Compose the text layer of this room in background
+     *
+     * @param key   key of the text layer, it's passed back along with the bitmap
+     * @param level resolution level of the text layer
+     * @return the layer is going to be composed, false if the composer is shut down
+     */
+    public boolean submit(final String key, final MeetingRoomInfo meetingRoomInfo, @DrawableRes final int drawableRes,
+                          final int level) {
+        return execute("submit", key, new Runnable() {
+            @Override
+            public void run() {
+                Result result = null;
+                try {
+                    float[] scroll = new float[4];
+                    Bitmap bitmap = TextureHelper.composeTextLayer(mContext, drawableRes, meetingRoomInfo, scroll, level);
+                    if (bitmap != null) {
+                        result = new Result(key, bitmap, scroll);
+                    }
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    Log.e(TAG, "submit: failed to compose " + key, e);
+                }
+                deliver(result != null ? result : new Result(key));
+            }
+        });
+    }
+
+    /**
+     * Redraw only the changed lines of a text layer which is already uploaded
+     *
+     * @param key          key of the new text layer
+     * @param replacedKey  key of the uploaded text layer to be updated
+     * @param lines        all the lines of the new board
+     * @param changedLines indices of the lines different from the uploaded board
+     * @param level        resolution level of the uploaded text layer
+     * @return the strips are going to be composed, false if the composer is shut down
+     */
+    public boolean submitStrips(final String key, final String replacedKey, @DrawableRes final int drawableRes,
+                                final List<String> lines, final int[] changedLines, final int level) {
+        return execute("submitStrips", key, new Runnable() {
+            @Override
+            public void run() {
+                TextureHelper.Strip[] strips = null;
+                try {
+                    strips = TextureHelper.composeStrips(mContext, drawableRes, lines, changedLines, level);
+                } catch (RuntimeException | OutOfMemoryError e) {
+                    Log.e(TAG, "submitStrips: failed to compose " + key, e);
+                }
+                // no strips, the layer is composed as a whole next time
+                deliver(new Result(key, replacedKey, strips));
+            }
+        });
+    }
+
+    private boolean execute(String method, String key, Runnable task) {
+        try {
+            mExecutor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, method + ": composer is shut down, drop " + key);
+            return false;
+        }
+    }
+
+    /**
+     * Queue the result for the GL thread, a failed one too, so the board is not pending forever
+     */
+    private void deliver(Result result) {
+        if (mShutdown) {
+            result.recycle();
+            return;
+        }
+        mResults.offer(result);
+    }
+
+    /**
+     * @return a finished board, or null if there is none
+     */
+    public Result poll() {
+        return mResults.poll();
+    }
+
+    /**
+     * Stop the workers and return the bitmaps which are not uploaded yet to the pool
+     */
+    public void shutdown() {
+        mShutdown = true;
+        mExecutor.shutdownNow();
+        Result result;
+        while ((result = mResults.poll()) != null) {
+            result.recycle();
+        }
+    }
+
+    /**
+     * Either a compressed background, a whole bitmap, or the strips to update an uploaded text layer.
+     * A failed background or text layer has none of them.
+     */
+    public static class Result {
+
+        private final String mKey;
+
+        private final ETC1Util.ETC1Texture mCompressed;
+
+        private final Bitmap mBitmap;
+
+        private final float[] mScroll;
+
+        private final String mReplacedKey;
+
+        private final TextureHelper.Strip[] mStrips;
+
+        /**
+         * A background or a text layer which failed to load
+         */
+        Result(String key) {
+            mKey = key;
+            mCompressed = null;
+            mBitmap = null;
+            mScroll = null;
+            mReplacedKey = null;
+            mStrips = null;
+        }
+
+        Result(String key, ETC1Util.ETC1Texture compressed) {
+            mKey = key;
+            mCompressed = compressed;
+            mBitmap = null;
+            mScroll = null;
+            mReplacedKey = null;
+            mStrips = null;
+        }
+
+        Result(String key, Bitmap bitmap, float[] scroll) {
+            mKey = key;
+            mCompressed = null;
+            mBitmap = bitmap;
+            mScroll = scroll;
+            mReplacedKey = null;
+            mStrips = null;
+        }
+
+        Result(String key, String replacedKey, TextureHelper.Strip[] strips) {
+            mKey = key;
+            mCompressed = null;
+            mBitmap = null;
+            mScroll = null;
+            mReplacedKey = replacedKey;
+            mStrips = strips;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        /**
+         * @return the ETC1 background, or null if it's a bitmap
+         */
+        public ETC1Util.ETC1Texture getCompressed() {
+            return mCompressed;
+        }
+
+        public Bitmap getBitmap() {
+            return mBitmap;
+        }
+
+        /**
+         * @return scroll window of a text layer, null for a background or a partial update
+         */
+        public float[] getScroll() {
+            return mScroll;
+        }
+
+        /**
+         * @return the background or the text layer failed to load, there is nothing to upload
+         */
+        public boolean isFailed() {
+            return mReplacedKey == null && mCompressed == null && mBitmap == null;
+        }
+
+        public boolean isPartial() {
+            return mReplacedKey != null;
+        }
+
+        public String getReplacedKey() {
+            return mReplacedKey;
+        }
+
+        /**
+         * @return null if the strips failed to compose
+         */
+        public TextureHelper.Strip[] getStrips() {
+            return mStrips;
+        }
+
+        public void recycle() {
+            if (mBitmap != null) {
+                TextureHelper.releaseBitmap(mBitmap);
+            }
+            if (mStrips != null) {
+                for (TextureHelper.Strip strip : mStrips) {
+                    TextureHelper.releaseBitmap(strip.getBitmap());
+                }
+            }
+        }
+    }
+
+    /**
+     * Workers run in background priority, so they don't compete with the GL thread
+     */
+    private static class WorkerFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, TAG + "-" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.perficient.meetingschedulear.task;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.perficient.meetingschedulear.util.TextureHelper;
+import com.perficient.meetingschedulear.util.TimeUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * Encode the pixels read back from the framebuffer and save them as an image file on a background
+ * thread, so a snapshot costs the GL thread no more than the readback.
+ * <p>
+ * The pixel buffers are returned to a small pool once encoded, a burst of snapshots reuses them.
+ */
+public class SnapshotSaver {
+
+    private static final String TAG = SnapshotSaver.class.getSimpleName();
+
+    private static final String FILE_NAME_FORMAT = "yyyyMMdd_HHmmss_SSS";
+
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Max number of pixel buffers kept for reuse
+     */
+    private static final int MAX_POOLED_BUFFERS = 2;
+
+    /**
+     * Gets the result on the main thread
+     */
+    public interface Callback {
+
+        void onSaved(File file);
+
+        void onFailed();
+    }
+
+    private final Context mContext;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, TAG);
+        }
+    });
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final Queue<ByteBuffer> mBuffers = new ConcurrentLinkedQueue<>();
+
+    public SnapshotSaver(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    /**
+     * @return a direct buffer for the RGBA pixels of this size, from the pool if one is large enough
+     */
+    public ByteBuffer obtainBuffer(int width, int height) {
+        int bytes = width * height * 4;
+        ByteBuffer buffer;
+        while ((buffer = mBuffers.poll()) != null) {
+            if (buffer.capacity() >= bytes) {
+                buffer.clear();
+                buffer.limit(bytes);
+                return buffer;
+            }
+        }
+        return ByteBuffer.allocateDirect(bytes);
+    }
+
+    /**
+     * Encode and save the pixels in background, the buffer goes back to the pool after that.
+     *
+     * @param pixels RGBA pixels read from the framebuffer, bottom row first
+     * @param format {@link Bitmap.CompressFormat#PNG} or {@link Bitmap.CompressFormat#JPEG}
+     */
+    public void save(final ByteBuffer pixels, final int width, final int height,
+                     final Bitmap.CompressFormat format, final Callback callback) {
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    File file = null;
+                    try {
+                        file = encode(pixels, width, height, format);
+                    } finally {
+                        recycleBuffer(pixels);
+                        notifyResult(callback, file);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "save: saver is shut down, drop the snapshot");
+            notifyResult(callback, null);
+        }
+    }
+
+    /**
+     * Tell the callback the snapshot could not be taken
+     */
+    public void fail(Callback callback) {
+        notifyResult(callback, null);
+    }
+
+    public void shutdown() {
+        mExecutor.shutdownNow();
+        mBuffers.clear();
+    }
+
+    private File encode(ByteBuffer pixels, int width, int height, Bitmap.CompressFormat format) {
+        Bitmap bitmap = TextureHelper.getBitmapPool().get(width, height, Bitmap.Config.ARGB_8888);
+        FileOutputStream fos = null;
+        try {
+            flipRows(pixels, width * 4, height);
+            // RGBA bytes are the memory layout of ARGB_8888
+            pixels.rewind();
+            bitmap.copyPixelsFromBuffer(pixels);
+
+            File dir = mContext.getExternalFilesDir(Environment.DIRECTORY_PICTURES);
+            if (dir == null || (!dir.exists() && !dir.mkdirs())) {
+                Log.w(TAG, "encode: cannot create folder " + dir);
+                return null;
+            }
+            String extension = format == Bitmap.CompressFormat.PNG ? ".png" : ".jpg";
+            File file = new File(dir, "AR_" + TimeUtil.getFormatNow(FILE_NAME_FORMAT) + extension);
+            fos = new FileOutputStream(file);
+            if (!bitmap.compress(format, format == Bitmap.CompressFormat.PNG ? 100 : JPEG_QUALITY, fos)) {
+                Log.w(TAG, "encode: failed to compress " + file);
+                return null;
+            }
+            Log.d(TAG, "encode: saved " + file.getAbsolutePath());
+            return file;
+        } catch (IOException e) {
+            Log.e(TAG, "encode: IOException - ", e);
+            return null;
+        } catch (RuntimeException e) {
+            // e.g. the buffer is smaller than the bitmap, the callback is still told
+            Log.e(TAG, "encode: failed - ", e);
+            return null;
+        } finally {
+            TextureHelper.releaseBitmap(bitmap);
+            try {
+                if (fos != null) {
+                    fos.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * glReadPixels returns the bottom row first, flip them in place for the bitmap
+     */
+    private static void flipRows(ByteBuffer pixels, int rowBytes, int height) {
+        byte[] top = new byte[rowBytes];
+        byte[] bottom = new byte[rowBytes];
+        for (int row = 0; row < height / 2; row++) {
+            int topOffset = row * rowBytes;
+            int bottomOffset = (height - 1 - row) * rowBytes;
+            pixels.position(topOffset);
+            pixels.get(top);
+            pixels.position(bottomOffset);
+            pixels.get(bottom);
+            pixels.position(topOffset);
+            pixels.put(bottom);
+            pixels.position(bottomOffset);
+            pixels.put(top);
+        }
+    }
+
+    private void recycleBuffer(ByteBuffer buffer) {
+        if (mBuffers.size() < MAX_POOLED_BUFFERS) {
+            mBuffers.offer(buffer);
+        }
+    }
+
+    private void notifyResult(final Callback callback, final File file) {
+        if (callback == null) {
+            return;
+        }
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (file != null) {
+                    callback.onSaved(file);
+                } else {
+                    callback.onFailed();
+                }
+            }
+        });
+    }
+}
@@ -4,6 +4,7 @@ import android.Manifest;
 import android.annotation.TargetApi;
 import android.content.Intent;
 import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
@@ -15,8 +16,11 @@ import android.view.ViewGroup;
 import android.view.WindowManager;
 
 import com.perficient.meetingschedulear.R;
+import com.perficient.meetingschedulear.task.SnapshotSaver;
+import com.perficient.meetingschedulear.util.ToastUtil;
 import com.perficient.meetingschedulear.view.GLView;
 
+import java.io.File;
 import java.util.HashMap;
 
 import cn.easyar.Engine;
@@ -49,7 +53,7 @@ public class MainActivity extends BaseActivity {
         }
 
         /*
-        * Double tab to enter settings page
+        * Double tab to enter settings page, long press to save a snapshot
         * */
         mGestureDetectorCompat = new GestureDetectorCompat(this, new GestureDetector.SimpleOnGestureListener() {
             @Override
@@ -58,9 +62,27 @@ public class MainActivity extends BaseActivity {
                 startActivity(new Intent(MainActivity.this, RecentScannedActivity.class));
                 return true;
             }
+
+            @Override
+            public void onLongPress(MotionEvent e) {
+                Log.d(TAG, "onLongPress: ");
+                glView.requestSnapshot(Bitmap.CompressFormat.JPEG, new SnapshotSaver.Callback() {
+                    @Override
+                    public void onSaved(File file) {
+                        ToastUtil.showToast(getString(R.string.snapshot_saved, file.getAbsolutePath()));
+                    }
+
+                    @Override
+                    public void onFailed() {
+                        ToastUtil.showToast(R.string.snapshot_failed);
+                    }
+                });
+            }
         });
 
         glView = new GLView(this);
+        // the tablets are on the wall, most of the time nothing moves
+        glView.setRenderOnNewFrame(true);
 
         requestCameraPermission(new PermissionCallback() {
             @Override
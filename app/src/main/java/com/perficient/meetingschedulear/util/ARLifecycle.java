@@ -0,0 +1,293 @@
+package com.perficient.meetingschedulear.util;
+
+import android.util.Log;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lifecycle of the camera and the GL objects of an {@link ARManager}, without locks.
+ * <p>
+ * {@link #attach()} and {@link #detach()} can be called on any thread, they only change the
+ * atomic state and queue a command. The commands are drained on the GL thread at the beginning of
+ * each GL callback, so opening the camera, drawing and releasing never run at the same time, and
+ * a frame never waits for a monitor held by the UI thread.
+ * <p>
+ * The state tells what was requested last: an attach followed by a detach before the GL thread
+ * drains them doesn't open the camera at all, and a detach followed by an attach keeps it open.
+ * <p>
+ * Only one thread runs the host at a time, normally the GL thread. If another one is running it,
+ * e.g. {@link #drainWithoutGL()} misused while the GL thread is alive, the frame is skipped
+ * rather than waited for.
+ */
+public class ARLifecycle {
+
+    private static final String TAG = ARLifecycle.class.getSimpleName();
+
+    public static final int STOPPED = 0;
+    public static final int STARTING = 1;
+    public static final int RUNNING = 2;
+    public static final int FAILED = 3;
+    public static final int STOPPING = 4;
+
+    private static final String[] STATE_NAMES = {"STOPPED", "STARTING", "RUNNING", "FAILED", "STOPPING"};
+
+    private static final int COMMAND_ATTACH = 0;
+    private static final int COMMAND_DETACH = 1;
+    private static final int COMMAND_INIT_GL = 2;
+    private static final int COMMAND_RESIZE_GL = 3;
+    private static final int COMMAND_RELEASE_GL = 4;
+
+    /**
+     * The work done by the commands, the methods are never called at the same time
+     */
+    public interface Host {
+
+        boolean initialize();
+
+        boolean start();
+
+        boolean stop();
+
+        void dispose();
+
+        void initGL();
+
+        void resizeGL(int width, int height);
+
+        void releaseGL();
+
+        void render();
+    }
+
+    private final Host mHost;
+
+    private final AtomicInteger mState = new AtomicInteger(STOPPED);
+
+    private final Queue<Integer> mCommands = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Held by the thread running the host, it's never waited for
+     */
+    private final AtomicBoolean mBusy = new AtomicBoolean();
+
+    /**
+     * Size of the last surface change
+     */
+    private volatile int mWidth;
+    private volatile int mHeight;
+
+    /**
+     * The host is initialized and must be disposed, only accessed by the thread running the host
+     */
+    private boolean mHostInitialized;
+
+    /**
+     * The host is initialized and started successfully, only accessed by the thread running the host
+     */
+    private boolean mHostStarted;
+
+    /**
+     * There is a GL context and the GL objects are created
+     */
+    private volatile boolean mGLReady;
+
+    private int mSkippedCommandCount;
+
+    private final AtomicInteger mSkippedFrameCount = new AtomicInteger();
+
+    public ARLifecycle(Host host) {
+        mHost = host;
+    }
+
+    /**
+     * Open the camera and start tracking, on the GL thread
+     *
+     * @return false if it's already started or starting
+     */
+    public boolean attach() {
+        while (true) {
+            int state = mState.get();
+            if (state == STARTING || state == RUNNING || state == FAILED) {
+                return false;
+            }
+            if (mState.compareAndSet(state, STARTING)) {
+                mCommands.offer(COMMAND_ATTACH);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release the GL objects while the context is still alive, then stop and dispose the camera,
+     * on the GL thread
+     *
+     * @return false if it's already stopped or stopping
+     */
+    public boolean detach() {
+        while (true) {
+            int state = mState.get();
+            if (state == STOPPED || state == STOPPING) {
+                return false;
+            }
+            if (mState.compareAndSet(state, STOPPING)) {
+                mCommands.offer(COMMAND_RELEASE_GL);
+                mCommands.offer(COMMAND_DETACH);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Call it on the GL thread when a new context is created
+     */
+    public void onSurfaceCreated() {
+        // the objects of a previous context are gone with it
+        mGLReady = false;
+        mCommands.offer(COMMAND_INIT_GL);
+        run(false);
+    }
+
+    /**
+     * Call it on the GL thread when the surface size changes
+     */
+    public void onSurfaceChanged(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mCommands.offer(COMMAND_RESIZE_GL);
+        run(false);
+    }
+
+    /**
+     * Call it on the GL thread for each frame
+     */
+    public void onDrawFrame() {
+        run(true);
+    }
+
+    /**
+     * Run the commands queued, on the GL thread
+     */
+    public void drain() {
+        run(false);
+    }
+
+    /**
+     * Run the commands left after the GL thread is gone, e.g. on detach. The context is gone too,
+     * so the GL objects are not released, the host should forget them on dispose.
+     */
+    public void drainWithoutGL() {
+        mGLReady = false;
+        run(false);
+    }
+
+    private void run(boolean render) {
+        if (!mBusy.compareAndSet(false, true)) {
+            // the commands are left to the thread running the host
+            if (render) {
+                mSkippedFrameCount.incrementAndGet();
+            }
+            return;
+        }
+        try {
+            Integer command;
+            while ((command = mCommands.poll()) != null) {
+                execute(command);
+            }
+            if (render && mGLReady) {
+                mHost.render();
+            }
+        } finally {
+            mBusy.set(false);
+        }
+    }
+
+    private void execute(int command) {
+        switch (command) {
+            case COMMAND_ATTACH:
+                // a detach requested after it cancels it
+                if (mState.get() != STARTING) {
+                    mSkippedCommandCount++;
+                    return;
+                }
+                if (mHostInitialized) {
+                    // the detach before it was cancelled, the host is still running
+                    mSkippedCommandCount++;
+                    mState.compareAndSet(STARTING, mHostStarted ? RUNNING : FAILED);
+                    return;
+                }
+                mHostInitialized = true;
+                mHostStarted = mHost.initialize() && mHost.start();
+                if (!mState.compareAndSet(STARTING, mHostStarted ? RUNNING : FAILED)) {
+                    Log.d(TAG, "execute: detached while starting");
+                }
+                break;
+            case COMMAND_DETACH:
+                // an attach requested after it cancels it
+                if (mState.get() != STOPPING) {
+                    mSkippedCommandCount++;
+                    return;
+                }
+                if (mHostInitialized) {
+                    mHostInitialized = false;
+                    mHostStarted = false;
+                    mHost.stop();
+                    mHost.dispose();
+                }
+                mState.compareAndSet(STOPPING, STOPPED);
+                break;
+            case COMMAND_INIT_GL:
+                mHost.initGL();
+                mGLReady = true;
+                break;
+            case COMMAND_RESIZE_GL:
+                mHost.resizeGL(mWidth, mHeight);
+                break;
+            case COMMAND_RELEASE_GL:
+                if (mGLReady && mState.get() == STOPPING) {
+                    mGLReady = false;
+                    mHost.releaseGL();
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+        }
+    }
+
+    public int getState() {
+        return mState.get();
+    }
+
+    public boolean isGLReady() {
+        return mGLReady;
+    }
+
+    /**
+     * @return commands skipped since a later one cancels them
+     */
+    public int getSkippedCommandCount() {
+        return mSkippedCommandCount;
+    }
+
+    /**
+     * @return frames skipped since another thread was running the host
+     */
+    public int getSkippedFrameCount() {
+        return mSkippedFrameCount.get();
+    }
+
+    public static String stateName(int state) {
+        return STATE_NAMES[state];
+    }
+
+    @Override
+    public String toString() {
+        return "ARLifecycle{state=" + stateName(mState.get())
+                + ", gl ready=" + mGLReady
+                + ", queued=" + mCommands.size()
+                + ", skipped commands=" + mSkippedCommandCount
+                + ", skipped frames=" + mSkippedFrameCount.get() + "}";
+    }
+}
@@ -5,30 +5,51 @@ import android.content.SharedPreferences;
 import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.DrawableRes;
 import android.util.Log;
 
 import com.perficient.meetingschedulear.R;
 import com.perficient.meetingschedulear.model.ImageTargetInfo;
 import com.perficient.meetingschedulear.model.MeetingRoomInfo;
+import com.perficient.meetingschedulear.renderer.Board;
+import com.perficient.meetingschedulear.renderer.BoardCollector;
+import com.perficient.meetingschedulear.renderer.BoardCuller;
 import com.perficient.meetingschedulear.renderer.BlackboardRenderer;
+import com.perficient.meetingschedulear.renderer.FrameCapture;
+import com.perficient.meetingschedulear.renderer.GLResourceRegistry;
+import com.perficient.meetingschedulear.renderer.GLStateCache;
+import com.perficient.meetingschedulear.renderer.PoseFilter;
+import com.perficient.meetingschedulear.renderer.ProgramManager;
+import com.perficient.meetingschedulear.renderer.TargetStateTable;
+import com.perficient.meetingschedulear.renderer.TextureCache;
+import com.perficient.meetingschedulear.renderer.TrackedTarget;
+import com.perficient.meetingschedulear.task.SnapshotSaver;
 import com.squareup.picasso.Picasso;
 
+import org.json.JSONException;
+
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 import cn.easyar.*;
 
 import static com.perficient.meetingschedulear.common.Constants.FILE_DIR_TARGET_IMAGE;
+import static com.perficient.meetingschedulear.common.Constants.PREF_AR_STATE;
 import static com.perficient.meetingschedulear.common.Constants.PREF_MEETING_INFO;
 import static com.perficient.meetingschedulear.util.TimeUtil.FORMAT_DATE_TIME_SECOND;
 
 /**
- * A manager for Renderer and AR Camera
+ * A manager for Renderer and AR Camera, the camera and GL methods are called by {@link ARLifecycle}
+ * on the GL thread
  */
-public class ARManager {
+public class ARManager implements ARLifecycle.Host {
 
     private static final String TAG = ARManager.class.getSimpleName();
 
@@ -37,28 +58,196 @@ public class ARManager {
 
     private static final String TARGET_JSON_PATH = "Data/targets.json";
 
+    private static final String ZONE_JSON_PATH = "Data/zones.json";
+
+    /**
+     * Targets tracked in a single zone when the zone catalog can't be read
+     */
+    private static final String[] DEFAULT_ZONE_TARGETS = {"whale", "sp0", "sp1", "at1"};
+
+    private static final String KEY_LAST_ZONE = "last_zone";
+
+    /**
+     * Max number of boards drawn in one frame in multi-target mode
+     */
+    public static final int DEFAULT_MAX_BOARDS = 4;
+
+    /**
+     * GPU memory of the objects which are not cached: the glyph atlas, 1.4 MB with its mipmaps,
+     * the text meshes and the vertex buffers of the boards
+     */
+    private static final long FIXED_OBJECT_BYTES = 2 * 1024 * 1024;
+
     private CameraDevice mCamera;
     private CameraFrameStreamer mStreamer;
     private ArrayList<ImageTracker> mImageTrackers;
+
+    /**
+     * Tracker of each zone, by zone index
+     */
+    private ImageTracker[] mZoneTrackers = new ImageTracker[0];
+
+    /**
+     * Tracker of the downloaded targets, which are in no zone, so it always runs
+     */
     private ImageTracker mTracker;
+
+    /**
+     * The trackers started now, see {@link #updateTrackers()}
+     */
+    private final Set<ImageTracker> mStartedTrackers = new HashSet<>();
+
     private Renderer mRenderer;
     private BlackboardRenderer mBlackboardRenderer;
+    private GLStateCache mGLState;
+    private ProgramManager mProgramManager;
+    private GLResourceRegistry mResources;
+    private volatile FrameCapture mFrameCapture;
+    private SnapshotSaver mSnapshotSaver;
 
     private boolean mViewportChanged = false;
     private Vec2I mViewSize = new Vec2I(0, 0);
     private int mRotation = 0;
     private Vec4I mViewport = new Vec4I(0, 0, 1280, 720);
-    private ImageTarget mPreviousTarget;
-    private double mPreviousTimeStamp;
+    private Vec4I mDefaultViewport = new Vec4I(0, 0, 0, 0);
+
+    /**
+     * Timestamp of the camera frame last drawn, see {@link #needsRender()}
+     */
+    private volatile double mRenderedTimestamp = -1;
+
+    /**
+     * The screen changes without a new camera frame, e.g. the text is scrolling or a board is
+     * being uploaded
+     */
+    private volatile boolean mAnimating = true;
+
+    /**
+     * Projection of the camera, it only changes with the viewport
+     */
+    private Matrix44F mProjection;
+
+    private boolean mMultiTargetEnabled = true;
+    /**
+     * Set on any thread, the boards are reallocated to it on the GL thread
+     */
+    private volatile int mMaxBoards = DEFAULT_MAX_BOARDS;
+    private Board[] mBoards;
+
+    private int mTextureBudgetBytes = TextureCache.DEFAULT_BUDGET_BYTES;
+
+    /**
+     * Skips the boards out of the screen or too small, before their textures are loaded
+     */
+    private final BoardCuller mCuller = new BoardCuller();
+
+    /**
+     * Camera size the device can sustain, kept across initialize() so a slow device starts low
+     */
+    private final QualityGovernor mQualityGovernor = new QualityGovernor();
+
+    /**
+     * Lowers the frame rate and the camera size while no target is seen
+     */
+    private final PowerStateMachine mPowerState = new PowerStateMachine();
+
+    /**
+     * The trackers are stopped by {@link PowerStateMachine#DEEP_IDLE}, not by {@link #stop()}
+     */
+    private boolean mTrackersPaused;
+
+    /**
+     * System.nanoTime() of the last frame rendered, see {@link #needsRender()}
+     */
+    private volatile long mLastRenderTime;
+
+    /**
+     * Reads the targets of each frame, reused across frames
+     */
+    private final EasyARFrameSource mFrameSource = new EasyARFrameSource();
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * State of each target by runtime id, the events are delivered on the main thread
+     */
+    private final TargetStateTable mTargetStates = new TargetStateTable(new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mMainHandler.post(command);
+        }
+    });
+
+    private final BoardCollector mBoardCollector = new BoardCollector(mCuller, mTargetStates, new BoardCollector.Callback() {
+        @Override
+        public void onPrepareBoard(Board board, TrackedTarget target) {
+            // textures are cached, a new board is composed in background and
+            // shown as a placeholder until it's ready
+            TextureContainer resContainer = getTextureContainer(target);
+            mBlackboardRenderer.prepare(
+                    board,
+                    target,
+                    resContainer.getMeetingRoomInfo(),
+                    resContainer.getTexture());
+        }
+    });
+
+    /**
+     * Room info and background of each target, fetched only once. Read on the main thread too.
+     */
+    private final ConcurrentHashMap<String, TextureContainer> mTextureContainers = new ConcurrentHashMap<>();
+
+    /**
+     * The same containers keyed by the runtime id of the target, so they are found without the name
+     */
+    private final IntObjectMap<TextureContainer> mTextureContainersById = new IntObjectMap<>();
+
+    /**
+     * Schedule updates posted from any thread, applied on the GL thread in {@link #render()}
+     */
+    private final Map<String, MeetingRoomInfo> mPendingRoomInfos = new ConcurrentHashMap<>();
 
     private Context mContext;
 
     private SharedPreferences mPreferences;
 
+    private SharedPreferences mStatePreferences;
+
+    /**
+     * The targets grouped into zones, and the zones whose trackers run
+     */
+    private final ZoneCatalog mZoneCatalog;
+    private final ZoneActivator mZoneActivator;
+
+    /**
+     * The current zone last saved, so the next session starts there
+     */
+    private int mSavedZone = -1;
+
     public ARManager(Context context) {
         mContext = context;
         mImageTrackers = new ArrayList<>();
+        mBoards = createBoards(mMaxBoards);
         mPreferences = context.getSharedPreferences(PREF_MEETING_INFO, Context.MODE_PRIVATE);
+        mStatePreferences = context.getSharedPreferences(PREF_AR_STATE, Context.MODE_PRIVATE);
+        mZoneCatalog = loadZoneCatalog();
+        mZoneActivator = new ZoneActivator(mZoneCatalog);
+        // start where the last session ended
+        if (mZoneActivator.setCurrentZone(mStatePreferences.getString(KEY_LAST_ZONE, ""))) {
+            mSavedZone = mZoneActivator.getCurrentZone();
+        }
+        mTargetStates.addListener(new TargetStateTable.Listener() {
+            @Override
+            public void onTargetFound(int id, String name) {
+                // save scanned info into shared preference
+                saveScannedInfo(getTextureContainer(name).getMeetingRoomInfo());
+            }
+
+            @Override
+            public void onTargetLost(int id, String name) {
+                Log.d(TAG, "onTargetLost: " + name);
+            }
+        });
     }
 
     /**
@@ -73,30 +262,64 @@ public class ARManager {
         mStreamer.attachCamera(mCamera); // Connect CameraDevice to this mStreamer
 
         boolean status = mCamera.open(CameraDeviceType.Default); // Open mCamera
-        mCamera.setSize(new Vec2I(1280, 720));
 
         if (!status) {
             return false;
         }
-        mTracker = new ImageTracker();
-        mTracker.attachStreamer(mStreamer); // connect mStreamer to the ImageTracker
-
-        //loadAllFromJsonFile(mTracker, TARGET_JSON_PATH);
-        loadFromJsonFile(mTracker, TARGET_JSON_PATH, "whale");
-        loadFromJsonFile(mTracker, TARGET_JSON_PATH, "sp0");
-        loadFromJsonFile(mTracker, TARGET_JSON_PATH, "sp1");
-        loadFromJsonFile(mTracker, TARGET_JSON_PATH, "at1");
-        mImageTrackers.add(mTracker);
+        // start from the size the device could sustain last time
+        initQualityGovernor(mCamera);
+        mCamera.setSize(new Vec2I(mQualityGovernor.getWidth(), mQualityGovernor.getHeight()));
+        // one tracker per zone, only the ones of the zones around the user run
+        mZoneTrackers = new ImageTracker[mZoneCatalog.getZoneCount()];
+        for (int zone = 0; zone < mZoneTrackers.length; zone++) {
+            ImageTracker tracker = new ImageTracker();
+            tracker.attachStreamer(mStreamer); // connect mStreamer to the ImageTracker
+            tracker.setSimultaneousNum(getBoardLimit()); // track as many targets as we can draw
+            for (String name : mZoneCatalog.getTargets(zone)) {
+                loadFromJsonFile(tracker, TARGET_JSON_PATH, name);
+            }
+            mZoneTrackers[zone] = tracker;
+            mImageTrackers.add(tracker);
+        }
 
         loadExternalTargets(mStreamer);
 
         return true;
     }
 
+    /**
+     * Read the zones of the targets, all the default targets are in one zone if the catalog can't be read
+     */
+    private ZoneCatalog loadZoneCatalog() {
+        InputStream inputStream = null;
+        try {
+            inputStream = mContext.getAssets().open(ZONE_JSON_PATH);
+            String json = new Scanner(inputStream, "UTF-8").useDelimiter("\\A").next();
+            ZoneCatalog catalog = ZoneCatalog.fromJson(json);
+            Log.d(TAG, "loadZoneCatalog: " + catalog);
+            return catalog;
+        } catch (IOException | JSONException | IllegalArgumentException | NoSuchElementException e) {
+            Log.w(TAG, "loadZoneCatalog: can't read " + ZONE_JSON_PATH + ", " + e);
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        ZoneCatalog catalog = new ZoneCatalog();
+        catalog.addZone("default", Arrays.asList(DEFAULT_ZONE_TARGETS));
+        return catalog;
+    }
+
     @SuppressWarnings("unchecked")
     private void loadExternalTargets(CameraFrameStreamer streamer) {
         ImageTracker tracker = new ImageTracker();
+        mTracker = tracker;
         tracker.attachStreamer(streamer);
+        tracker.setSimultaneousNum(getBoardLimit());
 
         List<ImageTargetInfo> targetInfoList = fetchDummyUrls();
         new ImageDownloader(mContext).execute(targetInfoList);
@@ -124,18 +347,28 @@ public class ARManager {
 
         boolean status = (mCamera != null) && mCamera.start();
         status &= (mStreamer != null) && mStreamer.start();
+        // the frames before are not comparable
+        mQualityGovernor.resetWindows();
+        boolean idle = !mPowerState.isActive();
+        mPowerState.reset(System.nanoTime());
+        mTrackersPaused = false;
+        if (idle) {
+            // the camera still has the idle size
+            applyCameraSize();
+        }
 
         mCamera.setFocusMode(CameraDeviceFocusMode.Continousauto);// continuously auto focus
 
-        for (ImageTracker tracker : mImageTrackers) {
-            status &= tracker.start();// for each ImageTracker, start track ImageTarget
-        }
+        // start the trackers of the zones around the user, and the one of the downloaded targets
+        mZoneActivator.reset(System.nanoTime());
+        status &= updateTrackers();
 
         return status;
     }
 
     /**
-     * Initiate mRenderer
+     * Initiate mRenderer, called for each new GL context. The context is preserved across pause
+     * where the device allows it, then nothing is created again on resume.
      */
     public void initGL() {
 
@@ -145,8 +378,206 @@ public class ARManager {
             mRenderer.dispose();
         }
         mRenderer = new Renderer();
-        mBlackboardRenderer = new BlackboardRenderer(mContext);
-        mPreviousTarget = null;
+        if (mBlackboardRenderer != null) {
+            mBlackboardRenderer.dispose();
+        }
+        if (mResources != null) {
+            // the previous context is lost along with its objects
+            mResources.abandonAll();
+        }
+        // a new GL context, nothing of the state is known
+        mGLState = new GLStateCache();
+        mResources = new GLResourceRegistry(mGLState);
+        // programs are compiled once per context, or loaded from the saved binaries
+        mProgramManager = new ProgramManager(mContext, mResources);
+        mBlackboardRenderer = new BlackboardRenderer(mContext, mGLState, mProgramManager, mResources);
+        if (mFrameCapture != null) {
+            mFrameCapture.dispose();
+        }
+        if (mSnapshotSaver == null) {
+            mSnapshotSaver = new SnapshotSaver(mContext);
+        }
+        mFrameCapture = new FrameCapture(mGLState, mResources, mSnapshotSaver);
+        mBlackboardRenderer.setTextureBudget(mTextureBudgetBytes);
+        updateResourceBudget();
+        forgetTargets();
+    }
+
+    /**
+     * The cached textures take the texture budget, the rest is for the fixed objects and the
+     * pixel buffers of a capture at the view size. Over it, the renderer evicts cached textures.
+     */
+    private void updateResourceBudget() {
+        if (mResources == null) {
+            return;
+        }
+        mResources.setBudgetBytes(mTextureBudgetBytes + FIXED_OBJECT_BYTES
+                + FrameCapture.getBufferBytes(mViewSize.data[0], mViewSize.data[1]));
+        Log.d(TAG, "updateResourceBudget: " + mResources.getBudgetBytes());
+    }
+
+    /**
+     * Delete all the GL objects, must be called on the GL thread before the context is destroyed
+     */
+    public void releaseGL() {
+
+        Log.d(TAG, "releaseGL: ");
+
+        if (mBlackboardRenderer != null) {
+            mBlackboardRenderer.dispose();
+            mBlackboardRenderer = null;
+        }
+        if (mRenderer != null) {
+            mRenderer.dispose();
+            mRenderer = null;
+        }
+        if (mFrameCapture != null) {
+            mFrameCapture.dispose();
+            mFrameCapture = null;
+        }
+        if (mResources != null) {
+            mResources.releaseAll();
+            Log.d(TAG, "releaseGL: " + mResources);
+        }
+        mGLState = null;
+        mProgramManager = null;
+    }
+
+    /**
+     * For tests to check the GL objects alive, null before {@link #initGL()}
+     */
+    public GLResourceRegistry getResourceRegistry() {
+        return mResources;
+    }
+
+    /**
+     * GPU memory for the cached board textures, the budget of all the GL objects is derived
+     * from it. Takes effect in the next {@link #initGL()}.
+     */
+    public void setTextureBudget(int budgetBytes) {
+        if (budgetBytes <= 0) {
+            throw new IllegalArgumentException("budgetBytes must be positive");
+        }
+        mTextureBudgetBytes = budgetBytes;
+    }
+
+    public int getTextureBudget() {
+        return mTextureBudgetBytes;
+    }
+
+    /**
+     * In multi-target mode all the tracked boards are drawn, up to {@link #setMaxBoards(int)},
+     * otherwise only the first tracked board is drawn.
+     * Takes effect for the trackers created in the next {@link #initialize()}.
+     */
+    public void setMultiTargetEnabled(boolean enabled) {
+        mMultiTargetEnabled = enabled;
+    }
+
+    public boolean isMultiTargetEnabled() {
+        return mMultiTargetEnabled;
+    }
+
+    /**
+     * Cap the number of boards drawn in one frame, it can be called on any thread
+     * and takes effect in the next frame.
+     */
+    public void setMaxBoards(int maxBoards) {
+        if (maxBoards < 1) {
+            throw new IllegalArgumentException("maxBoards must be positive");
+        }
+        mMaxBoards = maxBoards;
+    }
+
+    public int getMaxBoards() {
+        return mMaxBoards;
+    }
+
+    private int getBoardLimit() {
+        return mMultiTargetEnabled ? mMaxBoards : 1;
+    }
+
+    /**
+     * Boards smaller than this many pixels on screen are not drawn,
+     * and boards smaller than the simplify area are drawn without text.
+     */
+    public void setCullingThresholds(float minScreenArea, float simplifyScreenArea) {
+        mCuller.setMinScreenArea(minScreenArea);
+        mCuller.setSimplifyScreenArea(simplifyScreenArea);
+    }
+
+    public BoardCuller getCuller() {
+        return mCuller;
+    }
+
+    /**
+     * Steps the camera size with the frame times, its tier is shown for diagnostics
+     */
+    public QualityGovernor getQualityGovernor() {
+        return mQualityGovernor;
+    }
+
+    /**
+     * Picks the zones whose trackers run, its state is shown for diagnostics
+     */
+    public ZoneActivator getZoneActivator() {
+        return mZoneActivator;
+    }
+
+    /**
+     * Goes idle while no target is seen, the time spent in each state is kept for diagnostics
+     */
+    public PowerStateMachine getPowerState() {
+        return mPowerState;
+    }
+
+    /**
+     * State of each target seen, add a listener to it to be told when a target is found or lost
+     */
+    public TargetStateTable getTargetStates() {
+        return mTargetStates;
+    }
+
+    /**
+     * Tune the smoothing and the prediction of the poses
+     */
+    public PoseFilter.Params getPoseFilterParams() {
+        return mBoardCollector.getPoseFilterParams();
+    }
+
+    private static Board[] createBoards(int count) {
+        Board[] boards = new Board[count];
+        for (int i = 0; i < count; i++) {
+            boards[i] = new Board();
+        }
+        return boards;
+    }
+
+    /**
+     * Replace the meeting room info shown on the board of this target, it can be called on any thread.
+     * Only the rows which changed are redrawn and uploaded.
+     */
+    public void updateMeetingRoomInfo(String targetName, MeetingRoomInfo meetingRoomInfo) {
+        mPendingRoomInfos.put(targetName, meetingRoomInfo);
+    }
+
+    private void applyPendingRoomInfos() {
+        if (mPendingRoomInfos.isEmpty()) {
+            return;
+        }
+        for (String name : mPendingRoomInfos.keySet()) {
+            MeetingRoomInfo meetingRoomInfo = mPendingRoomInfos.remove(name);
+            TextureContainer container = mTextureContainers.get(name);
+            if (container == null) {
+                container = fetchResources(name);
+                mTextureContainers.put(name, container);
+            }
+            container.setMeetingRoomInfo(meetingRoomInfo);
+        }
+        if (mBlackboardRenderer != null) {
+            // a new schedule may load now
+            mBlackboardRenderer.clearFailures();
+        }
     }
 
     /**
@@ -157,107 +588,306 @@ public class ARManager {
         Log.d(TAG, "resizeGL: ");
 
         mViewSize = new Vec2I(width, height);
+        mDefaultViewport = new Vec4I(0, 0, width, height);
         mViewportChanged = true;
+        updateResourceBudget();
     }
 
     /**
      * Here we render the graphics through Renderer
      */
     public void render() {
-        GLES20.glClearColor(0.f, 0.f, 0.f, 1.f);
+        if (mGLState == null) {
+            return;
+        }
+        long startTime = System.nanoTime();
+        // the same boards for the whole frame
+        Board[] boards = mBoards;
+        int maxBoards = mMaxBoards;
+        if (boards.length != maxBoards) {
+            boards = createBoards(maxBoards);
+            mBoards = boards;
+        }
+        mGLState.beginFrame();
+        mGLState.clearColor(0.f, 0.f, 0.f, 1.f);
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
 
         if (mRenderer != null) {
-            Vec4I defaultViewport = new Vec4I(0, 0, mViewSize.data[0], mViewSize.data[1]);
-            GLES20.glViewport(
+            Vec4I defaultViewport = mDefaultViewport;
+            mGLState.viewport(
                     defaultViewport.data[0],
                     defaultViewport.data[1],
                     defaultViewport.data[2],
                     defaultViewport.data[3]);
 
-            if (mRenderer.renderErrorMessage(defaultViewport)) {
+            boolean error = mRenderer.renderErrorMessage(defaultViewport);
+            // EasyAR changes the GL state behind our back
+            mGLState.invalidate();
+            if (error) {
+                mAnimating = true;
                 return;
             }
         }
 
+        mAnimating = false;
         if (mStreamer == null) {
             return;
         }
 
         // get the newest frame from mStreamer
         Frame frame = mStreamer.peek();
+        double timestamp = frame.timestamp();
+        boolean newFrame = timestamp != mRenderedTimestamp;
+        int seenCount = 0;
         try {
+            mRenderedTimestamp = timestamp;
+
             // update mViewport
             updateViewport();
 
             // set mViewport
-            GLES20.glViewport(mViewport.data[0], mViewport.data[1], mViewport.data[2], mViewport.data[3]);
+            mGLState.viewport(mViewport.data[0], mViewport.data[1], mViewport.data[2], mViewport.data[3]);
 
             // render the frame into fragment buffer object
             // will be called in every frame
             if (mRenderer != null) {
                 mRenderer.render(frame, mViewport);
+                mGLState.invalidate();
             }
 
-            for (TargetInstance targetInstance : frame.targetInstances()) {
-                int status = targetInstance.status();
-                if (status == TargetStatus.Tracked) {
-                    Target target = targetInstance.target();
-                    ImageTarget imageTarget = target instanceof ImageTarget ?
-                            (ImageTarget) (target)
-                            :
-                            null;
-                    if (imageTarget == null) {
-                        continue;
-                    }
-                    if (mBlackboardRenderer != null) {
-
-                        // get current time stamp
-                        double timeStamp = frame.timestamp();
-                        // load target texture only once to reduce memory usage
-                        if (mPreviousTarget == null ||
-                                !imageTarget.name().equals(mPreviousTarget.name())) {
-
-                            // fetch dummy data from resources
-                            TextureContainer resContainer = fetchResources(imageTarget.name());
-
-                            /*
-                            * Since the frame will be cached, so when the user return to the scanning
-                            * from other activities, the image target will still be there. We can use
-                            * timestamp to check the current frame and to save the info only once.
-                            * */
-                            if (timeStamp != mPreviousTimeStamp) {
-                                // save scanned info into shared preference
-                                saveScannedInfo(resContainer.getMeetingRoomInfo());
-                            }
-
-                            mBlackboardRenderer.loadTexture(
-                                    resContainer.getMeetingRoomInfo(),
-                                    resContainer.getTexture());
-                        }
-
-                        /*
-                        * Render the box, here we pass the Camera Coordinates
-                        * along with the Projection Matrix
-                        * and the 2 x 1 float vector
-                        * */
-                        mBlackboardRenderer.render(
-                                // get Projection Matrix, pass near plane and far plane
-                                mCamera.projectionGL(0.2f, 500.f),
-                                // get OpenGL coordinate matrix
-                                targetInstance.poseGL(),
-                                // target size, width and height in 2x1 float vector
-                                imageTarget.size());
-
-                        mPreviousTarget = imageTarget;
-                        mPreviousTimeStamp = frame.timestamp();
-                        break;
-                    }
-                }
+            if (mBlackboardRenderer == null || mProjection == null) {
+                return;
             }
+            mBlackboardRenderer.beginFrame();
+            applyPendingRoomInfos();
+
+            mBlackboardRenderer.setProjection(mProjection, mViewport.data[3]);
+            mCuller.beginFrame(mProjection.data, mViewport.data[2], mViewport.data[3]);
+
+            // keep the Camera Coordinates along with the target size in the boards,
+            // sorted from back to front
+            mFrameSource.set(frame);
+            int boardCount = mBoardCollector.collect(
+                    mFrameSource, boards, Math.min(getBoardLimit(), boards.length));
+            mFrameSource.clear();
+            seenCount = mTargetStates.getSeenCount();
+
+            /*
+            * Render the boxes, the projection combined with the Camera Coordinates
+            * and the size of each board are kept in the boards
+            * */
+            mBlackboardRenderer.render(boards, boardCount);
+            mAnimating = isScrolling(boards, boardCount) || mBlackboardRenderer.hasPendingUploads()
+                    || mBoardCollector.isMoving();
         } finally {
+            // the camera image is captured even when there is no board
+            if (mFrameCapture != null) {
+                mFrameCapture.onFrameDrawn(mViewSize.data[0], mViewSize.data[1]);
+            }
             frame.dispose();
+
+            long now = System.nanoTime();
+            mLastRenderTime = now;
+            // the idle frames say nothing of what the device can sustain
+            if (mPowerState.isActive()
+                    && mQualityGovernor.onFrame(now, now - startTime, newFrame ? timestamp : Double.NaN)) {
+                applyCameraSize();
+            }
+            if (mPowerState.update(now, seenCount)) {
+                applyPowerState();
+            }
+            TrackedTarget lastFound = mTargetStates.getLastFound();
+            if (mZoneActivator.update(now, seenCount > 0, lastFound != null ? lastFound.getName() : null)) {
+                applyActiveZones();
+            }
+        }
+    }
+
+    /**
+     * Run the trackers of the zones active now, and save the current zone for the next session
+     */
+    private void applyActiveZones() {
+        updateTrackers();
+        int zone = mZoneActivator.getCurrentZone();
+        if (zone >= 0 && zone != mSavedZone) {
+            mSavedZone = zone;
+            mStatePreferences.edit()
+                    .putString(KEY_LAST_ZONE, mZoneCatalog.getName(zone))
+                    .apply();
         }
+        Log.d(TAG, "applyActiveZones: " + mZoneActivator);
+    }
+
+    /**
+     * Start the trackers which should run and stop the others. None runs while they are paused by
+     * the power state, otherwise the ones of the active zones and the one of the downloaded targets run.
+     *
+     * @return the trackers are all started or stopped
+     */
+    private boolean updateTrackers() {
+        boolean status = true;
+        for (ImageTracker tracker : mImageTrackers) {
+            boolean run = !mTrackersPaused && isTrackerActive(tracker);
+            if (run && mStartedTrackers.add(tracker)) {
+                status &= tracker.start();
+            } else if (!run && mStartedTrackers.remove(tracker)) {
+                status &= tracker.stop();
+            }
+        }
+        return status;
+    }
+
+    private boolean isTrackerActive(ImageTracker tracker) {
+        for (int zone = 0; zone < mZoneTrackers.length; zone++) {
+            if (mZoneTrackers[zone] == tracker) {
+                return mZoneActivator.isActive(zone);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Apply the new power state: the trackers are paused in deep idle, and the camera size is the
+     * lowest tier while idle
+     */
+    private void applyPowerState() {
+        int state = mPowerState.getState();
+        boolean pause = state == PowerStateMachine.DEEP_IDLE;
+        if (pause != mTrackersPaused) {
+            mTrackersPaused = pause;
+            updateTrackers();
+        }
+        if (state == PowerStateMachine.ACTIVE) {
+            // measure the active frames from scratch
+            mQualityGovernor.resetWindows();
+        }
+        applyCameraSize();
+        Log.d(TAG, "applyPowerState: " + mPowerState);
+    }
+
+    private void initQualityGovernor(CameraDevice camera) {
+        int count = camera.supportedSizeCount();
+        int[] widths = new int[count];
+        int[] heights = new int[count];
+        for (int i = 0; i < count; i++) {
+            Vec2I size = camera.supportedSize(i);
+            widths[i] = size.data[0];
+            heights[i] = size.data[1];
+        }
+        mQualityGovernor.setSupportedSizes(widths, heights);
+        float frameRate = camera.frameRate();
+        if (frameRate > 0) {
+            mQualityGovernor.setTargetFrameRate(frameRate);
+        }
+    }
+
+    /**
+     * Set the camera size of the tier picked by the governor, or the lowest tier while idle. The
+     * viewport and the projection follow it since the aspect may change.
+     */
+    private void applyCameraSize() {
+        if (mCamera == null) {
+            return;
+        }
+        Vec2I size = mPowerState.isActive()
+                ? new Vec2I(mQualityGovernor.getWidth(), mQualityGovernor.getHeight())
+                : new Vec2I(mQualityGovernor.getLowestWidth(), mQualityGovernor.getLowestHeight());
+        Vec2I current = mCamera.size();
+        if (size.data[0] == current.data[0] && size.data[1] == current.data[1]) {
+            return;
+        }
+        boolean status = mCamera.setSize(size);
+        Log.d(TAG, "applyCameraSize: " + size.data[0] + "x" + size.data[1] + ", status " + status);
+        mViewportChanged = true;
+        updateViewport();
+    }
+
+    private static boolean isScrolling(Board[] boards, int count) {
+        for (int i = 0; i < count; i++) {
+            if (boards[i].isScrolling()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the next frame would differ from the one drawn: the camera has a new frame, or
+     * something on the screen changes by itself. It must be called on the GL thread, and is meant to
+     * be polled once per vsync with {@link android.opengl.GLSurfaceView#RENDERMODE_WHEN_DIRTY}.
+     */
+    public boolean needsRender() {
+        FrameCapture frameCapture = mFrameCapture;
+        if (mAnimating || !mPendingRoomInfos.isEmpty() || (frameCapture != null && frameCapture.isBusy())
+                || mPowerState.isWakePending()) {
+            return true;
+        }
+        CameraFrameStreamer streamer = mStreamer;
+        if (streamer == null) {
+            return false;
+        }
+        // fewer camera frames are drawn while idle
+        if (System.nanoTime() - mLastRenderTime < mPowerState.getFrameIntervalNanos()) {
+            return false;
+        }
+        Frame frame = streamer.peek();
+        try {
+            return frame.timestamp() != mRenderedTimestamp;
+        } finally {
+            frame.dispose();
+        }
+    }
+
+    /**
+     * Save what is on the screen as an image, it's read back without stalling the frames.
+     *
+     * @param callback called on the main thread once the image is saved
+     */
+    public void requestSnapshot(Bitmap.CompressFormat format, SnapshotSaver.Callback callback) {
+        // it may be disposed on the GL thread at any time
+        FrameCapture frameCapture = mFrameCapture;
+        if (frameCapture == null) {
+            Log.w(TAG, "requestSnapshot: no GL context");
+            if (callback != null) {
+                callback.onFailed();
+            }
+            return;
+        }
+        frameCapture.request(format, callback);
+    }
+
+    /**
+     * Forget the tracked targets along with their containers keyed by id, the targets loaded
+     * next time have new runtime ids. The containers stay keyed by name.
+     */
+    private void forgetTargets() {
+        mBoardCollector.reset();
+        mTextureContainersById.clear();
+    }
+
+    private TextureContainer getTextureContainer(TrackedTarget target) {
+        TextureContainer container = mTextureContainersById.get(target.getId());
+        if (container == null) {
+            container = getTextureContainer(target.getName());
+            mTextureContainersById.put(target.getId(), container);
+        }
+        return container;
+    }
+
+    /**
+     * It can be called on any thread
+     */
+    private TextureContainer getTextureContainer(String targetName) {
+        TextureContainer container = mTextureContainers.get(targetName);
+        if (container == null) {
+            // fetch dummy data from resources
+            container = fetchResources(targetName);
+            TextureContainer existing = mTextureContainers.putIfAbsent(targetName, container);
+            if (existing != null) {
+                container = existing;
+            }
+        }
+        return container;
     }
 
     private void saveScannedInfo(MeetingRoomInfo meetingRoomInfo) {
@@ -323,9 +953,11 @@ public class ARManager {
         Log.d(TAG, "stop: ");
 
         boolean status = true;
-        for (ImageTracker tracker : mImageTrackers) {
+        for (ImageTracker tracker : mStartedTrackers) {
             status &= tracker.stop();
         }
+        mStartedTrackers.clear();
+        mTrackersPaused = false;
         status &= (mStreamer != null) && mStreamer.stop();
         status &= (mCamera != null) && mCamera.stop();
         return status;
@@ -342,7 +974,31 @@ public class ARManager {
             tracker.dispose();
         }
         mImageTrackers.clear();
-        mBlackboardRenderer = null;
+        mStartedTrackers.clear();
+        mZoneTrackers = new ImageTracker[0];
+        mTracker = null;
+        if (mBlackboardRenderer != null) {
+            mBlackboardRenderer.dispose();
+            mBlackboardRenderer = null;
+        }
+        if (mFrameCapture != null) {
+            mFrameCapture.dispose();
+            mFrameCapture = null;
+        }
+        if (mSnapshotSaver != null) {
+            mSnapshotSaver.shutdown();
+            mSnapshotSaver = null;
+        }
+        // no more boards to compose
+        TextureHelper.getBitmapPool().clear();
+        // the camera is closed, the tracked targets are lost
+        forgetTargets();
+        if (mResources != null) {
+            // releaseGL() didn't run, the objects go away with the context
+            mResources.abandonAll();
+        }
+        mGLState = null;
+        mProgramManager = null;
         if (mRenderer != null) {
             mRenderer.dispose();
             mRenderer = null;
@@ -395,6 +1051,9 @@ public class ARManager {
                     viewport_size.data[0],
                     viewport_size.data[1]);
 
+            // get Projection Matrix, pass near plane and far plane
+            mProjection = mCamera != null ? mCamera.projectionGL(0.2f, 500.f) : null;
+
             if ((mCamera != null) && mCamera.isOpened())
                 mViewportChanged = false;
         }
@@ -459,7 +1118,10 @@ public class ARManager {
 
     private class TextureContainer {
 
-        private MeetingRoomInfo mMeetingRoomInfo;
+        /**
+         * Replaced on the GL thread, read on the main thread when the target is found
+         */
+        private volatile MeetingRoomInfo mMeetingRoomInfo;
 
         @DrawableRes
         private int texture;
@@ -0,0 +1,174 @@
+package com.perficient.meetingschedulear.util;
+
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A pool of mutable bitmaps bucketed by width, height and config, so decoding the backgrounds and
+ * composing the text layers reuse the buffers of the bitmaps already uploaded, instead of
+ * allocating large objects for every board.
+ * <p>
+ * When the retained bytes go over the limit, the bitmaps of the least recently used size are recycled.
+ * <p>
+ * It's accessed from the composer workers and the GL thread, all the methods are synchronized.
+ */
+public class BitmapPool {
+
+    private static final String TAG = BitmapPool.class.getSimpleName();
+
+    /**
+     * Default limit, enough for a few full size backgrounds and text layers
+     */
+    public static final int DEFAULT_MAX_BYTES = 8 * 1024 * 1024;
+
+    /**
+     * Bitmaps of each size in access order, so the eldest bucket is the least recently used
+     */
+    private final LinkedHashMap<Long, ArrayDeque<Bitmap>> mBuckets = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int mMaxBytes;
+    private long mRetainedBytes;
+
+    private int mHitCount;
+    private int mMissCount;
+    private int mEvictionCount;
+
+    public BitmapPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    private static long keyOf(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) height << 8) | config.ordinal();
+    }
+
+    /**
+     * Get a transparent mutable bitmap, a new one is created if there is none in the pool
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = poll(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Get a bitmap to decode into with {@link android.graphics.BitmapFactory.Options#inBitmap},
+     * it's not cleared since the decoder overwrites it.
+     *
+     * @return null if there is none in the pool
+     */
+    public synchronized Bitmap getForDecode(int width, int height, Bitmap.Config config) {
+        return poll(width, height, config);
+    }
+
+    private Bitmap poll(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bucket = mBuckets.get(keyOf(width, height, config));
+        Bitmap bitmap = bucket != null ? bucket.poll() : null;
+        if (bitmap == null) {
+            mMissCount++;
+            return null;
+        }
+        mHitCount++;
+        mRetainedBytes -= bitmap.getByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Return a bitmap which is no longer used, a bitmap which can't be reused is recycled
+     */
+    public synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || bitmap.getConfig() == null || bitmap.getByteCount() > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        long key = keyOf(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = mBuckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(key, bucket);
+        }
+        bucket.offer(bitmap);
+        mRetainedBytes += bitmap.getByteCount();
+        trimToSize(mMaxBytes);
+    }
+
+    public synchronized void setMaxBytes(int maxBytes) {
+        mMaxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    /**
+     * Recycle all the bitmaps in the pool
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    private void trimToSize(long maxBytes) {
+        Iterator<Map.Entry<Long, ArrayDeque<Bitmap>>> iterator = mBuckets.entrySet().iterator();
+        while (mRetainedBytes > maxBytes && iterator.hasNext()) {
+            ArrayDeque<Bitmap> bucket = iterator.next().getValue();
+            Bitmap bitmap;
+            while (mRetainedBytes > maxBytes && (bitmap = bucket.poll()) != null) {
+                mRetainedBytes -= bitmap.getByteCount();
+                mEvictionCount++;
+                bitmap.recycle();
+            }
+            if (bucket.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return hits of all the requests, 0 if there is none
+     */
+    public synchronized float getHitRate() {
+        int requests = mHitCount + mMissCount;
+        return requests > 0 ? (float) mHitCount / requests : 0;
+    }
+
+    /**
+     * @return bytes of the bitmaps kept in the pool
+     */
+    public synchronized long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
+    public void logStats() {
+        Log.d(TAG, "logStats: " + toString());
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BitmapPool{retained=" + mRetainedBytes + "/" + mMaxBytes
+                + ", hits=" + mHitCount
+                + ", misses=" + mMissCount
+                + ", hitRate=" + getHitRate()
+                + ", evictions=" + mEvictionCount + "}";
+    }
+}
@@ -0,0 +1,105 @@
+package com.perficient.meetingschedulear.util;
+
+
+import com.perficient.meetingschedulear.renderer.FrameSource;
+
+import java.util.ArrayList;
+
+import cn.easyar.Frame;
+import cn.easyar.ImageTarget;
+import cn.easyar.Target;
+import cn.easyar.TargetInstance;
+import cn.easyar.TargetStatus;
+
+/**
+ * Reads the tracked targets of an EasyAR frame for {@link com.perficient.meetingschedulear.renderer.BoardCollector}.
+ * <p>
+ * The target instances are got from the frame only once, the instance is reused for every frame.
+ * The objects created by the SDK in its native calls, e.g. the list of instances and the pose,
+ * can't be avoided here.
+ * <p>
+ * Must be accessed on the GL thread only.
+ */
+public class EasyARFrameSource implements FrameSource {
+
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private double mTimestamp;
+
+    private ArrayList<TargetInstance> mInstances;
+
+    /**
+     * Runtime id and image target of each instance, 0 and null if it's not tracked
+     */
+    private int[] mIds = new int[DEFAULT_CAPACITY];
+    private ImageTarget[] mTargets = new ImageTarget[DEFAULT_CAPACITY];
+
+    private int mCount;
+
+    /**
+     * Read the targets of this frame, call {@link #clear()} when the frame is done
+     */
+    public void set(Frame frame) {
+        mTimestamp = frame.timestamp();
+        mInstances = frame.targetInstances();
+        mCount = mInstances.size();
+        if (mIds.length < mCount) {
+            mIds = new int[mCount];
+            mTargets = new ImageTarget[mCount];
+        }
+        for (int i = 0; i < mCount; i++) {
+            TargetInstance instance = mInstances.get(i);
+            Target target = instance.status() == TargetStatus.Tracked ? instance.target() : null;
+            if (target instanceof ImageTarget) {
+                mTargets[i] = (ImageTarget) target;
+                mIds[i] = target.runtimeID();
+            } else {
+                mTargets[i] = null;
+                mIds[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Drop the references to the frame
+     */
+    public void clear() {
+        for (int i = 0; i < mCount; i++) {
+            mTargets[i] = null;
+        }
+        mInstances = null;
+        mCount = 0;
+    }
+
+    @Override
+    public double getTimestamp() {
+        return mTimestamp;
+    }
+
+    @Override
+    public int getTargetCount() {
+        return mCount;
+    }
+
+    @Override
+    public int getTrackedTargetId(int index) {
+        return mIds[index];
+    }
+
+    @Override
+    public String getTargetName(int index) {
+        return mTargets[index].name();
+    }
+
+    @Override
+    public void getTargetSize(int index, float[] outSize) {
+        float[] size = mTargets[index].size().data;
+        outSize[0] = size[0];
+        outSize[1] = size[1];
+    }
+
+    @Override
+    public void getPose(int index, float[] outPose) {
+        System.arraycopy(mInstances.get(index).poseGL().data, 0, outPose, 0, 16);
+    }
+}
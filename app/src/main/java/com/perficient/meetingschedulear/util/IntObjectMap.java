@@ -0,0 +1,175 @@
+package com.perficient.meetingschedulear.util;
+
+
+import java.util.Arrays;
+
+/**
+ * A map from int keys to objects with open addressing, the keys are not boxed,
+ * so looking up and putting an existing key allocate nothing.
+ * <p>
+ * Not thread safe.
+ */
+public class IntObjectMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Max ratio of the used slots before the table grows
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private int[] mKeys;
+    private Object[] mValues;
+
+    /**
+     * A slot is used if its value is not null
+     */
+    private int mSize;
+
+    public IntObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntObjectMap(int capacity) {
+        int tableSize = Integer.highestOneBit(Math.max(4, (int) (capacity / LOAD_FACTOR)) - 1) << 1;
+        mKeys = new int[tableSize];
+        mValues = new Object[tableSize];
+    }
+
+    /**
+     * @return the value of this key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int mask = mKeys.length - 1;
+        for (int i = hash(key) & mask; mValues[i] != null; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                return (V) mValues[i];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param value must not be null
+     * @return the previous value of this key, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value must not be null");
+        }
+        int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        for (; mValues[i] != null; i = (i + 1) & mask) {
+            if (mKeys[i] == key) {
+                V previous = (V) mValues[i];
+                mValues[i] = value;
+                return previous;
+            }
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        if (++mSize > mKeys.length * LOAD_FACTOR) {
+            resize(mKeys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return the removed value, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mValues[i] != null && mKeys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (mValues[i] == null) {
+            return null;
+        }
+        V removed = (V) mValues[i];
+        mValues[i] = null;
+        mSize--;
+
+        // move the following entries of the probe sequence up, so they can still be found
+        for (int j = (i + 1) & mask; mValues[j] != null; j = (j + 1) & mask) {
+            int home = hash(mKeys[j]) & mask;
+            // the entry at j can fill the gap at i if its home is not in (i, j]
+            if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+                mKeys[i] = mKeys[j];
+                mValues[i] = mValues[j];
+                mValues[j] = null;
+                i = j;
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(mValues, null);
+        mSize = 0;
+    }
+
+    /**
+     * Number of slots for iterating with {@link #keyAt(int)} and {@link #valueAt(int)},
+     * a slot is empty if its value is null.
+     */
+    public int capacity() {
+        return mKeys.length;
+    }
+
+    public int keyAt(int slot) {
+        return mKeys[slot];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) mValues[slot];
+    }
+
+    private void resize(int tableSize) {
+        int[] keys = mKeys;
+        Object[] values = mValues;
+        mKeys = new int[tableSize];
+        mValues = new Object[tableSize];
+        mSize = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                insert(keys[i], values[i]);
+            }
+        }
+    }
+
+    private void insert(int key, Object value) {
+        int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mValues[i] != null) {
+            i = (i + 1) & mask;
+        }
+        mKeys[i] = key;
+        mValues[i] = value;
+        mSize++;
+    }
+
+    /**
+     * Spread the bits, since runtime ids and resource ids are often sequential
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
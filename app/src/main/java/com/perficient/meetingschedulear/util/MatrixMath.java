@@ -0,0 +1,354 @@
+package com.perficient.meetingschedulear.util;
+
+
+/**
+ * Matrix and vector math on float arrays, for pose and projection on the CPU.
+ * <p>
+ * Matrices are 4 x 4 in column major order, the same as OpenGL and EasyAR. Nothing is allocated,
+ * the results are written into the arrays passed in, which are meant to be preallocated and reused.
+ * The output array may be the same as an input array.
+ */
+public class MatrixMath {
+
+    /**
+     * Below this the determinant is taken as 0
+     */
+    private static final float EPSILON = 1e-12f;
+
+    public static void setIdentity(float[] m) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = (i % 5 == 0) ? 1f : 0f;
+        }
+    }
+
+    /**
+     * out = a * b, so b is applied first
+     */
+    public static void multiply(float[] out, float[] a, float[] b) {
+        float a00 = a[0], a10 = a[1], a20 = a[2], a30 = a[3];
+        float a01 = a[4], a11 = a[5], a21 = a[6], a31 = a[7];
+        float a02 = a[8], a12 = a[9], a22 = a[10], a32 = a[11];
+        float a03 = a[12], a13 = a[13], a23 = a[14], a33 = a[15];
+        for (int column = 0; column < 16; column += 4) {
+            float b0 = b[column];
+            float b1 = b[column + 1];
+            float b2 = b[column + 2];
+            float b3 = b[column + 3];
+            out[column] = a00 * b0 + a01 * b1 + a02 * b2 + a03 * b3;
+            out[column + 1] = a10 * b0 + a11 * b1 + a12 * b2 + a13 * b3;
+            out[column + 2] = a20 * b0 + a21 * b1 + a22 * b2 + a23 * b3;
+            out[column + 3] = a30 * b0 + a31 * b1 + a32 * b2 + a33 * b3;
+        }
+    }
+
+    /**
+     * Invert any matrix, e.g. a projection
+     *
+     * @return false if the matrix is singular, then out is not changed
+     */
+    public static boolean invert(float[] out, float[] m) {
+        float m00 = m[0], m01 = m[1], m02 = m[2], m03 = m[3];
+        float m10 = m[4], m11 = m[5], m12 = m[6], m13 = m[7];
+        float m20 = m[8], m21 = m[9], m22 = m[10], m23 = m[11];
+        float m30 = m[12], m31 = m[13], m32 = m[14], m33 = m[15];
+
+        // 2 x 2 determinants of the lower and upper halves
+        float b00 = m00 * m11 - m01 * m10;
+        float b01 = m00 * m12 - m02 * m10;
+        float b02 = m00 * m13 - m03 * m10;
+        float b03 = m01 * m12 - m02 * m11;
+        float b04 = m01 * m13 - m03 * m11;
+        float b05 = m02 * m13 - m03 * m12;
+        float b06 = m20 * m31 - m21 * m30;
+        float b07 = m20 * m32 - m22 * m30;
+        float b08 = m20 * m33 - m23 * m30;
+        float b09 = m21 * m32 - m22 * m31;
+        float b10 = m21 * m33 - m23 * m31;
+        float b11 = m22 * m33 - m23 * m32;
+
+        float determinant = b00 * b11 - b01 * b10 + b02 * b09 + b03 * b08 - b04 * b07 + b05 * b06;
+        if (Math.abs(determinant) < EPSILON) {
+            return false;
+        }
+        float inverse = 1f / determinant;
+
+        out[0] = (m11 * b11 - m12 * b10 + m13 * b09) * inverse;
+        out[1] = (m02 * b10 - m01 * b11 - m03 * b09) * inverse;
+        out[2] = (m31 * b05 - m32 * b04 + m33 * b03) * inverse;
+        out[3] = (m22 * b04 - m21 * b05 - m23 * b03) * inverse;
+        out[4] = (m12 * b08 - m10 * b11 - m13 * b07) * inverse;
+        out[5] = (m00 * b11 - m02 * b08 + m03 * b07) * inverse;
+        out[6] = (m32 * b02 - m30 * b05 - m33 * b01) * inverse;
+        out[7] = (m20 * b05 - m22 * b02 + m23 * b01) * inverse;
+        out[8] = (m10 * b10 - m11 * b08 + m13 * b06) * inverse;
+        out[9] = (m01 * b08 - m00 * b10 - m03 * b06) * inverse;
+        out[10] = (m30 * b04 - m31 * b02 + m33 * b00) * inverse;
+        out[11] = (m21 * b02 - m20 * b04 - m23 * b00) * inverse;
+        out[12] = (m11 * b07 - m10 * b09 - m12 * b06) * inverse;
+        out[13] = (m00 * b09 - m01 * b07 + m02 * b06) * inverse;
+        out[14] = (m31 * b01 - m30 * b03 - m32 * b00) * inverse;
+        out[15] = (m20 * b03 - m21 * b01 + m22 * b00) * inverse;
+        return true;
+    }
+
+    /**
+     * Invert a rotation plus translation, e.g. a target pose, much cheaper than {@link #invert(float[], float[])}
+     */
+    public static void invertRigid(float[] out, float[] m) {
+        float r00 = m[0], r10 = m[1], r20 = m[2];
+        float r01 = m[4], r11 = m[5], r21 = m[6];
+        float r02 = m[8], r12 = m[9], r22 = m[10];
+        float tx = m[12], ty = m[13], tz = m[14];
+
+        // the inverse rotation is the transpose
+        out[0] = r00;
+        out[1] = r01;
+        out[2] = r02;
+        out[3] = 0;
+        out[4] = r10;
+        out[5] = r11;
+        out[6] = r12;
+        out[7] = 0;
+        out[8] = r20;
+        out[9] = r21;
+        out[10] = r22;
+        out[11] = 0;
+        out[12] = -(r00 * tx + r10 * ty + r20 * tz);
+        out[13] = -(r01 * tx + r11 * ty + r21 * tz);
+        out[14] = -(r02 * tx + r12 * ty + r22 * tz);
+        out[15] = 1;
+    }
+
+    /**
+     * Transform the point (x, y, z, 1), the result is not divided by w
+     *
+     * @param out x, y, z and w are written at the offset
+     */
+    public static void transformPoint(float[] out, int offset, float[] m, float x, float y, float z) {
+        out[offset] = m[0] * x + m[4] * y + m[8] * z + m[12];
+        out[offset + 1] = m[1] * x + m[5] * y + m[9] * z + m[13];
+        out[offset + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+        out[offset + 3] = m[3] * x + m[7] * y + m[11] * z + m[15];
+    }
+
+    /**
+     * Transform the direction (x, y, z, 0), the translation is not applied
+     *
+     * @param out x, y and z are written at the offset
+     */
+    public static void transformDirection(float[] out, int offset, float[] m, float x, float y, float z) {
+        out[offset] = m[0] * x + m[4] * y + m[8] * z;
+        out[offset + 1] = m[1] * x + m[5] * y + m[9] * z;
+        out[offset + 2] = m[2] * x + m[6] * y + m[10] * z;
+    }
+
+    /**
+     * Project a point to the screen, the origin of the screen is on the top left like touch events.
+     *
+     * @param mvp projection * model view
+     * @param out x and y in pixels, and the depth in [0, 1]
+     * @return false if the point is behind the camera, then out is not valid
+     */
+    public static boolean project(float[] out, float[] mvp, float x, float y, float z,
+                                  int viewportWidth, int viewportHeight) {
+        float w = mvp[3] * x + mvp[7] * y + mvp[11] * z + mvp[15];
+        if (w <= 0) {
+            return false;
+        }
+        float ndcX = (mvp[0] * x + mvp[4] * y + mvp[8] * z + mvp[12]) / w;
+        float ndcY = (mvp[1] * x + mvp[5] * y + mvp[9] * z + mvp[13]) / w;
+        float ndcZ = (mvp[2] * x + mvp[6] * y + mvp[10] * z + mvp[14]) / w;
+        out[0] = (ndcX + 1f) * 0.5f * viewportWidth;
+        out[1] = (1f - ndcY) * 0.5f * viewportHeight;
+        out[2] = (ndcZ + 1f) * 0.5f;
+        return true;
+    }
+
+    /**
+     * Build the ray through a point on the screen, in the space the projection is applied to.
+     *
+     * @param inverseProjection inverse of the projection, or of projection * model view to get the ray in model space
+     * @param out               origin on the near plane at 0, and the normalized direction at 3
+     * @return false if the point can't be unprojected
+     */
+    public static boolean screenRay(float[] out, float[] inverseProjection, float screenX, float screenY,
+                                    int viewportWidth, int viewportHeight) {
+        float ndcX = screenX / viewportWidth * 2f - 1f;
+        float ndcY = 1f - screenY / viewportHeight * 2f;
+        float[] m = inverseProjection;
+
+        // the point on the near plane
+        float nearW = m[3] * ndcX + m[7] * ndcY - m[11] + m[15];
+        // the point on the far plane
+        float farW = m[3] * ndcX + m[7] * ndcY + m[11] + m[15];
+        if (Math.abs(nearW) < EPSILON || Math.abs(farW) < EPSILON) {
+            return false;
+        }
+        float nearX = (m[0] * ndcX + m[4] * ndcY - m[8] + m[12]) / nearW;
+        float nearY = (m[1] * ndcX + m[5] * ndcY - m[9] + m[13]) / nearW;
+        float nearZ = (m[2] * ndcX + m[6] * ndcY - m[10] + m[14]) / nearW;
+        float farX = (m[0] * ndcX + m[4] * ndcY + m[8] + m[12]) / farW;
+        float farY = (m[1] * ndcX + m[5] * ndcY + m[9] + m[13]) / farW;
+        float farZ = (m[2] * ndcX + m[6] * ndcY + m[10] + m[14]) / farW;
+
+        out[0] = nearX;
+        out[1] = nearY;
+        out[2] = nearZ;
+        out[3] = farX - nearX;
+        out[4] = farY - nearY;
+        out[5] = farZ - nearZ;
+        return normalize(out, 3) > 0;
+    }
+
+    /**
+     * Transform a ray of {@link #screenRay}, e.g. from camera space into the space of a target
+     * with the inverse of its pose. The direction is not normalized again.
+     */
+    public static void transformRay(float[] out, float[] m, float[] ray) {
+        float ox = ray[0], oy = ray[1], oz = ray[2];
+        float dx = ray[3], dy = ray[4], dz = ray[5];
+        out[0] = m[0] * ox + m[4] * oy + m[8] * oz + m[12];
+        out[1] = m[1] * ox + m[5] * oy + m[9] * oz + m[13];
+        out[2] = m[2] * ox + m[6] * oy + m[10] * oz + m[14];
+        transformDirection(out, 3, m, dx, dy, dz);
+    }
+
+    /**
+     * Intersect a ray with the rect of this size centered on the z axis, at the given z.
+     *
+     * @param ray origin and direction, see {@link #screenRay}
+     * @param out x and y of the hit point on the plane, may be null
+     * @return distance along the ray, or -1 if the ray misses the rect
+     */
+    public static float intersectRect(float[] out, float[] ray, float width, float height, float z) {
+        float dz = ray[5];
+        if (Math.abs(dz) < EPSILON) {
+            // parallel to the plane
+            return -1;
+        }
+        float t = (z - ray[2]) / dz;
+        if (t < 0) {
+            return -1;
+        }
+        float x = ray[0] + ray[3] * t;
+        float y = ray[1] + ray[4] * t;
+        if (Math.abs(x) > width / 2 || Math.abs(y) > height / 2) {
+            return -1;
+        }
+        if (out != null) {
+            out[0] = x;
+            out[1] = y;
+        }
+        return t;
+    }
+
+    /**
+     * Normalize the 3D vector at the offset
+     *
+     * @return length of the vector before, the vector is not changed if it's 0
+     */
+    public static float normalize(float[] v, int offset) {
+        float length = (float) Math.sqrt(
+                v[offset] * v[offset] + v[offset + 1] * v[offset + 1] + v[offset + 2] * v[offset + 2]);
+        if (length > 0) {
+            v[offset] /= length;
+            v[offset + 1] /= length;
+            v[offset + 2] /= length;
+        }
+        return length;
+    }
+
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset) {
+        return a[aOffset] * b[bOffset] + a[aOffset + 1] * b[bOffset + 1] + a[aOffset + 2] * b[bOffset + 2];
+    }
+
+    /**
+     * Write the rotation of a rigid transform as a unit quaternion x, y, z, w at the offset
+     */
+    public static void toQuaternion(float[] out, int offset, float[] m) {
+        float m00 = m[0], m11 = m[5], m22 = m[10];
+        float trace = m00 + m11 + m22;
+        float x, y, z, w;
+        if (trace > 0) {
+            float s = (float) Math.sqrt(trace + 1f) * 2f;
+            w = 0.25f * s;
+            x = (m[6] - m[9]) / s;
+            y = (m[8] - m[2]) / s;
+            z = (m[1] - m[4]) / s;
+        } else if (m00 > m11 && m00 > m22) {
+            float s = (float) Math.sqrt(1f + m00 - m11 - m22) * 2f;
+            w = (m[6] - m[9]) / s;
+            x = 0.25f * s;
+            y = (m[4] + m[1]) / s;
+            z = (m[8] + m[2]) / s;
+        } else if (m11 > m22) {
+            float s = (float) Math.sqrt(1f + m11 - m00 - m22) * 2f;
+            w = (m[8] - m[2]) / s;
+            x = (m[4] + m[1]) / s;
+            y = 0.25f * s;
+            z = (m[9] + m[6]) / s;
+        } else {
+            float s = (float) Math.sqrt(1f + m22 - m00 - m11) * 2f;
+            w = (m[1] - m[4]) / s;
+            x = (m[8] + m[2]) / s;
+            y = (m[9] + m[6]) / s;
+            z = 0.25f * s;
+        }
+        out[offset] = x;
+        out[offset + 1] = y;
+        out[offset + 2] = z;
+        out[offset + 3] = w;
+    }
+
+    /**
+     * Set a rigid transform from the unit quaternion x, y, z, w at the offset and a translation
+     */
+    public static void setRotationTranslation(float[] out, float[] q, int offset, float tx, float ty, float tz) {
+        float x = q[offset], y = q[offset + 1], z = q[offset + 2], w = q[offset + 3];
+        float xx = x * x, yy = y * y, zz = z * z;
+        float xy = x * y, xz = x * z, yz = y * z;
+        float xw = x * w, yw = y * w, zw = z * w;
+        out[0] = 1f - 2f * (yy + zz);
+        out[1] = 2f * (xy + zw);
+        out[2] = 2f * (xz - yw);
+        out[3] = 0;
+        out[4] = 2f * (xy - zw);
+        out[5] = 1f - 2f * (xx + zz);
+        out[6] = 2f * (yz + xw);
+        out[7] = 0;
+        out[8] = 2f * (xz + yw);
+        out[9] = 2f * (yz - xw);
+        out[10] = 1f - 2f * (xx + yy);
+        out[11] = 0;
+        out[12] = tx;
+        out[13] = ty;
+        out[14] = tz;
+        out[15] = 1f;
+    }
+
+    /**
+     * Normalize the quaternion at the offset
+     *
+     * @return length of the quaternion before, it's not changed if it's 0
+     */
+    public static float normalizeQuaternion(float[] q, int offset) {
+        float length = (float) Math.sqrt(q[offset] * q[offset] + q[offset + 1] * q[offset + 1]
+                + q[offset + 2] * q[offset + 2] + q[offset + 3] * q[offset + 3]);
+        if (length > 0) {
+            q[offset] /= length;
+            q[offset + 1] /= length;
+            q[offset + 2] /= length;
+            q[offset + 3] /= length;
+        }
+        return length;
+    }
+
+    /**
+     * Interpolate each element, out = a + (b - a) * t, for count elements
+     */
+    public static void lerp(float[] out, float[] a, float[] b, float t, int count) {
+        for (int i = 0; i < count; i++) {
+            out[i] = a[i] + (b[i] - a[i]) * t;
+        }
+    }
+}
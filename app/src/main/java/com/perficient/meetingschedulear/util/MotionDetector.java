@@ -0,0 +1,109 @@
+package com.perficient.meetingschedulear.util;
+
+
+import android.content.Context;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.util.Log;
+
+/**
+ * Tells the {@link PowerStateMachine} when the device is moved, so it wakes up even while the
+ * trackers are paused. It uses the gyroscope, or the accelerometer without the gravity on devices
+ * which have no gyroscope.
+ * <p>
+ * Must be accessed on the main thread only.
+ */
+public class MotionDetector implements SensorEventListener {
+
+    private static final String TAG = MotionDetector.class.getSimpleName();
+
+    /**
+     * Angular speed in rad/s above which the device is moved, a hand holding it still stays below
+     */
+    private static final float ROTATION_THRESHOLD = 0.3f;
+
+    /**
+     * Linear acceleration in m/s^2 above which the device is moved
+     */
+    private static final float ACCELERATION_THRESHOLD = 0.8f;
+
+    /**
+     * Weight of the new sample in the low pass which finds the gravity
+     */
+    private static final float GRAVITY_ALPHA = 0.1f;
+
+    private final SensorManager mSensorManager;
+
+    private final Sensor mSensor;
+
+    private final PowerStateMachine mPowerState;
+
+    private final float[] mGravity = new float[3];
+
+    private boolean mGravityKnown;
+
+    private boolean mRegistered;
+
+    public MotionDetector(Context context, PowerStateMachine powerState) {
+        mPowerState = powerState;
+        mSensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
+        Sensor sensor = null;
+        if (mSensorManager != null) {
+            sensor = mSensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+            if (sensor == null) {
+                sensor = mSensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+            }
+        }
+        mSensor = sensor;
+        if (sensor == null) {
+            Log.w(TAG, "MotionDetector: no motion sensor, only a target seen wakes up from idle");
+        }
+    }
+
+    public void onResume() {
+        if (mSensor != null && !mRegistered) {
+            mGravityKnown = false;
+            mRegistered = mSensorManager.registerListener(this, mSensor, SensorManager.SENSOR_DELAY_UI);
+        }
+    }
+
+    public void onPause() {
+        if (mRegistered) {
+            mSensorManager.unregisterListener(this);
+            mRegistered = false;
+        }
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        float[] values = event.values;
+        if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
+            if (length(values[0], values[1], values[2]) > ROTATION_THRESHOLD) {
+                mPowerState.onMotion();
+            }
+            return;
+        }
+
+        if (!mGravityKnown) {
+            System.arraycopy(values, 0, mGravity, 0, 3);
+            mGravityKnown = true;
+            return;
+        }
+        for (int i = 0; i < 3; i++) {
+            mGravity[i] += (values[i] - mGravity[i]) * GRAVITY_ALPHA;
+        }
+        if (length(values[0] - mGravity[0], values[1] - mGravity[1], values[2] - mGravity[2]) > ACCELERATION_THRESHOLD) {
+            mPowerState.onMotion();
+        }
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {
+    }
+
+    private static float length(float x, float y, float z) {
+        return (float) Math.sqrt(x * x + y * y + z * z);
+    }
+}
@@ -0,0 +1,205 @@
+package com.perficient.meetingschedulear.util;
+
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Saves power while the camera sees no target, e.g. the device is left pointed at a blank wall.
+ * <p>
+ * The machine is {@link #ACTIVE} while a target is seen. After the idle timeout without a target it
+ * goes {@link #IDLE}, where the frames are rendered at a lower rate with a smaller camera size. If
+ * enabled, after a longer timeout it goes {@link #DEEP_IDLE}, where the trackers are paused too, so
+ * only motion of the device can wake it. A target seen or a motion wakes it up at once.
+ * <p>
+ * Must be updated on the GL thread, {@link #onMotion()} and the getters can be called on any thread.
+ */
+public class PowerStateMachine {
+
+    private static final String TAG = PowerStateMachine.class.getSimpleName();
+
+    public static final int ACTIVE = 0;
+    public static final int IDLE = 1;
+    public static final int DEEP_IDLE = 2;
+
+    private static final String[] NAMES = {"active", "idle", "deep idle"};
+
+    private static final long DEFAULT_IDLE_TIMEOUT_NANOS = 10000000000L;
+    private static final long DEFAULT_DEEP_IDLE_TIMEOUT_NANOS = 60000000000L;
+
+    private static final float DEFAULT_IDLE_FRAME_RATE = 10f;
+
+    private volatile int mState = ACTIVE;
+
+    private long mIdleTimeoutNanos = DEFAULT_IDLE_TIMEOUT_NANOS;
+
+    private long mDeepIdleTimeoutNanos = DEFAULT_DEEP_IDLE_TIMEOUT_NANOS;
+
+    private boolean mDeepIdleEnabled;
+
+    private volatile long mIdleFrameIntervalNanos = (long) (1e9f / DEFAULT_IDLE_FRAME_RATE);
+
+    /**
+     * The device moved since the last update, set on the sensor thread
+     */
+    private volatile boolean mMotion;
+
+    /**
+     * Last time a target is seen or the device moved
+     */
+    private long mLastActivityNanos;
+
+    private long mLastUpdateNanos;
+
+    private boolean mStarted;
+
+    /**
+     * Nanos spent in each state, up to the last update
+     */
+    private final AtomicLongArray mTimeInState = new AtomicLongArray(NAMES.length);
+
+    private volatile int mWakeCount;
+
+    /**
+     * @param seconds time without a target before going idle
+     */
+    public void setIdleTimeout(float seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("seconds must be positive");
+        }
+        mIdleTimeoutNanos = (long) (seconds * 1e9);
+    }
+
+    /**
+     * @param enabled pause the trackers after the deep idle timeout, then only a motion wakes it up
+     * @param seconds time without a target before the trackers are paused, longer than the idle timeout
+     */
+    public void setDeepIdle(boolean enabled, float seconds) {
+        if (seconds <= 0) {
+            throw new IllegalArgumentException("seconds must be positive");
+        }
+        mDeepIdleEnabled = enabled;
+        mDeepIdleTimeoutNanos = (long) (seconds * 1e9);
+    }
+
+    public boolean isDeepIdleEnabled() {
+        return mDeepIdleEnabled;
+    }
+
+    /**
+     * @param frameRate max frames rendered per second while idle
+     */
+    public void setIdleFrameRate(float frameRate) {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("frameRate must be positive");
+        }
+        mIdleFrameIntervalNanos = (long) (1e9f / frameRate);
+    }
+
+    /**
+     * @return min time between two frames rendered in the current state, 0 if not limited
+     */
+    public long getFrameIntervalNanos() {
+        return mState == ACTIVE ? 0 : mIdleFrameIntervalNanos;
+    }
+
+    /**
+     * The device moved, it can be called on any thread. The machine wakes up on the next update.
+     */
+    public void onMotion() {
+        mMotion = true;
+    }
+
+    /**
+     * @return a motion is waiting for the next update, which should run without waiting for the
+     * idle frame interval
+     */
+    public boolean isWakePending() {
+        return mMotion && mState != ACTIVE;
+    }
+
+    /**
+     * Start over as active, e.g. when the camera is started again. The time until now is not counted.
+     */
+    public void reset(long nowNanos) {
+        mState = ACTIVE;
+        mMotion = false;
+        mLastActivityNanos = nowNanos;
+        mLastUpdateNanos = nowNanos;
+        mStarted = true;
+    }
+
+    /**
+     * Call it once per frame rendered
+     *
+     * @param nowNanos    System.nanoTime() of the frame
+     * @param targetCount number of targets tracked in the frame
+     * @return the state is changed
+     */
+    public boolean update(long nowNanos, int targetCount) {
+        if (!mStarted) {
+            reset(nowNanos);
+        }
+        int state = mState;
+        mTimeInState.addAndGet(state, nowNanos - mLastUpdateNanos);
+        mLastUpdateNanos = nowNanos;
+
+        boolean motion = mMotion;
+        mMotion = false;
+        if (targetCount > 0 || motion) {
+            mLastActivityNanos = nowNanos;
+            if (state != ACTIVE) {
+                mWakeCount++;
+                return setState(ACTIVE, targetCount > 0 ? "target seen" : "motion");
+            }
+            return false;
+        }
+
+        long inactive = nowNanos - mLastActivityNanos;
+        if (mDeepIdleEnabled && inactive >= mDeepIdleTimeoutNanos) {
+            return state != DEEP_IDLE && setState(DEEP_IDLE, "no target");
+        }
+        if (state == ACTIVE && inactive >= mIdleTimeoutNanos) {
+            return setState(IDLE, "no target");
+        }
+        return false;
+    }
+
+    private boolean setState(int state, String reason) {
+        Log.d(TAG, "setState: " + NAMES[mState] + " -> " + NAMES[state] + ", " + reason);
+        mState = state;
+        return true;
+    }
+
+    public int getState() {
+        return mState;
+    }
+
+    public boolean isActive() {
+        return mState == ACTIVE;
+    }
+
+    /**
+     * @return nanos spent in the state up to the last update, while the camera is started
+     */
+    public long getTimeInState(int state) {
+        return mTimeInState.get(state);
+    }
+
+    /**
+     * @return times it's woken up from idle
+     */
+    public int getWakeCount() {
+        return mWakeCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder times = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++) {
+            times.append(", ").append(NAMES[i]).append('=').append(mTimeInState.get(i) / 1000000).append("ms");
+        }
+        return "PowerStateMachine{state=" + NAMES[mState] + times + ", wakes=" + mWakeCount + "}";
+    }
+}
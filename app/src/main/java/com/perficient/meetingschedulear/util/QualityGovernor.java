@@ -0,0 +1,403 @@
+package com.perficient.meetingschedulear.util;
+
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Picks the camera resolution the device can sustain, from the frame times measured.
+ * <p>
+ * The camera sizes supported form a ladder of tiers, tier 0 is the largest. The governor keeps a
+ * rolling window of the time spent rendering a frame, and of the interval between the camera
+ * frames, which grows when the tracker can't keep up. When either is over budget the governor
+ * steps down a tier. It only steps up again once both are well within budget for a while, and
+ * that while doubles each time a step up has to be taken back soon after, so it doesn't flip
+ * between two tiers.
+ * <p>
+ * Must be accessed on the GL thread only, the getters for diagnostics can be called on any thread.
+ */
+public class QualityGovernor {
+
+    private static final String TAG = QualityGovernor.class.getSimpleName();
+
+    private static final int DEFAULT_MAX_WIDTH = 1280;
+    private static final int DEFAULT_MAX_HEIGHT = 720;
+
+    private static final int MIN_WIDTH = 320;
+
+    private static final int MAX_TIERS = 4;
+
+    /**
+     * A tier has at most this ratio of the pixels of the tier above it
+     */
+    private static final float TIER_AREA_RATIO = 0.7f;
+
+    /**
+     * Sizes whose aspect differs less than this from the largest one are preferred
+     */
+    private static final float ASPECT_TOLERANCE = 0.05f;
+
+    private static final int WINDOW_SIZE = 30;
+
+    /**
+     * Over budget: the camera frames come slower than this ratio of the frame time,
+     * or a frame takes longer than this ratio of it to render
+     */
+    private static final float SLOW_TRACKING_RATIO = 1.25f;
+    private static final float SLOW_RENDER_RATIO = 0.75f;
+
+    /**
+     * Well within budget
+     */
+    private static final float FAST_TRACKING_RATIO = 1.1f;
+    private static final float FAST_RENDER_RATIO = 0.4f;
+
+    /**
+     * Camera frame intervals longer than this are a pause, not a slow tracker
+     */
+    private static final float MAX_TRACKING_INTERVAL_MS = 1000f;
+
+    /**
+     * Time a tier is kept at least, the new size takes a moment to settle
+     */
+    private static final long MIN_DWELL_NANOS = 2000000000L;
+
+    /**
+     * Time within budget before stepping up, and its bounds when it doubles
+     */
+    private static final long MIN_UPGRADE_HOLD_NANOS = 5000000000L;
+    private static final long MAX_UPGRADE_HOLD_NANOS = 80000000000L;
+
+    /**
+     * A step down within this time after a step up takes it back
+     */
+    private static final long REVERT_NANOS = 10000000000L;
+
+    private int[] mWidths = {DEFAULT_MAX_WIDTH};
+    private int[] mHeights = {DEFAULT_MAX_HEIGHT};
+
+    private volatile int mTier;
+
+    private float mFrameTimeMs = 1000f / 30;
+
+    private final RollingAverage mRenderTimes = new RollingAverage(WINDOW_SIZE);
+    private final RollingAverage mTrackingTimes = new RollingAverage(WINDOW_SIZE);
+
+    private double mLastCameraTimestamp = Double.NaN;
+
+    private long mTierSince = Long.MIN_VALUE;
+
+    /**
+     * Since when the frames are well within budget, -1 if they are not
+     */
+    private long mFastSince = -1;
+
+    private boolean mLastChangeUp;
+
+    private long mUpgradeHold = MIN_UPGRADE_HOLD_NANOS;
+
+    /**
+     * Averages of the last full windows, for diagnostics
+     */
+    private volatile float mRenderTimeMs;
+    private volatile float mTrackingTimeMs;
+
+    private volatile int mChangeCount;
+
+    /**
+     * Build the ladder from the sizes the camera supports, up to 1280 x 720. The current tier is
+     * kept if the ladder has it, e.g. when the camera is opened again.
+     */
+    public void setSupportedSizes(int[] widths, int[] heights) {
+        setSupportedSizes(widths, heights, DEFAULT_MAX_WIDTH, DEFAULT_MAX_HEIGHT);
+    }
+
+    /**
+     * @param maxWidth  the largest size used, the size of tier 0 if it's supported
+     * @param maxHeight the largest size used
+     */
+    public void setSupportedSizes(int[] widths, int[] heights, int maxWidth, int maxHeight) {
+        int count = Math.min(widths.length, heights.length);
+        // packed so they sort by area, largest first
+        long[] sizes = new long[count];
+        int candidates = 0;
+        for (int i = 0; i < count; i++) {
+            int width = widths[i];
+            int height = heights[i];
+            if (width < MIN_WIDTH || height <= 0 || (long) width * height > (long) maxWidth * maxHeight) {
+                continue;
+            }
+            sizes[candidates++] = ((long) width * height) << 32 | (long) width << 16 | height;
+        }
+        Arrays.sort(sizes, 0, candidates);
+
+        int[] ladderWidths = new int[MAX_TIERS];
+        int[] ladderHeights = new int[MAX_TIERS];
+        int tiers = 0;
+        if (candidates > 0) {
+            long top = sizes[candidates - 1];
+            float aspect = width(top) / (float) height(top);
+            tiers = pickTiers(sizes, candidates, aspect, ladderWidths, ladderHeights);
+            if (tiers == 1) {
+                // no smaller size of the same aspect, take any
+                tiers = pickTiers(sizes, candidates, 0, ladderWidths, ladderHeights);
+            }
+        } else {
+            ladderWidths[0] = maxWidth;
+            ladderHeights[0] = maxHeight;
+            tiers = 1;
+        }
+
+        mWidths = Arrays.copyOf(ladderWidths, tiers);
+        mHeights = Arrays.copyOf(ladderHeights, tiers);
+        mTier = Math.min(mTier, tiers - 1);
+        resetWindows();
+        Log.d(TAG, "setSupportedSizes: " + toString());
+    }
+
+    /**
+     * @param aspect only the sizes of this aspect, 0 for any
+     * @return number of tiers picked
+     */
+    private static int pickTiers(long[] sizes, int count, float aspect, int[] outWidths, int[] outHeights) {
+        int tiers = 0;
+        long lastArea = Long.MAX_VALUE;
+        for (int i = count - 1; i >= 0 && tiers < MAX_TIERS; i--) {
+            int width = width(sizes[i]);
+            int height = height(sizes[i]);
+            long area = (long) width * height;
+            if (aspect > 0 && Math.abs(width / (float) height - aspect) > ASPECT_TOLERANCE * aspect) {
+                continue;
+            }
+            if (tiers > 0 && area > lastArea * TIER_AREA_RATIO) {
+                continue;
+            }
+            outWidths[tiers] = width;
+            outHeights[tiers] = height;
+            tiers++;
+            lastArea = area;
+        }
+        return tiers;
+    }
+
+    private static int width(long size) {
+        return (int) (size >> 16 & 0xffff);
+    }
+
+    private static int height(long size) {
+        return (int) (size & 0xffff);
+    }
+
+    /**
+     * @param frameRate frame rate to sustain, e.g. the frame rate of the camera
+     */
+    public void setTargetFrameRate(float frameRate) {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("frameRate must be positive");
+        }
+        mFrameTimeMs = 1000f / frameRate;
+    }
+
+    /**
+     * Forget the camera timestamps, e.g. when the camera is started again
+     */
+    public void resetWindows() {
+        mRenderTimes.clear();
+        mTrackingTimes.clear();
+        mLastCameraTimestamp = Double.NaN;
+        mFastSince = -1;
+    }
+
+    /**
+     * Call it once per frame rendered
+     *
+     * @param nowNanos        System.nanoTime() at the end of the frame
+     * @param renderNanos     time spent rendering the frame
+     * @param cameraTimestamp timestamp in seconds of the camera frame if it's a new one, NaN if not
+     * @return the tier is changed, the camera size should be set to {@link #getWidth()} x {@link #getHeight()}
+     */
+    public boolean onFrame(long nowNanos, long renderNanos, double cameraTimestamp) {
+        mRenderTimes.add(renderNanos / 1e6f);
+        if (!Double.isNaN(cameraTimestamp)) {
+            if (!Double.isNaN(mLastCameraTimestamp)) {
+                float interval = (float) ((cameraTimestamp - mLastCameraTimestamp) * 1000);
+                if (interval > 0 && interval < MAX_TRACKING_INTERVAL_MS) {
+                    mTrackingTimes.add(interval);
+                }
+            }
+            mLastCameraTimestamp = cameraTimestamp;
+        }
+        if (mTierSince == Long.MIN_VALUE) {
+            mTierSince = nowNanos;
+        }
+        if (!mRenderTimes.isFull() || !mTrackingTimes.isFull()) {
+            return false;
+        }
+
+        float renderTime = mRenderTimes.getAverage();
+        float trackingTime = mTrackingTimes.getAverage();
+        mRenderTimeMs = renderTime;
+        mTrackingTimeMs = trackingTime;
+        if (nowNanos - mTierSince < MIN_DWELL_NANOS) {
+            return false;
+        }
+
+        int tier = mTier;
+        if (trackingTime > mFrameTimeMs * SLOW_TRACKING_RATIO || renderTime > mFrameTimeMs * SLOW_RENDER_RATIO) {
+            if (tier == mWidths.length - 1) {
+                return false;
+            }
+            if (mLastChangeUp && nowNanos - mTierSince < REVERT_NANOS) {
+                // the tier above can't be sustained, wait longer before trying it again
+                mUpgradeHold = Math.min(mUpgradeHold * 2, MAX_UPGRADE_HOLD_NANOS);
+            }
+            setTier(tier + 1, nowNanos, renderTime, trackingTime);
+            return true;
+        }
+
+        if (tier > 0 && trackingTime < mFrameTimeMs * FAST_TRACKING_RATIO
+                && renderTime < mFrameTimeMs * FAST_RENDER_RATIO) {
+            if (mFastSince < 0) {
+                mFastSince = nowNanos;
+            } else if (nowNanos - mFastSince >= mUpgradeHold) {
+                setTier(tier - 1, nowNanos, renderTime, trackingTime);
+                return true;
+            }
+        } else {
+            mFastSince = -1;
+        }
+        return false;
+    }
+
+    private void setTier(int tier, long nowNanos, float renderTime, float trackingTime) {
+        Log.d(TAG, "setTier: " + mWidths[mTier] + "x" + mHeights[mTier]
+                + " -> " + mWidths[tier] + "x" + mHeights[tier]
+                + ", render " + renderTime + "ms, tracking " + trackingTime + "ms");
+        mLastChangeUp = tier < mTier;
+        if (!mLastChangeUp && nowNanos - mTierSince >= REVERT_NANOS) {
+            // settled on this tier long enough, the tier above may be tried sooner
+            mUpgradeHold = MIN_UPGRADE_HOLD_NANOS;
+        }
+        mTier = tier;
+        mTierSince = nowNanos;
+        mChangeCount++;
+        resetWindows();
+    }
+
+    /**
+     * @return current tier, 0 is the largest size
+     */
+    public int getTier() {
+        return mTier;
+    }
+
+    public int getTierCount() {
+        return mWidths.length;
+    }
+
+    /**
+     * @return camera width of the current tier
+     */
+    public int getWidth() {
+        return mWidths[mTier];
+    }
+
+    /**
+     * @return camera height of the current tier
+     */
+    public int getHeight() {
+        return mHeights[mTier];
+    }
+
+    /**
+     * @return camera width of the last tier, the smallest size
+     */
+    public int getLowestWidth() {
+        int[] widths = mWidths;
+        return widths[widths.length - 1];
+    }
+
+    /**
+     * @return camera height of the last tier, the smallest size
+     */
+    public int getLowestHeight() {
+        int[] heights = mHeights;
+        return heights[heights.length - 1];
+    }
+
+    /**
+     * @return average render time of the last full window, in milliseconds
+     */
+    public float getRenderTime() {
+        return mRenderTimeMs;
+    }
+
+    /**
+     * @return average interval between camera frames of the last full window, in milliseconds
+     */
+    public float getTrackingTime() {
+        return mTrackingTimeMs;
+    }
+
+    public int getChangeCount() {
+        return mChangeCount;
+    }
+
+    @Override
+    public String toString() {
+        int[] widths = mWidths;
+        int[] heights = mHeights;
+        StringBuilder ladder = new StringBuilder();
+        for (int i = 0; i < widths.length; i++) {
+            ladder.append(i > 0 ? ", " : "").append(widths[i]).append('x').append(heights[i]);
+        }
+        return "QualityGovernor{tier=" + mTier + " of [" + ladder + "]"
+                + ", render=" + mRenderTimeMs + "ms"
+                + ", tracking=" + mTrackingTimeMs + "ms"
+                + ", changes=" + mChangeCount + "}";
+    }
+
+    /**
+     * Average of the last samples in a ring, nothing is allocated when adding
+     */
+    private static class RollingAverage {
+
+        private final float[] mSamples;
+
+        private int mNext;
+
+        private int mCount;
+
+        private float mSum;
+
+        RollingAverage(int size) {
+            mSamples = new float[size];
+        }
+
+        void add(float sample) {
+            if (mCount == mSamples.length) {
+                mSum -= mSamples[mNext];
+            } else {
+                mCount++;
+            }
+            mSamples[mNext] = sample;
+            mSum += sample;
+            mNext = (mNext + 1) % mSamples.length;
+        }
+
+        boolean isFull() {
+            return mCount == mSamples.length;
+        }
+
+        float getAverage() {
+            return mCount > 0 ? mSum / mCount : 0;
+        }
+
+        void clear() {
+            mNext = 0;
+            mCount = 0;
+            mSum = 0;
+        }
+    }
+}
@@ -2,74 +2,534 @@ package com.perficient.meetingschedulear.util;
 
 import android.content.Context;
 import android.graphics.*;
+import android.opengl.ETC1;
+import android.opengl.ETC1Util;
 import android.opengl.GLES20;
 import android.opengl.GLUtils;
+import android.os.Build;
+import android.util.Log;
 
 import com.perficient.meetingschedulear.BaseApplication;
 import com.perficient.meetingschedulear.model.MeetingRoomInfo;
+import com.perficient.meetingschedulear.renderer.TextureLod;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.List;
 
 public class TextureHelper {
 
+    private static final String TAG = TextureHelper.class.getSimpleName();
+
+    /**
+     * The title is drawn at 40% of the bitmap height, and each line is below the previous one
+     */
+    private static final float TITLE_Y_RATIO = 0.4f;
+    private static final int LINE_SPACING = 50;
+    /**
+     * Extra pixels around a line for the text shadow
+     */
+    private static final int SHADOW_PADDING = 2;
+
+    /**
+     * Backgrounds pre-encoded into ETC1 by the build, in assets/backgrounds/[drawable name].pkm
+     */
+    private static final String BACKGROUND_ASSET_DIR = "backgrounds";
+    private static final String BACKGROUND_ASSET_SUFFIX = ".pkm";
+
+    /**
+     * Max height of a scrolling text layer, the lines beyond it are dropped
+     */
+    private static final int MAX_TEXTURE_HEIGHT = 2048;
+
+    /**
+     * Scroll window of a board which is not scrolling, see {@link #composeTextLayer}.
+     * Shared by all the static boards, don't modify it.
+     */
+    public static final float[] SCROLL_NONE = {1f, 1f, 0f, 1f};
+
+    /**
+     * Bitmaps are taken from the pool for decoding and drawing, and returned after upload
+     */
+    private static final BitmapPool BITMAP_POOL = new BitmapPool();
+
+    public static BitmapPool getBitmapPool() {
+        return BITMAP_POOL;
+    }
+
+    /**
+     * Return a bitmap which is no longer used to the pool, instead of recycling it
+     */
+    public static void releaseBitmap(Bitmap bitmap) {
+        BITMAP_POOL.put(bitmap);
+    }
+
     public static int loadTexture(final Context context, final int resourceId, MeetingRoomInfo meetingRoomInfo) {
-        final int[] textureHandle = new int[1];
+        return loadTexture(context, resourceId, meetingRoomInfo, null);
+    }
 
-        GLES20.glGenTextures(1, textureHandle, 0);
+    /**
+     * @param outSize if not null, the width and height of the uploaded texture will be written into it
+     */
+    public static int loadTexture(final Context context, final int resourceId,
+                                  MeetingRoomInfo meetingRoomInfo, int[] outSize) {
+        return uploadTexture(composeBitmap(context, resourceId, meetingRoomInfo), outSize);
+    }
 
-        if (textureHandle[0] != 0) {
-            final BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inScaled = false;    // No pre-scaling
+    /**
+     * Decode the background and draw the meeting info on it.
+     * It doesn't touch OpenGL, so it can be called from any thread.
+     */
+    public static Bitmap composeBitmap(final Context context, final int resourceId, MeetingRoomInfo meetingRoomInfo) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;    // No pre-scaling
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
 
-            // Read in the resource
-            Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+        // Read in the resource, it's mutable so the text is drawn on it without a copy
+        Bitmap bitmap = decodePooled(context, resourceId, options);
 
-            if (meetingRoomInfo != null) {
-                ArrayList<String> textList = new ArrayList<>();
-                textList.add(meetingRoomInfo.getRoomName()); // add room name as title
+        if (meetingRoomInfo != null) {
+            bitmap = drawText(bitmap, toLines(meetingRoomInfo));
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return width and height of the background, the pixels are not decoded
+     */
+    public static int[] getBackgroundSize(final Context context, final int resourceId) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;    // No pre-scaling
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+        return new int[]{options.outWidth, options.outHeight};
+    }
+
+    /**
+     * Read the ETC1 background pre-encoded by the build, it can be called from any thread.
+     *
+     * @param level resolution level, each level halves the size, see
+     *              {@link com.perficient.meetingschedulear.renderer.TextureLod}
+     * @return null if there is no such asset, then {@link #decodeBackground(Context, int, int)} should be used
+     */
+    public static ETC1Util.ETC1Texture loadCompressedBackground(final Context context, final int resourceId, int level) {
+        String path = BACKGROUND_ASSET_DIR + "/" + context.getResources().getResourceEntryName(resourceId)
+                + (level > 0 ? "_" + level : "") + BACKGROUND_ASSET_SUFFIX;
+        InputStream inputStream = null;
+        try {
+            inputStream = context.getAssets().open(path);
+            return ETC1Util.createTexture(inputStream);
+        } catch (IOException e) {
+            Log.w(TAG, "loadCompressedBackground: no compressed background " + path);
+            return null;
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode the background as RGB565, which is half the size of ARGB_8888, the background is opaque.
+     * It doesn't touch OpenGL, so it can be called from any thread.
+     *
+     * @param level resolution level, the background is subsampled by 2 for each level
+     */
+    public static Bitmap decodeBackground(final Context context, final int resourceId, int level) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;    // No pre-scaling
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inSampleSize = 1 << level;
+        return decodePooled(context, resourceId, options);
+    }
+
+    /**
+     * Decode a mutable bitmap into a bitmap of the same size from the pool, if there is one.
+     */
+    private static Bitmap decodePooled(final Context context, final int resourceId, BitmapFactory.Options options) {
+        options.inMutable = true;
+        // inBitmap only works with the same size before KitKat
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT || options.inSampleSize <= 1) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+            options.inJustDecodeBounds = false;
+            options.inBitmap = BITMAP_POOL.getForDecode(options.outWidth, options.outHeight, options.inPreferredConfig);
+        }
+        try {
+            return BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            // the pooled bitmap can't be reused by this decoder, it's dropped rather than returned
+            // to the pool, where the next decode of this size would get it again
+            Log.w(TAG, "decodePooled: failed to reuse bitmap", e);
+            options.inBitmap = null;
+            return BitmapFactory.decodeResource(context.getResources(), resourceId, options);
+        }
+    }
+
+    /**
+     * Draw the meeting info into an ALPHA_8 layer of the background size, which is blended on
+     * the background by the shader. If the meetings don't fit the board, a tall layer is composed:
+     * the title on top, followed by the whole meeting list, which is scrolled by the fragment
+     * shader in a loop.
+     * It doesn't touch OpenGL, so it can be called from any thread.
+     *
+     * @param outScroll if not null, the scroll window of the layer will be written into it:
+     *                  height of the fixed header on the board, height of the header in the layer,
+     *                  height of the meeting list in the layer, and the visible part of the list,
+     *                  all normalized to [0, 1]. It's {@link #SCROLL_NONE} if the board is not scrolling.
+     * @param level     resolution level, the layer is drawn at full resolution layout and scaled
+     *                  down by 2 for each level
+     */
+    public static Bitmap composeTextLayer(final Context context, final int resourceId,
+                                          MeetingRoomInfo meetingRoomInfo, float[] outScroll, int level) {
+        int[] size = getBackgroundSize(context, resourceId);
+        int width = size[0];
+        int height = size[1];
+
+        if (outScroll != null) {
+            System.arraycopy(SCROLL_NONE, 0, outScroll, 0, SCROLL_NONE.length);
+        }
+        List<String> lines = toLines(meetingRoomInfo);
+        Paint paint = createTextPaint();
+        if (!fitsBoard(height, lines.size(), paint)) {
+            return drawScrollingText(width, height, lines, paint, outScroll, level);
+        }
+
+        Bitmap bitmap = BITMAP_POOL.get(
+                TextureLod.scale(width, level), TextureLod.scale(height, level), Bitmap.Config.ALPHA_8);
+        Canvas canvas = createCanvas(bitmap, level);
+        for (int i = 0; i < lines.size(); i++) {
+            drawLine(canvas, paint, lines.get(i), width, getBaseline(height, i));
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return true if the scroll window is not {@link #SCROLL_NONE}
+     */
+    public static boolean isScrolling(float[] scroll) {
+        return scroll != null && scroll[0] < 1f;
+    }
+
+    /**
+     * @return the lines drawn on the board, room name as title then all the meetings
+     */
+    public static ArrayList<String> toLines(MeetingRoomInfo meetingRoomInfo) {
+        ArrayList<String> textList = new ArrayList<>();
+        if (meetingRoomInfo != null) {
+            textList.add(meetingRoomInfo.getRoomName()); // add room name as title
+            if (meetingRoomInfo.getMeetings() != null) {
                 textList.addAll(meetingRoomInfo.getMeetings()); // add all the meeting items
-                bitmap = drawText(bitmap, textList);
             }
+        }
+        return textList;
+    }
+
+    /**
+     * Compare the lines of the old and new text
+     *
+     * @return indices of the lines which are different, including lines added or removed
+     */
+    public static int[] diffLines(List<String> oldLines, List<String> newLines) {
+        int count = Math.max(oldLines.size(), newLines.size());
+        int[] changed = new int[count];
+        int changedCount = 0;
+        for (int i = 0; i < count; i++) {
+            String oldLine = i < oldLines.size() ? oldLines.get(i) : null;
+            String newLine = i < newLines.size() ? newLines.get(i) : null;
+            if (oldLine == null ? newLine != null : !oldLine.equals(newLine)) {
+                changed[changedCount++] = i;
+            }
+        }
+        int[] result = new int[changedCount];
+        System.arraycopy(changed, 0, result, 0, changedCount);
+        return result;
+    }
+
+    /**
+     * Redraw only the changed lines of a text layer, all the lines touching the rows
+     * of the changed lines are drawn again.
+     * It doesn't touch OpenGL, so it can be called from any thread.
+     *
+     * @param lines        all the lines of the new text
+     * @param changedLines indices of the lines changed, in ascending order
+     * @param level        resolution level of the text layer to be updated
+     * @return the strips to be uploaded with {@link #updateTexture(int, Strip[])},
+     * or null if the lines don't fit the board
+     */
+    public static Strip[] composeStrips(final Context context, final int resourceId,
+                                        List<String> lines, int[] changedLines, int level) {
+        int[] size = getBackgroundSize(context, resourceId);
+        int width = size[0];
+        int height = size[1];
+
+        Paint paint = createTextPaint();
+        Paint.FontMetrics fontMetrics = paint.getFontMetrics();
+        if (!fitsBoard(height, lines.size(), paint)) {
+            // the board needs scrolling now, compose it as a whole
+            return null;
+        }
+
+        // merge the rows of the changed lines, since the rows may overlap with each other
+        int[] tops = new int[changedLines.length];
+        int[] bottoms = new int[changedLines.length];
+        int stripCount = 0;
+        for (int line : changedLines) {
+            float baseline = getBaseline(height, line);
+            // rows of the layer at this level
+            int top = Math.max(0, (int) Math.floor(baseline + fontMetrics.top) - SHADOW_PADDING) >> level;
+            int bottom = TextureLod.scale(
+                    Math.min(height, (int) Math.ceil(baseline + fontMetrics.bottom) + SHADOW_PADDING), level);
+            if (top >= bottom) {
+                // below the board
+                continue;
+            }
+            if (stripCount > 0 && top <= bottoms[stripCount - 1]) {
+                bottoms[stripCount - 1] = Math.max(bottom, bottoms[stripCount - 1]);
+            } else {
+                tops[stripCount] = top;
+                bottoms[stripCount] = bottom;
+                stripCount++;
+            }
+        }
 
+        Strip[] strips = new Strip[stripCount];
+        for (int i = 0; i < stripCount; i++) {
+            Bitmap strip = BITMAP_POOL.get(
+                    TextureLod.scale(width, level), bottoms[i] - tops[i], Bitmap.Config.ALPHA_8);
+
+            // draw all the lines touching this strip, the canvas clips the rest
+            Canvas canvas = createCanvas(strip, level);
+            int top = tops[i] << level;
+            int bottom = bottoms[i] << level;
+            canvas.translate(0, -top);
+            for (int line = 0; line < lines.size(); line++) {
+                float baseline = getBaseline(height, line);
+                if (baseline + fontMetrics.bottom + SHADOW_PADDING >= top
+                        && baseline + fontMetrics.top - SHADOW_PADDING <= bottom) {
+                    drawLine(canvas, paint, lines.get(line), width, baseline);
+                }
+            }
+            strips[i] = new Strip(tops[i], strip);
+        }
+        return strips;
+    }
+
+    /**
+     * Upload the strips into the existing texture with glTexSubImage2D and return them to the pool,
+     * must be called on the GL thread.
+     */
+    public static void updateTexture(int texture, Strip[] strips) {
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture);
+        // rows of an ALPHA_8 bitmap are not aligned to 4 bytes
+        GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
+        for (Strip strip : strips) {
+            GLUtils.texSubImage2D(GLES20.GL_TEXTURE_2D, 0, 0, strip.getY(), strip.getBitmap());
+            releaseBitmap(strip.getBitmap());
+        }
+    }
+
+    /**
+     * Upload the bitmap into a new texture and return it to the pool, must be called on the GL thread.
+     *
+     * @param outSize if not null, the width and height of the uploaded texture will be written into it
+     */
+    public static int uploadTexture(Bitmap bitmap, int[] outSize) {
+        final int[] textureHandle = new int[1];
+
+        GLES20.glGenTextures(1, textureHandle, 0);
+
+        if (textureHandle[0] != 0) {
             // Bind to the texture in OpenGL
             GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
 
             // Set filtering
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);// GL_NEAREST make the low resolution texture more clear on a large object
-            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+            // the level is picked by the size on screen, so the texture is never shrunk much more than 2x
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+            GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);// GL_NEAREST make the low resolution texture more clear on a large object
 
             GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);// stretched edge pattern
             GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
 
-            // Load the bitmap into the bound texture.
+            // Load the bitmap into the bound texture, rows of an ALPHA_8 bitmap are not aligned to 4 bytes
+            GLES20.glPixelStorei(GLES20.GL_UNPACK_ALIGNMENT, 1);
             GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
 
-            // Recycle the bitmap, since its data has been loaded into OpenGL.
-            bitmap.recycle();
+            if (outSize != null) {
+                outSize[0] = bitmap.getWidth();
+                outSize[1] = bitmap.getHeight();
+            }
+        }
+
+        // Reuse the bitmap, since its data has been loaded into OpenGL.
+        releaseBitmap(bitmap);
+
+        if (textureHandle[0] == 0) {
+            throw new RuntimeException("Error loading texture.");
         }
 
+        return textureHandle[0];
+    }
+
+    /**
+     * Upload the ETC1 background with glCompressedTexImage2D, it stays compressed on GPU,
+     * must be called on the GL thread with ETC1 supported.
+     */
+    public static int uploadCompressedTexture(ETC1Util.ETC1Texture texture) {
+        final int[] textureHandle = new int[1];
+
+        GLES20.glGenTextures(1, textureHandle, 0);
+
         if (textureHandle[0] == 0) {
             throw new RuntimeException("Error loading texture.");
         }
 
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        ByteBuffer data = texture.getData();
+        GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, 0, ETC1.ETC1_RGB8_OES,
+                texture.getWidth(), texture.getHeight(), 0, data.remaining(), data);
+
         return textureHandle[0];
     }
 
-    private static Bitmap drawText(Bitmap bitmap, ArrayList<String> text) {
-        float scale = BaseApplication.getResourcesObject().getDisplayMetrics().density;
+    /**
+     * Create a 1 x 1 texture of the given color, must be called on the GL thread.
+     */
+    public static int createSolidTexture(int color) {
+        final int[] textureHandle = new int[1];
 
-        float titleY = bitmap.getHeight() * 0.4f;
+        GLES20.glGenTextures(1, textureHandle, 0);
 
-        Bitmap.Config bitmapConfig = bitmap.getConfig();
-        // set default bitmap config if none
-        if (bitmapConfig == null) {
-            bitmapConfig = android.graphics.Bitmap.Config.ARGB_8888;
+        if (textureHandle[0] == 0) {
+            throw new RuntimeException("Error loading texture.");
         }
-        // resource bitmaps are immutable,
-        // so we need to convert it to mutable one
-        bitmap = bitmap.copy(bitmapConfig, true);
 
+        ByteBuffer pixel = ByteBuffer.allocateDirect(4);
+        pixel.put((byte) Color.red(color))
+                .put((byte) Color.green(color))
+                .put((byte) Color.blue(color))
+                .put((byte) Color.alpha(color))
+                .position(0);
+
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
+        GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, 1, 1, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixel);
+
+        return textureHandle[0];
+    }
+
+    /**
+     * @param bitmap a mutable bitmap, the text is drawn on it
+     */
+    private static Bitmap drawText(Bitmap bitmap, List<String> text) {
         Canvas canvas = new Canvas(bitmap);
+        Paint paint = createTextPaint();
+
+        // draw each line
+        for (int i = 0; i < text.size(); i++) {
+            drawLine(canvas, paint, text.get(i), bitmap.getWidth(), getBaseline(bitmap.getHeight(), i));
+        }
+
+        // return this bitmap that has text drawn
+        return bitmap;
+    }
+
+    /**
+     * Draw the title on the top of the layer, then all the meetings in a list which is
+     * seamless when scrolled in a loop.
+     */
+    private static Bitmap drawScrollingText(int width, int height, List<String> lines, Paint paint,
+                                            float[] outScroll, int level) {
+        Paint.FontMetrics fontMetrics = paint.getFontMetrics();
+
+        // the header keeps the title, it's the same as the static board
+        int header = Math.min(height - 1,
+                (int) Math.ceil(getBaseline(height, 0) + fontMetrics.bottom) + SHADOW_PADDING);
+        int lineCount = lines.size() - 1;
+        if (header + lineCount * LINE_SPACING > MAX_TEXTURE_HEIGHT) {
+            Log.w(TAG, "drawScrollingText: too many lines, drop "
+                    + (lineCount - (MAX_TEXTURE_HEIGHT - header) / LINE_SPACING));
+            lineCount = (MAX_TEXTURE_HEIGHT - header) / LINE_SPACING;
+        }
+        int listHeight = lineCount * LINE_SPACING;
+
+        int layerHeight = header + listHeight;
+        Bitmap bitmap = BITMAP_POOL.get(
+                TextureLod.scale(width, level), TextureLod.scale(layerHeight, level), Bitmap.Config.ALPHA_8);
+        Canvas canvas = createCanvas(bitmap, level);
+
+        canvas.save();
+        canvas.clipRect(0, 0, width, header);
+        drawLine(canvas, paint, lines.get(0), width, getBaseline(height, 0));
+        canvas.restore();
+
+        // the list starts where the first meeting is on the static board
+        canvas.save();
+        canvas.clipRect(0, header, width, header + listHeight);
+        canvas.translate(0, header);
+        float firstBaseline = getBaseline(height, 1) - header;
+        for (int i = 0; i < lineCount; i++) {
+            String line = lines.get(i + 1);
+            float y = firstBaseline + i * LINE_SPACING;
+            drawLine(canvas, paint, line, width, y);
+            // the glyphs crossing the end of the list are drawn again on the other end
+            if (y + fontMetrics.top - SHADOW_PADDING < 0) {
+                drawLine(canvas, paint, line, width, y + listHeight);
+            }
+            if (y + fontMetrics.bottom + SHADOW_PADDING > listHeight) {
+                drawLine(canvas, paint, line, width, y - listHeight);
+            }
+        }
+        canvas.restore();
+
+        if (outScroll != null) {
+            outScroll[0] = (float) header / height;
+            outScroll[1] = (float) header / layerHeight;
+            outScroll[2] = (float) listHeight / layerHeight;
+            outScroll[3] = Math.min(1f, (float) (height - header) / listHeight);
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return true if all the lines can be drawn on the board without scrolling
+     */
+    private static boolean fitsBoard(int bitmapHeight, int lineCount, Paint paint) {
+        return lineCount <= 1
+                || getBaseline(bitmapHeight, lineCount - 1) + paint.getFontMetrics().bottom <= bitmapHeight;
+    }
+
+    /**
+     * The text is always laid out at full resolution, the canvas scales it down to the level
+     */
+    private static Canvas createCanvas(Bitmap bitmap, int level) {
+        Canvas canvas = new Canvas(bitmap);
+        if (level > 0) {
+            float scale = 1f / (1 << level);
+            canvas.scale(scale, scale);
+        }
+        return canvas;
+    }
+
+    private static Paint createTextPaint() {
+        float scale = BaseApplication.getResourcesObject().getDisplayMetrics().density;
+
         // new anti-aliased Paint
         Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         // text color - white
@@ -78,20 +538,40 @@ public class TextureHelper {
         paint.setTextSize((int) (14 * scale));
         // text shadow
         paint.setShadowLayer(1f, 0f, 1f, Color.WHITE);
+        return paint;
+    }
 
-        // draw each line
-        float x = 0;
-        float y = 0;
-        for (int i = 0; i < text.size(); i++) {
-            String oneLine = text.get(i);
-            Rect bounds = new Rect();
-            paint.getTextBounds(oneLine, 0, oneLine.length(), bounds);
-            x = (bitmap.getWidth() - bounds.width()) / 2;
-            y = titleY + i * 50;
-            canvas.drawText(oneLine, x, y, paint);
+    private static float getBaseline(int bitmapHeight, int line) {
+        return bitmapHeight * TITLE_Y_RATIO + line * LINE_SPACING;
+    }
+
+    private static void drawLine(Canvas canvas, Paint paint, String oneLine, int bitmapWidth, float y) {
+        Rect bounds = new Rect();
+        paint.getTextBounds(oneLine, 0, oneLine.length(), bounds);
+        float x = (bitmapWidth - bounds.width()) / 2;
+        canvas.drawText(oneLine, x, y, paint);
+    }
+
+    /**
+     * Rows of a text layer redrawn for the changed lines
+     */
+    public static class Strip {
+
+        private final int mY;
+
+        private final Bitmap mBitmap;
+
+        Strip(int y, Bitmap bitmap) {
+            mY = y;
+            mBitmap = bitmap;
         }
 
-        // return this bitmap that has text drawn
-        return bitmap;
+        public int getY() {
+            return mY;
+        }
+
+        public Bitmap getBitmap() {
+            return mBitmap;
+        }
     }
-}
\ No newline at end of file
+}
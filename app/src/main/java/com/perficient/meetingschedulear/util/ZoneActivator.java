@@ -0,0 +1,249 @@
+package com.perficient.meetingschedulear.util;
+
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Picks the zones whose trackers run, so the tracking cost doesn't grow with the number of zones.
+ * <p>
+ * The current zone is the zone of the target found last. It's active along with its neighbours,
+ * where the user may walk to next. While no target is seen for a while, or the current zone is not
+ * known yet, a few of the other zones are scanned in turn, so the user is found again in any zone.
+ * A catalog of a few zones is not scanned while the current zone is not known, all of them are active.
+ * <p>
+ * Must be accessed on the GL thread only, the getters for diagnostics can be called on any thread.
+ */
+public class ZoneActivator {
+
+    private static final String TAG = ZoneActivator.class.getSimpleName();
+
+    private static final int DEFAULT_SCAN_ZONES = 1;
+
+    /**
+     * All the zones of a catalog up to this size are active until the current zone is known
+     */
+    private static final int MAX_ALL_ACTIVE_ZONES = 4;
+
+    /**
+     * Time without a target before the other zones are scanned
+     */
+    private static final long SCAN_DELAY_NANOS = 2000000000L;
+
+    private static final long DEFAULT_SCAN_INTERVAL_NANOS = 1000000000L;
+
+    private final ZoneCatalog mCatalog;
+
+    private final boolean[] mActive;
+
+    private final boolean[] mNext;
+
+    private volatile int mCurrentZone = -1;
+
+    private volatile int mActiveCount;
+
+    private int mScanZones = DEFAULT_SCAN_ZONES;
+
+    private long mScanIntervalNanos = DEFAULT_SCAN_INTERVAL_NANOS;
+
+    private boolean mScanning;
+
+    /**
+     * First and last zones scanned now, the scan goes on after the last one
+     */
+    private int mScanStart = -1;
+    private int mScanEnd = -1;
+
+    private long mNextScanNanos;
+
+    private long mLastSeenNanos;
+
+    private boolean mStarted;
+
+    private volatile int mSwitchCount;
+
+    public ZoneActivator(ZoneCatalog catalog) {
+        mCatalog = catalog;
+        mActive = new boolean[catalog.getZoneCount()];
+        mNext = new boolean[catalog.getZoneCount()];
+    }
+
+    /**
+     * @param zones           zones scanned at once besides the current zone and its neighbours
+     * @param intervalSeconds time each zone is scanned for
+     */
+    public void setScan(int zones, float intervalSeconds) {
+        if (zones < 1 || intervalSeconds <= 0) {
+            throw new IllegalArgumentException("zones and interval must be positive");
+        }
+        mScanZones = zones;
+        mScanIntervalNanos = (long) (intervalSeconds * 1e9);
+    }
+
+    /**
+     * Start in this zone, e.g. the zone of the last session
+     *
+     * @return the zone is known
+     */
+    public boolean setCurrentZone(String name) {
+        int zone = mCatalog.getZone(name);
+        if (zone < 0) {
+            return false;
+        }
+        mCurrentZone = zone;
+        mScanning = false;
+        updateActive();
+        return true;
+    }
+
+    /**
+     * Start over from now, e.g. when the camera is started again. The current zone is kept.
+     */
+    public void reset(long nowNanos) {
+        mLastSeenNanos = nowNanos;
+        mNextScanNanos = nowNanos;
+        mScanning = false;
+        mStarted = true;
+        updateActive();
+    }
+
+    /**
+     * Call it once per frame rendered
+     *
+     * @param nowNanos    System.nanoTime() of the frame
+     * @param targetSeen  a target is tracked in the frame
+     * @param lastFound   name of the target found last, null if none
+     * @return the active zones are changed
+     */
+    public boolean update(long nowNanos, boolean targetSeen, String lastFound) {
+        if (!mStarted) {
+            reset(nowNanos);
+        }
+        boolean changed = false;
+        int zone = lastFound != null ? mCatalog.getZoneOf(lastFound) : -1;
+        if (zone >= 0 && zone != mCurrentZone) {
+            Log.d(TAG, "update: " + (mCurrentZone >= 0 ? mCatalog.getName(mCurrentZone) : "unknown")
+                    + " -> " + mCatalog.getName(zone) + ", " + lastFound + " found");
+            mCurrentZone = zone;
+            mSwitchCount++;
+            changed = true;
+        }
+        if (targetSeen) {
+            mLastSeenNanos = nowNanos;
+        }
+
+        boolean scan = mCurrentZone < 0 ? !isAllActive() : nowNanos - mLastSeenNanos >= SCAN_DELAY_NANOS;
+        if (scan && nowNanos >= mNextScanNanos) {
+            // on to the zones after the ones scanned so far
+            mScanning = true;
+            mNextScanNanos = nowNanos + mScanIntervalNanos;
+            mScanStart = nextInactive(mScanEnd);
+            mScanEnd = mScanStart;
+            for (int i = 1; i < mScanZones; i++) {
+                mScanEnd = nextInactive(mScanEnd);
+            }
+            changed = true;
+        } else if (!scan && mScanning) {
+            mScanning = false;
+            changed = true;
+        }
+        // the active zones are only worked out again when something changed, not on every frame
+        return changed && updateActive();
+    }
+
+    /**
+     * @return the first zone after this one which is not the current zone or a neighbour of it
+     */
+    private int nextInactive(int zone) {
+        int count = mActive.length;
+        for (int i = 1; i <= count; i++) {
+            int next = (zone + i + count) % count;
+            if (!isNearCurrent(next)) {
+                return next;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return all the zones are active, the catalog is small and the current zone is not known
+     */
+    private boolean isAllActive() {
+        return mCurrentZone < 0 && mActive.length <= MAX_ALL_ACTIVE_ZONES;
+    }
+
+    private boolean isNearCurrent(int zone) {
+        int current = mCurrentZone;
+        return current >= 0 && (zone == current || mCatalog.getNeighbours(current).contains(zone));
+    }
+
+    /**
+     * @return the active zones are changed
+     */
+    private boolean updateActive() {
+        boolean[] next = mNext;
+        Arrays.fill(next, isAllActive());
+        int current = mCurrentZone;
+        if (current >= 0) {
+            next[current] = true;
+            List<Integer> neighbours = mCatalog.getNeighbours(current);
+            for (int i = 0; i < neighbours.size(); i++) {
+                next[neighbours.get(i)] = true;
+            }
+        }
+        if (mScanning && mScanStart >= 0) {
+            int zone = mScanStart;
+            for (int i = 0; i < mScanZones; i++) {
+                next[zone] = true;
+                zone = nextInactive(zone);
+            }
+        }
+        if (Arrays.equals(next, mActive)) {
+            return false;
+        }
+        int activeCount = 0;
+        for (int i = 0; i < next.length; i++) {
+            mActive[i] = next[i];
+            if (next[i]) {
+                activeCount++;
+            }
+        }
+        mActiveCount = activeCount;
+        return true;
+    }
+
+    /**
+     * @return the tracker of the zone should run
+     */
+    public boolean isActive(int zone) {
+        return mActive[zone];
+    }
+
+    /**
+     * @return index of the current zone, -1 if it's not known yet
+     */
+    public int getCurrentZone() {
+        return mCurrentZone;
+    }
+
+    public int getActiveCount() {
+        return mActiveCount;
+    }
+
+    /**
+     * @return times the current zone is changed by a target found
+     */
+    public int getSwitchCount() {
+        return mSwitchCount;
+    }
+
+    @Override
+    public String toString() {
+        int current = mCurrentZone;
+        return "ZoneActivator{current=" + (current >= 0 ? mCatalog.getName(current) : "unknown")
+                + ", active=" + mActiveCount + " of " + mActive.length
+                + ", switches=" + mSwitchCount + "}";
+    }
+}
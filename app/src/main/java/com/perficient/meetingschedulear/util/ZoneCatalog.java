@@ -0,0 +1,138 @@
+package com.perficient.meetingschedulear.util;
+
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The targets grouped into zones, e.g. a floor or a wing, each zone is tracked by its own tracker.
+ * Two zones are neighbours when one can walk from one to the other, the links go both ways.
+ * <p>
+ * It's read from a json file like:
+ * <pre>
+ * {
+ *   "zones" : [
+ *     {"name" : "floor1", "targets" : ["sp0", "sp1"], "neighbours" : ["floor2"]},
+ *     {"name" : "floor2", "targets" : ["whale"], "neighbours" : ["floor1"]}
+ *   ]
+ * }
+ * </pre>
+ * The target names are the ones of the target json file. Not modified once it's read, so it can be
+ * read on any thread.
+ */
+public class ZoneCatalog {
+
+    private final List<String> mNames = new ArrayList<>();
+
+    private final List<List<String>> mTargets = new ArrayList<>();
+
+    private final List<List<Integer>> mNeighbours = new ArrayList<>();
+
+    private final Map<String, Integer> mZonesByName = new HashMap<>();
+
+    private final Map<String, Integer> mZonesByTarget = new HashMap<>();
+
+    public static ZoneCatalog fromJson(String json) throws JSONException {
+        ZoneCatalog catalog = new ZoneCatalog();
+        JSONArray zones = new JSONObject(json).getJSONArray("zones");
+        for (int i = 0; i < zones.length(); i++) {
+            JSONObject zone = zones.getJSONObject(i);
+            JSONArray targets = zone.getJSONArray("targets");
+            List<String> names = new ArrayList<>();
+            for (int j = 0; j < targets.length(); j++) {
+                names.add(targets.getString(j));
+            }
+            catalog.addZone(zone.getString("name"), names);
+        }
+        // the neighbours may be listed before they are added
+        for (int i = 0; i < zones.length(); i++) {
+            JSONObject zone = zones.getJSONObject(i);
+            JSONArray neighbours = zone.optJSONArray("neighbours");
+            for (int j = 0; neighbours != null && j < neighbours.length(); j++) {
+                catalog.addNeighbours(zone.getString("name"), neighbours.getString(j));
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * @return index of the zone
+     */
+    public int addZone(String name, List<String> targets) {
+        if (mZonesByName.containsKey(name)) {
+            throw new IllegalArgumentException("duplicate zone " + name);
+        }
+        int zone = mNames.size();
+        for (String target : targets) {
+            if (mZonesByTarget.containsKey(target)) {
+                throw new IllegalArgumentException("target " + target + " is in two zones");
+            }
+            mZonesByTarget.put(target, zone);
+        }
+        mNames.add(name);
+        mTargets.add(Collections.unmodifiableList(new ArrayList<>(targets)));
+        mNeighbours.add(new ArrayList<Integer>());
+        mZonesByName.put(name, zone);
+        return zone;
+    }
+
+    /**
+     * Link the two zones both ways
+     */
+    public void addNeighbours(String zone, String neighbour) {
+        int a = getZone(zone);
+        int b = getZone(neighbour);
+        if (a < 0 || b < 0) {
+            throw new IllegalArgumentException("unknown zone " + (a < 0 ? zone : neighbour));
+        }
+        if (a == b || mNeighbours.get(a).contains(b)) {
+            return;
+        }
+        mNeighbours.get(a).add(b);
+        mNeighbours.get(b).add(a);
+    }
+
+    public int getZoneCount() {
+        return mNames.size();
+    }
+
+    public String getName(int zone) {
+        return mNames.get(zone);
+    }
+
+    /**
+     * @return index of the zone of this name, -1 if there is none
+     */
+    public int getZone(String name) {
+        Integer zone = mZonesByName.get(name);
+        return zone != null ? zone : -1;
+    }
+
+    /**
+     * @return index of the zone the target is in, -1 if it's in none
+     */
+    public int getZoneOf(String target) {
+        Integer zone = mZonesByTarget.get(target);
+        return zone != null ? zone : -1;
+    }
+
+    public List<String> getTargets(int zone) {
+        return mTargets.get(zone);
+    }
+
+    public List<Integer> getNeighbours(int zone) {
+        return Collections.unmodifiableList(mNeighbours.get(zone));
+    }
+
+    @Override
+    public String toString() {
+        return "ZoneCatalog{zones=" + mNames + ", targets=" + mZonesByTarget.size() + "}";
+    }
+}
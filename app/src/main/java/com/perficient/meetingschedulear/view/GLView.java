@@ -1,9 +1,18 @@
 package com.perficient.meetingschedulear.view;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
+import android.util.Log;
 
+import com.perficient.meetingschedulear.task.SnapshotSaver;
+import com.perficient.meetingschedulear.util.ARLifecycle;
 import com.perficient.meetingschedulear.util.ARManager;
+import com.perficient.meetingschedulear.util.MotionDetector;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
@@ -17,10 +26,51 @@ public class GLView extends GLSurfaceView {
 
     private static final String TAG = GLView.class.getSimpleName();
 
+    /**
+     * Max time to wait for the GL thread to release the GL objects on detach
+     */
+    private static final long RELEASE_TIMEOUT_MS = 500;
+
     private Context mContext;
 
     private final ARManager mARManager;
 
+    /**
+     * Runs the camera and the GL work of the manager on the GL thread, without locks
+     */
+    private final ARLifecycle mLifecycle;
+
+    /**
+     * Wakes the GL thread to run the lifecycle commands, even when it's not drawing
+     */
+    private final Runnable mDrainCommands = new Runnable() {
+        @Override
+        public void run() {
+            mLifecycle.drain();
+        }
+    };
+
+    private final RenderScheduler mRenderScheduler;
+
+    /**
+     * Wakes the manager from idle when the device is moved
+     */
+    private final MotionDetector mMotionDetector;
+
+    /**
+     * Uptime when the view was resumed, 0 once the first frame after it is drawn
+     */
+    private volatile long mResumeTime;
+
+    /**
+     * A new EGL context is created since the last resume, so all the GL objects are created again
+     */
+    private volatile boolean mContextCreated;
+
+    private volatile long mLastResumeLatency = -1;
+    private int mWarmResumeCount;
+    private int mColdResumeCount;
+
     public GLView(Context context) {
         super(context);
 
@@ -28,33 +78,54 @@ public class GLView extends GLSurfaceView {
 
         setEGLContextFactory(new ContextFactory());
         setEGLConfigChooser(new ConfigChooser());
+        // keep the programs, buffers and textures when going to another activity and back,
+        // GLSurfaceView still releases the context on devices which can't keep it
+        setPreserveEGLContextOnPause(true);
 
         mARManager = new ARManager(context);
+        mLifecycle = new ARLifecycle(mARManager);
 
         this.setRenderer(new GLSurfaceView.Renderer() {
             @Override
             public void onSurfaceCreated(GL10 gl, EGLConfig config) {
-                synchronized (mARManager) {
-                    mARManager.initGL();
-                }
+                // only called for a new context, not when a preserved one gets a new surface
+                mContextCreated = true;
+                mLifecycle.onSurfaceCreated();
             }
 
             @Override
             public void onSurfaceChanged(GL10 gl, int w, int h) {
-                synchronized (mARManager) {
-                    mARManager.resizeGL(w, h);
-                }
+                mLifecycle.onSurfaceChanged(w, h);
             }
 
             @Override
             public void onDrawFrame(GL10 gl) {
-                synchronized (mARManager) {
-                    mARManager.render();
+                mLifecycle.onDrawFrame();
+                long resumeTime = mResumeTime;
+                if (resumeTime != 0) {
+                    mResumeTime = 0;
+                    onFirstFrameAfterResume(SystemClock.uptimeMillis() - resumeTime);
                 }
             }
         });
 
         this.setZOrderMediaOverlay(true);
+
+        // the render mode can only be set after the renderer
+        mRenderScheduler = new RenderScheduler(this, mARManager);
+        mMotionDetector = new MotionDetector(context, mARManager.getPowerState());
+    }
+
+    /**
+     * @param enabled draw only when the camera has a new frame or the boards are animating,
+     *                otherwise draw continuously at display rate
+     */
+    public void setRenderOnNewFrame(boolean enabled) {
+        mRenderScheduler.setEnabled(enabled);
+    }
+
+    public RenderScheduler getRenderScheduler() {
+        return mRenderScheduler;
     }
 
 
@@ -62,67 +133,150 @@ public class GLView extends GLSurfaceView {
     @Override
     protected void onAttachedToWindow() {
         super.onAttachedToWindow();
-        synchronized (mARManager) {
-            if (mARManager.initialize()) {
-                mARManager.start();
-            }
+        // the camera is opened on the GL thread, the UI thread doesn't wait for it
+        if (mLifecycle.attach()) {
+            queueEvent(mDrainCommands);
         }
     }
 
     @Override
     protected void onDetachedFromWindow() {
-        synchronized (mARManager) {
-            mARManager.stop();
-            mARManager.dispose();
+        // GL objects can only be deleted on the GL thread, while the context is alive
+        if (mLifecycle.detach()) {
+            final CountDownLatch released = new CountDownLatch(1);
+            queueEvent(new Runnable() {
+                @Override
+                public void run() {
+                    mLifecycle.drain();
+                    released.countDown();
+                }
+            });
+            try {
+                if (!released.await(RELEASE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "onDetachedFromWindow: timed out releasing GL objects");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
+        // waits for the GL thread to exit
         super.onDetachedFromWindow();
+        // the commands it didn't get to, the camera is still stopped and disposed
+        mLifecycle.drainWithoutGL();
+    }
+
+    public ARLifecycle getLifecycle() {
+        return mLifecycle;
+    }
+
+    /**
+     * Save what is on the screen as an image, see {@link ARManager#requestSnapshot}
+     */
+    public void requestSnapshot(Bitmap.CompressFormat format, SnapshotSaver.Callback callback) {
+        mARManager.requestSnapshot(format, callback);
     }
 
     @Override
     public void onResume() {
+        mContextCreated = false;
+        mResumeTime = SystemClock.uptimeMillis();
         super.onResume();
         Engine.onResume();
+        mRenderScheduler.onResume();
+        mMotionDetector.onResume();
+    }
+
+    /**
+     * Called on the GL thread
+     */
+    private void onFirstFrameAfterResume(long latency) {
+        mLastResumeLatency = latency;
+        boolean preserved = !mContextCreated;
+        if (preserved) {
+            mWarmResumeCount++;
+        } else {
+            mColdResumeCount++;
+        }
+        Log.d(TAG, "onFirstFrameAfterResume: " + latency + " ms, context "
+                + (preserved ? "preserved" : "created")
+                + ", warm " + mWarmResumeCount + ", cold " + mColdResumeCount);
+    }
+
+    /**
+     * @return ms from the last resume to the first frame drawn, -1 if no frame is drawn yet
+     */
+    public long getLastResumeLatency() {
+        return mLastResumeLatency;
     }
 
     @Override
     public void onPause() {
+        mMotionDetector.onPause();
+        mRenderScheduler.onPause();
         Engine.onPause();
         super.onPause();
     }
 
     /**
-     * Custom ContextFactory for OpenGL ES
+     * Custom ContextFactory for OpenGL ES, it prefers OpenGL ES 3.0 which can save program binaries,
+     * and falls back to OpenGL ES 2.0. The shaders are written for 2.0, so they work on both.
      */
     private static class ContextFactory implements GLSurfaceView.EGLContextFactory {
         private static int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
 
         public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig) {
-            EGLContext context;
-            int[] attrib = {EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE};
-            context = egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, attrib);
+            EGLContext context = createContext(egl, display, eglConfig, 3);
+            if (context == null || context == EGL10.EGL_NO_CONTEXT) {
+                Log.d(TAG, "createContext: OpenGL ES 3.0 is not available");
+                context = createContext(egl, display, eglConfig, 2);
+            }
             return context;
         }
 
+        private EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig, int version) {
+            int[] attrib = {EGL_CONTEXT_CLIENT_VERSION, version, EGL10.EGL_NONE};
+            return egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, attrib);
+        }
+
         public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+            Log.d(TAG, "destroyContext: the GL objects are gone with the context");
             egl.eglDestroyContext(display, context);
         }
     }
 
     /**
-     * Custom ConfigChooser
+     * Custom ConfigChooser, it prefers a config which can render OpenGL ES 3.0, so the
+     * {@link ContextFactory} can create a 3.0 context on it, and falls back to OpenGL ES 2.0.
      */
     private static class ConfigChooser implements GLSurfaceView.EGLConfigChooser {
+        private static final int EGL_OPENGL_ES2_BIT = 0x0004;
+        private static final int EGL_OPENGL_ES3_BIT_KHR = 0x0040;
+
         public EGLConfig chooseConfig(EGL10 egl, EGLDisplay display) {
-            final int EGL_OPENGL_ES2_BIT = 0x0004;
+            EGLConfig config = chooseConfig(egl, display, EGL_OPENGL_ES3_BIT_KHR);
+            if (config == null) {
+                Log.d(TAG, "chooseConfig: no OpenGL ES 3.0 config");
+                config = chooseConfig(egl, display, EGL_OPENGL_ES2_BIT);
+            }
+            if (config == null)
+                throw new IllegalArgumentException("fail to choose EGL configs");
+            return config;
+        }
+
+        /**
+         * @return null if there is no config of this renderable type
+         */
+        private EGLConfig chooseConfig(EGL10 egl, EGLDisplay display, int renderableType) {
             final int[] attrib = {EGL10.EGL_RED_SIZE, 4, EGL10.EGL_GREEN_SIZE, 4, EGL10.EGL_BLUE_SIZE, 4,
-                    EGL10.EGL_RENDERABLE_TYPE, EGL_OPENGL_ES2_BIT, EGL10.EGL_NONE};
+                    EGL10.EGL_RENDERABLE_TYPE, renderableType, EGL10.EGL_NONE};
 
             int[] num_config = new int[1];
-            egl.eglChooseConfig(display, attrib, null, 0, num_config);
+            if (!egl.eglChooseConfig(display, attrib, null, 0, num_config))
+                return null;
 
             int numConfigs = num_config[0];
             if (numConfigs <= 0)
-                throw new IllegalArgumentException("fail to choose EGL configs");
+                return null;
 
             EGLConfig[] configs = new EGLConfig[numConfigs];
             egl.eglChooseConfig(display, attrib, configs, numConfigs,
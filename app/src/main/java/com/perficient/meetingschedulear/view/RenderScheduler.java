@@ -0,0 +1,129 @@
+package com.perficient.meetingschedulear.view;
+
+import android.opengl.GLSurfaceView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import com.perficient.meetingschedulear.util.ARManager;
+
+/**
+ * Renders a {@link GLSurfaceView} only when there is something new to draw. On each vsync it asks
+ * {@link ARManager#needsRender()} on the GL thread and requests a render if so, otherwise the frame
+ * is skipped, so a still camera with a still board costs nothing on GPU.
+ * <p>
+ * Must be accessed on the main thread only, the counters are updated on the GL thread.
+ */
+public class RenderScheduler implements Choreographer.FrameCallback {
+
+    private static final String TAG = RenderScheduler.class.getSimpleName();
+
+    /**
+     * Log the counters every this many vsyncs, enable with adb shell setprop log.tag.RenderScheduler DEBUG
+     */
+    private static final int LOG_INTERVAL_FRAMES = 600;
+
+    private final GLSurfaceView mView;
+
+    private final ARManager mARManager;
+
+    private boolean mEnabled;
+
+    private boolean mResumed;
+
+    private boolean mPosted;
+
+    private volatile long mRequestedCount;
+    private volatile long mSkippedCount;
+
+    /**
+     * The camera objects belong to the GL thread, so the check runs there
+     */
+    private final Runnable mCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (mARManager.needsRender()) {
+                mView.requestRender();
+                mRequestedCount++;
+            } else {
+                mSkippedCount++;
+            }
+            if ((mRequestedCount + mSkippedCount) % LOG_INTERVAL_FRAMES == 0 && Log.isLoggable(TAG, Log.DEBUG)) {
+                logStats();
+            }
+        }
+    };
+
+    public RenderScheduler(GLSurfaceView view, ARManager arManager) {
+        mView = view;
+        mARManager = arManager;
+    }
+
+    /**
+     * @param enabled render on new camera frames only, otherwise render continuously at display rate
+     */
+    public void setEnabled(boolean enabled) {
+        if (mEnabled == enabled) {
+            return;
+        }
+        mEnabled = enabled;
+        mView.setRenderMode(enabled ? GLSurfaceView.RENDERMODE_WHEN_DIRTY : GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+        update();
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public void onResume() {
+        mResumed = true;
+        update();
+    }
+
+    public void onPause() {
+        mResumed = false;
+        update();
+    }
+
+    private void update() {
+        boolean run = mEnabled && mResumed;
+        if (run && !mPosted) {
+            Choreographer.getInstance().postFrameCallback(this);
+            mPosted = true;
+        } else if (!run && mPosted) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            mPosted = false;
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mView.queueEvent(mCheck);
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /**
+     * @return vsyncs a render is requested in
+     */
+    public long getRequestedCount() {
+        return mRequestedCount;
+    }
+
+    /**
+     * @return vsyncs skipped since nothing changed, the redundant frames avoided
+     */
+    public long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    public void logStats() {
+        Log.d(TAG, "logStats: " + toString());
+    }
+
+    @Override
+    public String toString() {
+        long total = mRequestedCount + mSkippedCount;
+        return "RenderScheduler{requested=" + mRequestedCount
+                + ", skipped=" + mSkippedCount
+                + ", skipped rate=" + (total > 0 ? mSkippedCount * 100 / total : 0) + "%}";
+    }
+}
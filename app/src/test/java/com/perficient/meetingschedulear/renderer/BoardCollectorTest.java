@@ -0,0 +1,271 @@
+package com.perficient.meetingschedulear.renderer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the board loop with a fake frame source, and checks that a stable tracking allocates nothing.
+ */
+public class BoardCollectorTest {
+
+    private static final int WARM_UP_FRAMES = 20000;
+    private static final int MEASURED_FRAMES = 1000;
+    /**
+     * A deoptimization of the JIT may allocate once in a while, an allocation of the loop shows in every round
+     */
+    private static final int MEASURED_ROUNDS = 3;
+
+    /**
+     * Perspective projection with fovy of 60 degrees, aspect of 16:9, near 0.2 and far 500
+     */
+    private static final float[] PROJECTION = {
+            0.974f, 0, 0, 0,
+            0, 1.732f, 0, 0,
+            0, 0, -1.0008f, -1,
+            0, 0, -0.4002f, 0};
+
+    private FakeFrameSource mFrame;
+    private FakeCallback mCallback;
+    private FakeListener mListener;
+    private BoardCuller mCuller;
+    private BoardCollector mCollector;
+    private Board[] mBoards;
+
+    @Before
+    public void setUp() throws Exception {
+        mFrame = new FakeFrameSource();
+        mCallback = new FakeCallback();
+        mListener = new FakeListener();
+        mCuller = new BoardCuller();
+        TargetStateTable targets = new TargetStateTable(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        targets.setHysteresis(1, 2);
+        targets.addListener(mListener);
+        mCollector = new BoardCollector(mCuller, targets, mCallback);
+        mBoards = new Board[4];
+        for (int i = 0; i < mBoards.length; i++) {
+            mBoards[i] = new Board();
+        }
+    }
+
+    @Test
+    public void collect_stableTracking_allocatesNothing() throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        enableAllocationCounting(threads);
+        long threadId = Thread.currentThread().getId();
+
+        for (int i = 0; i < WARM_UP_FRAMES; i++) {
+            runFrame();
+        }
+
+        long maxBytesPerFrame = 0;
+        long totalBytes = 0;
+        for (int round = 0; round < MEASURED_ROUNDS && (round == 0 || totalBytes > 0); round++) {
+            maxBytesPerFrame = 0;
+            totalBytes = 0;
+            for (int i = 0; i < MEASURED_FRAMES; i++) {
+                long before = threads.getThreadAllocatedBytes(threadId);
+                runFrame();
+                long bytes = threads.getThreadAllocatedBytes(threadId) - before;
+                maxBytesPerFrame = Math.max(maxBytesPerFrame, bytes);
+                totalBytes += bytes;
+            }
+        }
+
+        assertEquals("bytes allocated per frame, total " + totalBytes, 0, maxBytesPerFrame);
+        assertEquals(3, mListener.mFoundCount);
+    }
+
+    @Test
+    public void collect_skipsLostAndCulledTargets() throws Exception {
+        mCuller.beginFrame(PROJECTION, 1280, 720);
+        mFrame.mIds[1] = 0;
+        // behind the camera
+        mFrame.mPoses[2][14] = 1f;
+
+        int count = mCollector.collect(mFrame, mBoards, mBoards.length);
+
+        assertEquals(1, count);
+        // the counters of the previous frame
+        mCuller.beginFrame(PROJECTION, 1280, 720);
+        assertEquals(1, mCuller.getCulledCount());
+        assertEquals(1, mCuller.getDrawnCount());
+        assertEquals(2, mListener.mFoundCount);
+    }
+
+    @Test
+    public void collect_sortsBackToFront() throws Exception {
+        mCuller.beginFrame(PROJECTION, 1280, 720);
+        mFrame.mPoses[0][14] = -0.5f;
+        mFrame.mPoses[1][14] = -2f;
+        mFrame.mPoses[2][14] = -1f;
+
+        int count = mCollector.collect(mFrame, mBoards, mBoards.length);
+
+        assertEquals(3, count);
+        assertEquals(-2f, mBoards[0].getDepth(), 0);
+        assertEquals(-1f, mBoards[1].getDepth(), 0);
+        assertEquals(-0.5f, mBoards[2].getDepth(), 0);
+    }
+
+    @Test
+    public void collect_findsTargetAgainAfterLost() throws Exception {
+        mCuller.beginFrame(PROJECTION, 1280, 720);
+        mCollector.collect(mFrame, mBoards, mBoards.length);
+        assertEquals(3, mListener.mFoundCount);
+
+        // the same frame again, e.g. after resume
+        mCollector.collect(mFrame, mBoards, mBoards.length);
+        assertEquals(3, mListener.mFoundCount);
+
+        // dropped for a frame, it's not lost
+        mFrame.mTimestamp++;
+        mFrame.mIds[0] = 0;
+        mCollector.collect(mFrame, mBoards, mBoards.length);
+        mFrame.mTimestamp++;
+        mFrame.mIds[0] = 1;
+        mCollector.collect(mFrame, mBoards, mBoards.length);
+        assertEquals(3, mListener.mFoundCount);
+        assertEquals(0, mListener.mLostCount);
+
+        for (int i = 0; i < 2; i++) {
+            mFrame.mTimestamp++;
+            mFrame.mIds[0] = 0;
+            mCollector.collect(mFrame, mBoards, mBoards.length);
+        }
+        assertEquals(1, mListener.mLostCount);
+        mFrame.mTimestamp++;
+        mFrame.mIds[0] = 1;
+        mCollector.collect(mFrame, mBoards, mBoards.length);
+        assertEquals(4, mListener.mFoundCount);
+        assertEquals(3, mCollector.getTargets().size());
+    }
+
+    @Test
+    public void collect_followsTargetsOverTheLimit() throws Exception {
+        mCuller.beginFrame(PROJECTION, 1280, 720);
+
+        int count = mCollector.collect(mFrame, mBoards, 1);
+
+        assertEquals(1, count);
+        assertEquals(3, mListener.mFoundCount);
+        assertEquals(TrackedTarget.TRACKED, mCollector.getTargets().get(3).getState());
+    }
+
+    @Test
+    public void collect_keepsTextureHandles() throws Exception {
+        mCuller.beginFrame(PROJECTION, 1280, 720);
+
+        mCollector.collect(mFrame, mBoards, mBoards.length);
+
+        assertEquals(2, mCollector.getTargets().get(2).getTexture());
+    }
+
+    private void runFrame() {
+        mFrame.mTimestamp += 1.0 / 30;
+        // move the targets a little, as the camera shakes
+        for (float[] pose : mFrame.mPoses) {
+            pose[12] = (pose[12] + 0.001f) % 0.1f;
+        }
+        mCuller.beginFrame(PROJECTION, 1280, 720);
+        int count = mCollector.collect(mFrame, mBoards, mBoards.length);
+        if (count != 3) {
+            fail("boards collected: " + count);
+        }
+    }
+
+    private static void enableAllocationCounting(com.sun.management.ThreadMXBean threads) {
+        assumeTrue("allocation counting is not supported by this JVM", threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Three targets in front of the camera
+     */
+    private static class FakeFrameSource implements FrameSource {
+
+        private double mTimestamp = 1;
+
+        private final int[] mIds = {1, 2, 3};
+
+        private final String[] mNames = {"sp0", "sp1", "sp2"};
+
+        private final float[][] mPoses = new float[3][];
+
+        FakeFrameSource() {
+            for (int i = 0; i < mPoses.length; i++) {
+                mPoses[i] = new float[]{
+                        1, 0, 0, 0,
+                        0, 1, 0, 0,
+                        0, 0, 1, 0,
+                        0.2f * i - 0.2f, 0, -1f, 1};
+            }
+        }
+
+        @Override
+        public double getTimestamp() {
+            return mTimestamp;
+        }
+
+        @Override
+        public int getTargetCount() {
+            return mIds.length;
+        }
+
+        @Override
+        public int getTrackedTargetId(int index) {
+            return mIds[index];
+        }
+
+        @Override
+        public String getTargetName(int index) {
+            return mNames[index];
+        }
+
+        @Override
+        public void getTargetSize(int index, float[] outSize) {
+            outSize[0] = 0.3f;
+            outSize[1] = 0.2f;
+        }
+
+        @Override
+        public void getPose(int index, float[] outPose) {
+            System.arraycopy(mPoses[index], 0, outPose, 0, 16);
+        }
+    }
+
+    private static class FakeListener implements TargetStateTable.Listener {
+
+        private int mFoundCount;
+        private int mLostCount;
+
+        @Override
+        public void onTargetFound(int id, String name) {
+            mFoundCount++;
+        }
+
+        @Override
+        public void onTargetLost(int id, String name) {
+            mLostCount++;
+        }
+    }
+
+    private static class FakeCallback implements BoardCollector.Callback {
+
+        @Override
+        public void onPrepareBoard(Board board, TrackedTarget target) {
+            board.setTexture(target.getId());
+        }
+    }
+}
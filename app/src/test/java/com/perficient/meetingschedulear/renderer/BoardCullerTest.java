@@ -0,0 +1,117 @@
+package com.perficient.meetingschedulear.renderer;
+
+import com.perficient.meetingschedulear.util.MatrixMath;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Classifies a board of 20 x 15 cm at different places in front of a 1280 x 720 camera.
+ */
+public class BoardCullerTest {
+
+    private static final float WIDTH = 0.2f;
+    private static final float HEIGHT = 0.15f;
+
+    /**
+     * Perspective projection with fovy of 60 degrees, aspect of 16:9, near 0.2 and far 500
+     */
+    private static final float[] PROJECTION = {
+            0.974f, 0, 0, 0,
+            0, 1.732f, 0, 0,
+            0, 0, -1.0008f, -1,
+            0, 0, -0.4002f, 0};
+
+    private BoardCuller mCuller;
+    private float[] mPose;
+    private float[] mMVP;
+
+    @Before
+    public void setUp() throws Exception {
+        mCuller = new BoardCuller();
+        mCuller.beginFrame(PROJECTION, 1280, 720);
+        mPose = new float[16];
+        mMVP = new float[16];
+    }
+
+    @Test
+    public void inFront_isDrawn() throws Exception {
+        assertEquals(BoardCuller.DRAWN, classifyAt(0, 0, -1f));
+    }
+
+    @Test
+    public void outsideTheFrustum_isCulled() throws Exception {
+        assertEquals(BoardCuller.CULLED, classifyAt(5f, 0, -1f));
+        assertEquals(BoardCuller.CULLED, classifyAt(0, -5f, -1f));
+        // beyond the far plane
+        assertEquals(BoardCuller.CULLED, classifyAt(0, 0, -600f));
+    }
+
+    @Test
+    public void behindTheCamera_isCulled() throws Exception {
+        assertEquals(BoardCuller.CULLED, classifyAt(0, 0, 2f));
+    }
+
+    @Test
+    public void acrossTheNearPlane_isDrawn() throws Exception {
+        // a board of 2 x 1.5 m right in front of the camera, the back corners are at the camera
+        setPose(mPose, 0, 0, -0.2f);
+        MatrixMath.multiply(mMVP, PROJECTION, mPose);
+        assertEquals(BoardCuller.DRAWN, mCuller.classify(mMVP, 2f, 1.5f));
+        // all between the camera and the near plane
+        assertEquals(BoardCuller.CULLED, classifyAt(0, 0, -0.1f));
+    }
+
+    @Test
+    public void belowTheMinArea_isCulled() throws Exception {
+        // about 2.5 x 1.9 pixels
+        assertEquals(BoardCuller.CULLED, classifyAt(0, 0, -50f));
+
+        mCuller.setMinScreenArea(1);
+        assertEquals(BoardCuller.SIMPLIFIED, classifyAt(0, 0, -50f));
+    }
+
+    @Test
+    public void belowTheSimplifyArea_isSimplified() throws Exception {
+        // about 25 x 19 pixels
+        assertEquals(BoardCuller.SIMPLIFIED, classifyAt(0, 0, -5f));
+
+        mCuller.setSimplifyScreenArea(256);
+        assertEquals(BoardCuller.DRAWN, classifyAt(0, 0, -5f));
+    }
+
+    @Test
+    public void test_countsTheBoardsOfThePreviousFrame() throws Exception {
+        Board board = new Board();
+        board.set(WIDTH, HEIGHT);
+        setPose(board.getPose(), 0, 0, -1f);
+        assertEquals(BoardCuller.DRAWN, mCuller.test(board));
+        setPose(board.getPose(), 0, 0, 2f);
+        assertEquals(BoardCuller.CULLED, mCuller.test(board));
+        setPose(board.getPose(), 0, 0, -5f);
+        assertEquals(BoardCuller.SIMPLIFIED, mCuller.test(board));
+
+        mCuller.beginFrame(PROJECTION, 1280, 720);
+        assertEquals(1, mCuller.getDrawnCount());
+        assertEquals(1, mCuller.getCulledCount());
+        assertEquals(1, mCuller.getSimplifiedCount());
+    }
+
+    private int classifyAt(float x, float y, float z) {
+        setPose(mPose, x, y, z);
+        MatrixMath.multiply(mMVP, PROJECTION, mPose);
+        return mCuller.classify(mMVP, WIDTH, HEIGHT);
+    }
+
+    /**
+     * Facing the camera at this point of the Camera Coordinates
+     */
+    private static void setPose(float[] pose, float x, float y, float z) {
+        MatrixMath.setIdentity(pose);
+        pose[12] = x;
+        pose[13] = y;
+        pose[14] = z;
+    }
+}
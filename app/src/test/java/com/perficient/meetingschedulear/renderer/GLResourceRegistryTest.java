@@ -0,0 +1,155 @@
+package com.perficient.meetingschedulear.renderer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the registry frees every GL object it tracks, with a fake releaser in place of GL.
+ */
+public class GLResourceRegistryTest {
+
+    private FakeReleaser mReleaser;
+    private GLResourceRegistry mRegistry;
+
+    @Before
+    public void setUp() throws Exception {
+        mReleaser = new FakeReleaser();
+        mRegistry = new GLResourceRegistry(mReleaser);
+    }
+
+    @Test
+    public void register_countsObjectsAndBytes() throws Exception {
+        mRegistry.register(GLResourceRegistry.TEXTURE, 1, 1000);
+        mRegistry.register(GLResourceRegistry.TEXTURE, 2, 500);
+        mRegistry.register(GLResourceRegistry.BUFFER, 1, 96);
+
+        assertEquals(2, mRegistry.getLiveCount(GLResourceRegistry.TEXTURE));
+        assertEquals(1, mRegistry.getLiveCount(GLResourceRegistry.BUFFER));
+        assertEquals(3, mRegistry.getLiveCount());
+        assertEquals(1500, mRegistry.getLiveBytes(GLResourceRegistry.TEXTURE));
+        assertEquals(1596, mRegistry.getLiveBytes());
+    }
+
+    @Test
+    public void register_againUpdatesBytes() throws Exception {
+        mRegistry.register(GLResourceRegistry.BUFFER, 3, 100);
+        mRegistry.register(GLResourceRegistry.BUFFER, 3, 400);
+
+        assertEquals(1, mRegistry.getLiveCount(GLResourceRegistry.BUFFER));
+        assertEquals(400, mRegistry.getLiveBytes(GLResourceRegistry.BUFFER));
+    }
+
+    @Test
+    public void register_ignoresZeroHandle() throws Exception {
+        mRegistry.register(GLResourceRegistry.TEXTURE, 0, 100);
+
+        assertEquals(0, mRegistry.getLiveCount());
+        assertEquals(0, mRegistry.getLiveBytes());
+    }
+
+    @Test
+    public void release_deletesOnlyRegisteredObjects() throws Exception {
+        mRegistry.register(GLResourceRegistry.TEXTURE, 5, 100);
+
+        mRegistry.release(GLResourceRegistry.TEXTURE, 5);
+        mRegistry.release(GLResourceRegistry.TEXTURE, 5);
+        mRegistry.release(GLResourceRegistry.BUFFER, 5);
+
+        assertEquals(1, mReleaser.mReleased.size());
+        assertEquals(0, mRegistry.getLiveCount());
+        assertEquals(0, mRegistry.getLiveBytes());
+    }
+
+    @Test
+    public void releaseAll_deletesEverythingOnce() throws Exception {
+        registerRendererObjects(1);
+
+        mRegistry.releaseAll();
+
+        assertEquals(0, mRegistry.getLiveCount());
+        assertEquals(0, mRegistry.getLiveBytes());
+        // the shaders are released after linking, the rest on releaseAll
+        assertEquals(8, mReleaser.mReleased.size());
+        assertEquals(8, mRegistry.getReleasedCount());
+        assertEquals(8, new HashSet<>(mReleaser.mReleased).size());
+    }
+
+    @Test
+    public void abandonAll_forgetsWithoutDeleting() throws Exception {
+        registerRendererObjects(1);
+
+        mRegistry.abandonAll();
+
+        assertEquals(0, mRegistry.getLiveCount());
+        assertEquals(0, mRegistry.getLiveBytes());
+        assertEquals(2, mReleaser.mReleased.size());
+        assertEquals(6, mRegistry.getAbandonedCount());
+    }
+
+    @Test
+    public void releaseAll_withReusedHandles_leavesNothing() throws Exception {
+        for (int cycle = 0; cycle < 50; cycle++) {
+            mReleaser.mReleased.clear();
+            // handles are reused by the driver after they are deleted
+            registerRendererObjects(1);
+            // a board uploaded and evicted
+            mRegistry.register(GLResourceRegistry.TEXTURE, 100 + cycle, 4096);
+            mRegistry.release(GLResourceRegistry.TEXTURE, 100 + cycle);
+
+            mRegistry.releaseAll();
+
+            assertEquals("leak after cycle " + cycle, 0, mRegistry.getLiveCount());
+            assertEquals("leak after cycle " + cycle, 0, mRegistry.getLiveBytes());
+            assertEquals(9, mReleaser.mReleased.size());
+        }
+        assertEquals(50 * 9, mRegistry.getReleasedCount());
+    }
+
+    @Test
+    public void budget() throws Exception {
+        assertFalse(mRegistry.isOverBudget());
+
+        mRegistry.setBudgetBytes(1000);
+        mRegistry.register(GLResourceRegistry.TEXTURE, 1, 800);
+        assertFalse(mRegistry.isOverBudget());
+
+        mRegistry.register(GLResourceRegistry.TEXTURE, 2, 800);
+        assertTrue(mRegistry.isOverBudget());
+
+        mRegistry.release(GLResourceRegistry.TEXTURE, 2);
+        assertFalse(mRegistry.isOverBudget());
+    }
+
+    /**
+     * What a renderer creates in a context: a program, its shaders, buffers and textures
+     */
+    private void registerRendererObjects(int firstHandle) {
+        mRegistry.register(GLResourceRegistry.SHADER, firstHandle, 0);
+        mRegistry.register(GLResourceRegistry.SHADER, firstHandle + 1, 0);
+        mRegistry.register(GLResourceRegistry.PROGRAM, firstHandle, 0);
+        mRegistry.release(GLResourceRegistry.SHADER, firstHandle);
+        mRegistry.release(GLResourceRegistry.SHADER, firstHandle + 1);
+
+        mRegistry.register(GLResourceRegistry.BUFFER, firstHandle, 96);
+        mRegistry.register(GLResourceRegistry.BUFFER, firstHandle + 1, 64);
+        mRegistry.register(GLResourceRegistry.BUFFER, firstHandle + 2, 60);
+        mRegistry.register(GLResourceRegistry.TEXTURE, firstHandle, 4);
+        mRegistry.register(GLResourceRegistry.TEXTURE, firstHandle + 1, 512 * 512 * 4);
+    }
+
+    private static class FakeReleaser implements GLResourceRegistry.Releaser {
+
+        private final List<String> mReleased = new ArrayList<>();
+
+        @Override
+        public void release(int type, int handle) {
+            mReleased.add(type + ":" + handle);
+        }
+    }
+}
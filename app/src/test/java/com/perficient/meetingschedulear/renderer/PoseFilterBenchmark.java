@@ -0,0 +1,63 @@
+package com.perficient.meetingschedulear.renderer;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Microbenchmark of the pose filter of one target per frame, it checks that a frame allocates
+ * nothing, and the time of it is in the message of a failure. The times are only comparable on
+ * the same machine.
+ */
+@Ignore("benchmark, run it by hand")
+public class PoseFilterBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int ITERATIONS = 200000;
+
+    private PoseFilter mFilter;
+    private float[] mPose;
+    private float[] mOut;
+
+    private com.sun.management.ThreadMXBean mThreads;
+
+    @Before
+    public void setUp() throws Exception {
+        mFilter = new PoseFilter(new PoseFilter.Params());
+        mPose = new float[16];
+        mOut = new float[16];
+        mThreads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue("allocation counting is not supported by this JVM", mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void updateAndPredict() throws Exception {
+        long threadId = Thread.currentThread().getId();
+        long elapsed = 0;
+        long bytes = 0;
+        float sink = 0;
+        int frame = 0;
+        // the earlier rounds warm up the JIT, only the last one counts
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytesBefore = mThreads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                frame++;
+                PoseFilterTest.setPose(mPose, (frame % 1000) * 0.001f, (frame % 100) * 0.001f, 0, -1f);
+                mFilter.update(mPose, frame / 30.0, frame * 33333333L);
+                mFilter.predict(mOut, frame * 33333333L);
+                sink += mOut[12];
+            }
+            elapsed = System.nanoTime() - start;
+            bytes = mThreads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        }
+
+        assertEquals("bytes allocated at " + (double) elapsed / ITERATIONS + " ns/op, sink " + sink, 0, bytes);
+    }
+}
@@ -0,0 +1,172 @@
+package com.perficient.meetingschedulear.renderer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds the filter with synthetic tracking at 30 fps, a still target with noise and a moving one.
+ */
+public class PoseFilterTest {
+
+    private static final float DELTA = 1e-4f;
+
+    private static final double FRAME_TIME = 1.0 / 30;
+    private static final long FRAME_NANOS = 33333333L;
+
+    private PoseFilter.Params mParams;
+    private PoseFilter mFilter;
+    private float[] mPose;
+    private float[] mOut;
+
+    @Before
+    public void setUp() throws Exception {
+        mParams = new PoseFilter.Params();
+        mFilter = new PoseFilter(mParams);
+        mPose = new float[16];
+        mOut = new float[16];
+    }
+
+    @Test
+    public void firstPose_isDrawnAsTracked() throws Exception {
+        setPose(mPose, 0.5f, 0.3f, -0.2f, -2f);
+
+        mFilter.update(mPose, 1, 0);
+        mFilter.predict(mOut, 0);
+
+        assertArrayEquals(mPose, mOut, DELTA);
+        assertFalse(mFilter.isMoving());
+    }
+
+    @Test
+    public void stillTarget_jitterIsReduced() throws Exception {
+        Random random = new Random(7);
+        double rawError = 0;
+        double filteredError = 0;
+        for (int i = 0; i < 300; i++) {
+            float noise = (random.nextFloat() - 0.5f) * 0.004f;
+            setPose(mPose, 0, noise, 0, -1f);
+            mFilter.update(mPose, i * FRAME_TIME, i * FRAME_NANOS);
+            mFilter.predict(mOut, i * FRAME_NANOS);
+            if (i >= 30) {
+                rawError += noise * noise;
+                filteredError += mOut[12] * mOut[12];
+            }
+        }
+
+        assertTrue("raw " + rawError + ", filtered " + filteredError, filteredError < rawError * 0.25);
+    }
+
+    @Test
+    public void movingTarget_isPredictedToTheDisplay() throws Exception {
+        float speed = 0.5f;
+        float latency = mParams.getLatency();
+        for (int i = 0; i < 90; i++) {
+            setPose(mPose, 0, speed * (float) (i * FRAME_TIME), 0, -1f);
+            mFilter.update(mPose, i * FRAME_TIME, i * FRAME_NANOS);
+            mFilter.predict(mOut, i * FRAME_NANOS);
+        }
+
+        // where the target is when the frame is displayed, the raw pose is one frame behind
+        float displayed = speed * (float) (89 * FRAME_TIME + latency);
+        assertEquals(displayed, mOut[12], 0.003f);
+        assertTrue(mFilter.isMoving());
+
+        // the same camera frame drawn again half a frame later moves on
+        float before = mOut[12];
+        mFilter.update(mPose, 89 * FRAME_TIME, 89 * FRAME_NANOS + FRAME_NANOS / 2);
+        mFilter.predict(mOut, 89 * FRAME_NANOS + FRAME_NANOS / 2);
+        assertEquals(before + speed * FRAME_TIME / 2, mOut[12], 0.003f);
+    }
+
+    @Test
+    public void prediction_isClamped() throws Exception {
+        for (int i = 0; i < 90; i++) {
+            setPose(mPose, 0, 0.5f * (float) (i * FRAME_TIME), 0, -1f);
+            mFilter.update(mPose, i * FRAME_TIME, i * FRAME_NANOS);
+        }
+
+        // the camera stalls, the board stops at the max prediction
+        mFilter.predict(mOut, 89 * FRAME_NANOS + 1000000000L);
+        float stopped = mOut[12];
+        assertFalse(mFilter.isMoving());
+        assertEquals(0.5f * (float) (89 * FRAME_TIME + mParams.getMaxPrediction()), stopped, 0.003f);
+        mFilter.predict(mOut, 89 * FRAME_NANOS + 2000000000L);
+        assertEquals(stopped, mOut[12], 0);
+    }
+
+    @Test
+    public void rotatingTarget_acrossTheHalfTurn_staysRigid() throws Exception {
+        // turns around y past 180 degrees, where the sign of the quaternion flips
+        float angularSpeed = 1f;
+        double start = Math.PI - 1;
+        for (int i = 0; i < 60; i++) {
+            float angle = (float) (start + angularSpeed * i * FRAME_TIME);
+            setPose(mPose, angle, 0, 0, -1f);
+            mFilter.update(mPose, i * FRAME_TIME, i * FRAME_NANOS);
+            mFilter.predict(mOut, i * FRAME_NANOS);
+
+            if (i >= 30) {
+                // within a degree of where it's displayed, once the filter catches up
+                double expected = angle + angularSpeed * mParams.getLatency();
+                double error = Math.atan2(mOut[8], mOut[0]) - expected;
+                assertEquals("frame " + i, 0, Math.IEEEremainder(error, 2 * Math.PI), Math.toRadians(1));
+            }
+            // the rotation stays orthonormal
+            assertEquals(1f, mOut[0] * mOut[0] + mOut[1] * mOut[1] + mOut[2] * mOut[2], DELTA);
+            assertEquals(0f, mOut[0] * mOut[8] + mOut[1] * mOut[9] + mOut[2] * mOut[10], DELTA);
+        }
+    }
+
+    @Test
+    public void gap_startsOver() throws Exception {
+        setPose(mPose, 0, 0, 0, -1f);
+        mFilter.update(mPose, 0, 0);
+        setPose(mPose, 0, 0.1f, 0, -1f);
+        mFilter.update(mPose, FRAME_TIME, FRAME_NANOS);
+
+        setPose(mPose, 0, 1f, 0, -1f);
+        mFilter.update(mPose, 2, 2000000000L);
+        mFilter.predict(mOut, 2000000000L);
+        assertArrayEquals(mPose, mOut, DELTA);
+    }
+
+    @Test
+    public void reset_startsOver() throws Exception {
+        setPose(mPose, 0, 0, 0, -1f);
+        mFilter.update(mPose, 0, 0);
+        mFilter.reset();
+
+        setPose(mPose, 0.3f, 0.2f, 0, -1f);
+        mFilter.update(mPose, FRAME_TIME, FRAME_NANOS);
+        mFilter.predict(mOut, FRAME_NANOS);
+        assertArrayEquals(mPose, mOut, DELTA);
+    }
+
+    /**
+     * Rotated around y by the angle, then moved to x, y, z
+     */
+    static void setPose(float[] pose, float angle, float x, float y, float z) {
+        float cos = (float) Math.cos(angle);
+        float sin = (float) Math.sin(angle);
+        pose[0] = cos;
+        pose[1] = 0;
+        pose[2] = -sin;
+        pose[3] = 0;
+        pose[4] = 0;
+        pose[5] = 1;
+        pose[6] = 0;
+        pose[7] = 0;
+        pose[8] = sin;
+        pose[9] = 0;
+        pose[10] = cos;
+        pose[11] = 0;
+        pose[12] = x;
+        pose[13] = y;
+        pose[14] = z;
+        pose[15] = 1;
+    }
+}
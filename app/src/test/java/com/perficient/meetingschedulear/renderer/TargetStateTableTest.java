@@ -0,0 +1,223 @@
+package com.perficient.meetingschedulear.renderer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Drives the table frame by frame, and checks the hysteresis and the events delivered.
+ */
+public class TargetStateTableTest {
+
+    private static final int ID = 7;
+
+    private FakeFrameSource mFrame;
+    private List<String> mEvents;
+    private List<Runnable> mPosted;
+    private TargetStateTable mTable;
+    private long mNow;
+
+    @Before
+    public void setUp() throws Exception {
+        mFrame = new FakeFrameSource();
+        mEvents = new ArrayList<>();
+        mPosted = new ArrayList<>();
+        // the events are run when the test delivers them, like a handler of another thread
+        mTable = new TargetStateTable(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mPosted.add(command);
+            }
+        });
+        mTable.setHysteresis(2, 3);
+        mTable.addListener(new TargetStateTable.Listener() {
+            @Override
+            public void onTargetFound(int id, String name) {
+                mEvents.add("found " + name + "(" + id + ")");
+            }
+
+            @Override
+            public void onTargetLost(int id, String name) {
+                mEvents.add("lost " + name + "(" + id + ")");
+            }
+        });
+    }
+
+    @Test
+    public void seenInEnoughFrames_isFound() throws Exception {
+        TrackedTarget target = frame(true);
+        assertEquals(TrackedTarget.FOUND, target.getState());
+        assertTrue(deliver().isEmpty());
+
+        assertNull(mTable.getLastFound());
+        frame(true);
+        assertEquals(TrackedTarget.TRACKED, target.getState());
+        assertSame(target, mTable.getLastFound());
+        assertEquals("[found sp0(7)]", deliver().toString());
+        assertEquals(1, mTable.getTrackedCount());
+    }
+
+    @Test
+    public void seenOnce_isNeverReported() throws Exception {
+        TrackedTarget target = frame(true);
+        assertEquals(1, mTable.getSeenCount());
+        frame(false);
+        assertEquals(0, mTable.getSeenCount());
+        frame(false);
+        frame(false);
+        frame(false);
+
+        assertEquals(TrackedTarget.LOST, target.getState());
+        assertTrue(deliver().isEmpty());
+    }
+
+    @Test
+    public void missedForAFewFrames_isNotLost() throws Exception {
+        frame(true);
+        frame(true);
+        deliver();
+
+        frame(false);
+        frame(false);
+        TrackedTarget target = frame(true);
+
+        assertEquals(TrackedTarget.TRACKED, target.getState());
+        assertTrue(deliver().isEmpty());
+    }
+
+    @Test
+    public void missedForLong_isLost_andFoundAgain() throws Exception {
+        frame(true);
+        frame(true);
+        deliver();
+
+        frame(false);
+        frame(false);
+        frame(false);
+        assertEquals("[lost sp0(7)]", deliver().toString());
+        assertEquals(0, mTable.getTrackedCount());
+
+        frame(true);
+        frame(true);
+        assertEquals("[found sp0(7)]", deliver().toString());
+        assertEquals(1, mTable.size());
+    }
+
+    @Test
+    public void sameCameraFrame_doesNotCount() throws Exception {
+        TrackedTarget target = frame(true);
+        long firstSeen = target.getFirstSeenNanos();
+
+        // drawn again without a new camera frame
+        mNow += 16;
+        mTable.beginFrame(false, mNow);
+        mTable.track(ID, mFrame, 0);
+        mTable.endFrame();
+
+        assertEquals(TrackedTarget.FOUND, target.getState());
+        assertEquals(firstSeen, target.getFirstSeenNanos());
+        assertEquals(mNow, target.getLastSeenNanos());
+    }
+
+    @Test
+    public void clear_reportsTrackedLost() throws Exception {
+        frame(true);
+        frame(true);
+        deliver();
+
+        mTable.clear();
+
+        assertEquals("[lost sp0(7)]", deliver().toString());
+        assertNull(mTable.get(ID));
+    }
+
+    @Test
+    public void removedListener_isNotCalled() throws Exception {
+        TargetStateTable.Listener listener = new TargetStateTable.Listener() {
+            @Override
+            public void onTargetFound(int id, String name) {
+                fail("removed listener called");
+            }
+
+            @Override
+            public void onTargetLost(int id, String name) {
+                fail("removed listener called");
+            }
+        };
+        mTable.addListener(listener);
+        mTable.removeListener(listener);
+
+        frame(true);
+        frame(true);
+        assertEquals(1, deliver().size());
+    }
+
+    /**
+     * Run a new camera frame
+     *
+     * @param seen the target is tracked in it
+     * @return the target
+     */
+    private TrackedTarget frame(boolean seen) {
+        mNow += 33;
+        mTable.beginFrame(true, mNow);
+        if (seen) {
+            mTable.track(ID, mFrame, 0);
+        }
+        mTable.endFrame();
+        return mTable.get(ID);
+    }
+
+    /**
+     * Run the events posted so far
+     *
+     * @return the events delivered
+     */
+    private List<String> deliver() {
+        for (Runnable runnable : mPosted) {
+            runnable.run();
+        }
+        mPosted.clear();
+        List<String> events = new ArrayList<>(mEvents);
+        mEvents.clear();
+        return events;
+    }
+
+    private static class FakeFrameSource implements FrameSource {
+
+        @Override
+        public double getTimestamp() {
+            return 0;
+        }
+
+        @Override
+        public int getTargetCount() {
+            return 1;
+        }
+
+        @Override
+        public int getTrackedTargetId(int index) {
+            return ID;
+        }
+
+        @Override
+        public String getTargetName(int index) {
+            return "sp0";
+        }
+
+        @Override
+        public void getTargetSize(int index, float[] outSize) {
+            outSize[0] = 0.3f;
+            outSize[1] = 0.2f;
+        }
+
+        @Override
+        public void getPose(int index, float[] outPose) {
+        }
+    }
+}
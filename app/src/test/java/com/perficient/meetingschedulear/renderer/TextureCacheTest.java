@@ -0,0 +1,172 @@
+package com.perficient.meetingschedulear.renderer;
+
+import com.perficient.meetingschedulear.model.MeetingRoomInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the LRU order, the frame pinning and the content check of the cache, with a fake releaser
+ * in place of GL.
+ */
+public class TextureCacheTest {
+
+    private List<String> mReleased;
+    private GLResourceRegistry mRegistry;
+    private TextureCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        mReleased = new ArrayList<>();
+        mRegistry = new GLResourceRegistry(new GLResourceRegistry.Releaser() {
+            @Override
+            public void release(int type, int handle) {
+                mReleased.add(type + ":" + handle);
+            }
+        });
+        mCache = new TextureCache(mRegistry, 300);
+    }
+
+    @Test
+    public void overBudget_evictsTheLeastRecentlyUsed() throws Exception {
+        putFrame("a", 1, 100);
+        putFrame("b", 2, 100);
+        putFrame("c", 3, 100);
+
+        mCache.beginFrame();
+        assertEquals(1, mCache.get("a"));
+        putFrame("d", 4, 100);
+
+        assertEquals(0, mCache.get("b"));
+        assertEquals(1, mCache.get("a"));
+        assertEquals(Arrays.asList("0:2"), mReleased);
+        assertEquals(300, mCache.getSizeBytes());
+        assertEquals(1, mCache.getEvictionCount());
+    }
+
+    @Test
+    public void texturesOfTheFrame_areNotEvicted() throws Exception {
+        mCache.beginFrame();
+        put("a", 1, 200);
+        put("b", 2, 200);
+        put("c", 3, 200);
+
+        // all drawn in this frame, over budget until the next one
+        assertEquals(600, mCache.getSizeBytes());
+        assertTrue(mReleased.isEmpty());
+
+        mCache.beginFrame();
+        mCache.get("c");
+        put("d", 4, 100);
+        assertEquals(Arrays.asList("0:1", "0:2"), mReleased);
+        assertEquals(300, mCache.getSizeBytes());
+    }
+
+    @Test
+    public void setBudgetBytes_trims() throws Exception {
+        putFrame("a", 1, 100);
+        putFrame("b", 2, 100);
+        mCache.beginFrame();
+
+        mCache.setBudgetBytes(150);
+
+        assertFalse(mCache.contains("a"));
+        assertTrue(mCache.contains("b"));
+        assertEquals(100, mCache.getSizeBytes());
+    }
+
+    @Test
+    public void trim_untilTheRegistryFitsItsBudget() throws Exception {
+        putFrame("a", 1, 100);
+        putFrame("b", 2, 100);
+        // a pixel buffer of the capture takes the room of the textures
+        mRegistry.register(GLResourceRegistry.BUFFER, 9, 150);
+        mRegistry.setBudgetBytes(300);
+        mCache.beginFrame();
+        assertTrue(mRegistry.isOverBudget());
+
+        assertEquals(100, mCache.trim(mRegistry.getLiveBytes() - mRegistry.getBudgetBytes()));
+
+        assertFalse(mRegistry.isOverBudget());
+        assertFalse(mCache.contains("a"));
+        assertTrue(mCache.contains("b"));
+        assertEquals(Arrays.asList("0:1"), mReleased);
+    }
+
+    @Test
+    public void trim_keepsTheTexturesOfTheFrame() throws Exception {
+        putFrame("a", 1, 100);
+        putFrame("b", 2, 100);
+
+        // "b" is drawn in this frame
+        assertEquals(100, mCache.trim(200));
+        assertTrue(mCache.contains("b"));
+    }
+
+    @Test
+    public void put_sameKey_replacesTheTexture() throws Exception {
+        putFrame("a", 1, 100);
+        putFrame("a", 2, 50);
+
+        assertEquals(2, mCache.get("a"));
+        assertEquals(50, mCache.getSizeBytes());
+        assertEquals(Arrays.asList("0:1"), mReleased);
+    }
+
+    @Test
+    public void rekey_movesTheTexture() throws Exception {
+        List<String> lines = Arrays.asList("room", "9:00 standup");
+        putFrame("old", 1, 100);
+        putFrame("new", 2, 80);
+
+        assertEquals(1, mCache.rekey("old", "new", lines));
+
+        assertFalse(mCache.contains("old"));
+        assertEquals(1, mCache.get("new", lines));
+        // the texture which was under the new key is deleted
+        assertEquals(Arrays.asList("0:2"), mReleased);
+        assertEquals(100, mCache.getSizeBytes());
+        assertEquals(0, mCache.rekey("missing", "other", lines));
+    }
+
+    @Test
+    public void get_otherLinesUnderTheSameKey_isAMiss() throws Exception {
+        List<String> lines = new ArrayList<>(Arrays.asList("room", "9:00 standup"));
+        mCache.beginFrame();
+        mCache.put("key", 1, 100, null, lines);
+
+        // equal lines of another list are a hit
+        assertEquals(1, mCache.get("key", new ArrayList<>(lines)));
+        assertEquals(0, mCache.get("key", Arrays.asList("room", "10:00 review")));
+        assertEquals(1, mCache.getCollisionCount());
+        // no lines to check, e.g. a background
+        assertEquals(1, mCache.get("key"));
+    }
+
+    @Test
+    public void keys() throws Exception {
+        MeetingRoomInfo room = new MeetingRoomInfo("Room A", Arrays.asList("9:00 standup"));
+        String key = TextureCache.keyOf(room, 7, 2);
+
+        assertEquals(TextureCache.slotOf(room, 7), TextureCache.slotOfKey(key));
+        assertEquals(2, TextureCache.levelOfKey(key));
+        assertFalse(key.equals(TextureCache.keyOf(
+                new MeetingRoomInfo("Room A", Arrays.asList("10:00 review")), 7, 2)));
+    }
+
+    private void putFrame(String key, int texture, int byteCount) {
+        mCache.beginFrame();
+        put(key, texture, byteCount);
+    }
+
+    private void put(String key, int texture, int byteCount) {
+        mRegistry.register(GLResourceRegistry.TEXTURE, texture, byteCount);
+        mCache.put(key, texture, byteCount);
+    }
+}
@@ -0,0 +1,340 @@
+package com.perficient.meetingschedulear.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the lifecycle with a fake host which records any call out of order or at the same time
+ * as another, including stress tests racing attach and detach against a rendering thread.
+ */
+public class ARLifecycleTest {
+
+    private static final int RACING_ITERATIONS = 20000;
+    private static final int CYCLES = 300;
+    private static final long TIMEOUT_MS = 5000;
+
+    private FakeHost mHost;
+    private ARLifecycle mLifecycle;
+
+    @Before
+    public void setUp() throws Exception {
+        mHost = new FakeHost();
+        mLifecycle = new ARLifecycle(mHost);
+    }
+
+    @Test
+    public void attach_thenFrames_initializesOnceAndRenders() throws Exception {
+        assertTrue(mLifecycle.attach());
+        assertFalse(mLifecycle.attach());
+        mLifecycle.onSurfaceCreated();
+        mLifecycle.onSurfaceChanged(1280, 720);
+        for (int i = 0; i < 3; i++) {
+            mLifecycle.onDrawFrame();
+        }
+
+        assertEquals(ARLifecycle.RUNNING, mLifecycle.getState());
+        assertEquals(1, mHost.mInitializeCount.get());
+        assertEquals(3, mHost.mRenderCount.get());
+        assertEquals(1280, mHost.mWidth);
+        assertNoErrors();
+    }
+
+    @Test
+    public void attachThenDetach_beforeDrain_neverOpensCamera() throws Exception {
+        mLifecycle.attach();
+        mLifecycle.detach();
+        mLifecycle.drain();
+
+        assertEquals(ARLifecycle.STOPPED, mLifecycle.getState());
+        assertEquals(0, mHost.mInitializeCount.get());
+        assertEquals(0, mHost.mDisposeCount.get());
+        assertEquals(1, mLifecycle.getSkippedCommandCount());
+        assertNoErrors();
+    }
+
+    @Test
+    public void detachThenAttach_beforeDrain_keepsRunning() throws Exception {
+        mLifecycle.attach();
+        mLifecycle.onSurfaceCreated();
+        mLifecycle.detach();
+        mLifecycle.attach();
+        mLifecycle.onDrawFrame();
+
+        assertEquals(ARLifecycle.RUNNING, mLifecycle.getState());
+        assertTrue(mLifecycle.isGLReady());
+        assertEquals(1, mHost.mInitializeCount.get());
+        assertEquals(0, mHost.mDisposeCount.get());
+        assertEquals(1, mHost.mRenderCount.get());
+        assertNoErrors();
+    }
+
+    @Test
+    public void initializeFails_isFailed_andDetachDisposes() throws Exception {
+        mHost.mInitializeResult = false;
+        mLifecycle.attach();
+        mLifecycle.drain();
+        assertEquals(ARLifecycle.FAILED, mLifecycle.getState());
+        assertEquals(0, mHost.mStartCount.get());
+
+        mLifecycle.detach();
+        mLifecycle.drain();
+        assertEquals(ARLifecycle.STOPPED, mLifecycle.getState());
+        assertEquals(1, mHost.mDisposeCount.get());
+        assertNoErrors();
+    }
+
+    @Test
+    public void detach_releasesGLBeforeDisposing() throws Exception {
+        mLifecycle.attach();
+        mLifecycle.onSurfaceCreated();
+        mLifecycle.detach();
+        mLifecycle.drain();
+
+        assertFalse(mLifecycle.isGLReady());
+        assertEquals(1, mHost.mReleaseGLCount.get());
+        assertEquals(1, mHost.mDisposeCount.get());
+        // no frame without GL objects
+        mLifecycle.onDrawFrame();
+        assertEquals(0, mHost.mRenderCount.get());
+        assertNoErrors();
+    }
+
+    @Test
+    public void stress_racingAttachDetach_againstRendering() throws Exception {
+        final AtomicBoolean rendering = new AtomicBoolean(true);
+        Thread glThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (rendering.get()) {
+                    if (!mLifecycle.isGLReady()) {
+                        // a new context after the objects are released
+                        mLifecycle.onSurfaceCreated();
+                    }
+                    mLifecycle.onDrawFrame();
+                }
+            }
+        }, "GL");
+        glThread.start();
+
+        Thread[] uiThreads = new Thread[2];
+        for (int t = 0; t < uiThreads.length; t++) {
+            final Random random = new Random(t);
+            uiThreads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < RACING_ITERATIONS; i++) {
+                        if (random.nextBoolean()) {
+                            mLifecycle.attach();
+                        } else {
+                            mLifecycle.detach();
+                        }
+                        if (random.nextInt(8) == 0) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }, "UI-" + t);
+            uiThreads[t].start();
+        }
+        for (Thread thread : uiThreads) {
+            thread.join(TIMEOUT_MS);
+            assertFalse(thread.isAlive());
+        }
+
+        // the last request wins
+        mLifecycle.attach();
+        waitForState(ARLifecycle.RUNNING);
+        rendering.set(false);
+        glThread.join(TIMEOUT_MS);
+        assertFalse(glThread.isAlive());
+
+        assertNoErrors();
+        assertTrue(mHost.mInitialized);
+        assertEquals(mHost.mInitializeCount.get() - 1, mHost.mDisposeCount.get());
+        assertTrue(mHost.mRenderCount.get() > 0);
+
+        mLifecycle.detach();
+        mLifecycle.drainWithoutGL();
+        assertEquals(ARLifecycle.STOPPED, mLifecycle.getState());
+        assertFalse(mHost.mInitialized);
+        assertEquals(mHost.mInitializeCount.get(), mHost.mDisposeCount.get());
+        assertNoErrors();
+    }
+
+    /**
+     * The way GLView drives it: a GL thread per attach, which exits on detach
+     */
+    @Test
+    public void stress_attachDetachCycles_likeGLView() throws Exception {
+        Random random = new Random(42);
+        for (int cycle = 0; cycle < CYCLES; cycle++) {
+            final AtomicBoolean rendering = new AtomicBoolean(true);
+            Thread glThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    mLifecycle.onSurfaceCreated();
+                    mLifecycle.onSurfaceChanged(1280, 720);
+                    while (rendering.get()) {
+                        mLifecycle.onDrawFrame();
+                    }
+                }
+            }, "GL-" + cycle);
+
+            assertTrue(mLifecycle.attach());
+            glThread.start();
+            // detach at any point, before or after the camera is opened
+            if (random.nextBoolean()) {
+                Thread.sleep(random.nextInt(2));
+            }
+            assertTrue(mLifecycle.detach());
+            if (random.nextBoolean()) {
+                Thread.sleep(random.nextInt(2));
+            }
+            rendering.set(false);
+            glThread.join(TIMEOUT_MS);
+            assertFalse(glThread.isAlive());
+            mLifecycle.drainWithoutGL();
+
+            assertEquals(ARLifecycle.STOPPED, mLifecycle.getState());
+            assertFalse(mHost.mInitialized);
+            assertNoErrors();
+        }
+        assertEquals(mHost.mInitializeCount.get(), mHost.mDisposeCount.get());
+    }
+
+    private void waitForState(int state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (mLifecycle.getState() != state) {
+            assertTrue("timed out waiting for " + ARLifecycle.stateName(state) + ", " + mLifecycle,
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void assertNoErrors() {
+        assertTrue("errors: " + mHost.mErrors, mHost.mErrors.isEmpty());
+    }
+
+    /**
+     * Records the calls made out of order or at the same time
+     */
+    private static class FakeHost implements ARLifecycle.Host {
+
+        private final Queue<String> mErrors = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger mInside = new AtomicInteger();
+
+        private final AtomicInteger mInitializeCount = new AtomicInteger();
+        private final AtomicInteger mStartCount = new AtomicInteger();
+        private final AtomicInteger mDisposeCount = new AtomicInteger();
+        private final AtomicInteger mReleaseGLCount = new AtomicInteger();
+        private final AtomicInteger mRenderCount = new AtomicInteger();
+
+        private volatile boolean mInitializeResult = true;
+
+        private volatile boolean mInitialized;
+        private volatile boolean mGLReady;
+        private volatile int mWidth;
+
+        private void enter(String method) {
+            if (mInside.incrementAndGet() != 1) {
+                mErrors.offer(method + " called while another call is running");
+            }
+        }
+
+        private void exit() {
+            mInside.decrementAndGet();
+        }
+
+        @Override
+        public boolean initialize() {
+            enter("initialize");
+            if (mInitialized) {
+                mErrors.offer("initialize called twice");
+            }
+            mInitialized = true;
+            mInitializeCount.incrementAndGet();
+            // opening the camera is slow
+            Thread.yield();
+            exit();
+            return mInitializeResult;
+        }
+
+        @Override
+        public boolean start() {
+            enter("start");
+            if (!mInitialized) {
+                mErrors.offer("start called before initialize");
+            }
+            mStartCount.incrementAndGet();
+            exit();
+            return true;
+        }
+
+        @Override
+        public boolean stop() {
+            enter("stop");
+            if (!mInitialized) {
+                mErrors.offer("stop called before initialize");
+            }
+            exit();
+            return true;
+        }
+
+        @Override
+        public void dispose() {
+            enter("dispose");
+            if (!mInitialized) {
+                mErrors.offer("dispose called before initialize");
+            }
+            mInitialized = false;
+            // the GL objects not released are forgotten
+            mGLReady = false;
+            mDisposeCount.incrementAndGet();
+            exit();
+        }
+
+        @Override
+        public void initGL() {
+            enter("initGL");
+            mGLReady = true;
+            exit();
+        }
+
+        @Override
+        public void resizeGL(int width, int height) {
+            enter("resizeGL");
+            mWidth = width;
+            exit();
+        }
+
+        @Override
+        public void releaseGL() {
+            enter("releaseGL");
+            if (!mGLReady) {
+                mErrors.offer("releaseGL called without GL objects");
+            }
+            mGLReady = false;
+            mReleaseGLCount.incrementAndGet();
+            exit();
+        }
+
+        @Override
+        public void render() {
+            enter("render");
+            if (!mGLReady) {
+                mErrors.offer("render called without GL objects");
+            }
+            mRenderCount.incrementAndGet();
+            exit();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.perficient.meetingschedulear.util;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Microbenchmarks of the math run per board per frame, they check that each operation allocates
+ * nothing, and the time of it is in the message of a failure. The times are only comparable on
+ * the same machine.
+ */
+@Ignore("benchmark, run it by hand")
+public class MatrixMathBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int ITERATIONS = 200000;
+
+    private static final float[] PROJECTION = {
+            0.974f, 0, 0, 0,
+            0, 1.732f, 0, 0,
+            0, 0, -1.0008f, -1,
+            0, 0, -0.4002f, 0};
+
+    private float[] mPose;
+    private float[] mOut;
+    private float[] mRay;
+
+    /**
+     * Keeps the results used so the JIT can't drop the loops
+     */
+    private float mSink;
+
+    private com.sun.management.ThreadMXBean mThreads;
+
+    @Before
+    public void setUp() throws Exception {
+        mPose = new float[]{
+                0, 0, -1, 0,
+                0, 1, 0, 0,
+                1, 0, 0, 0,
+                0.5f, -0.25f, -2f, 1};
+        mOut = new float[16];
+        mRay = new float[6];
+        mThreads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue("allocation counting is not supported by this JVM", mThreads.isThreadAllocatedMemorySupported());
+        mThreads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void multiply() throws Exception {
+        run("multiply", new Runnable() {
+            @Override
+            public void run() {
+                MatrixMath.multiply(mOut, PROJECTION, mPose);
+                mSink += mOut[14];
+            }
+        });
+    }
+
+    @Test
+    public void invert() throws Exception {
+        run("invert", new Runnable() {
+            @Override
+            public void run() {
+                MatrixMath.invert(mOut, mPose);
+                mSink += mOut[14];
+            }
+        });
+    }
+
+    @Test
+    public void invertRigid() throws Exception {
+        run("invertRigid", new Runnable() {
+            @Override
+            public void run() {
+                MatrixMath.invertRigid(mOut, mPose);
+                mSink += mOut[14];
+            }
+        });
+    }
+
+    @Test
+    public void project() throws Exception {
+        MatrixMath.multiply(mOut, PROJECTION, mPose);
+        final float[] mvp = mOut.clone();
+        run("project", new Runnable() {
+            @Override
+            public void run() {
+                MatrixMath.project(mRay, mvp, 0.2f, 0.1f, 0.1f, 1280, 720);
+                mSink += mRay[0];
+            }
+        });
+    }
+
+    @Test
+    public void screenRayAndIntersect() throws Exception {
+        final float[] inverse = new float[16];
+        assertTrue(MatrixMath.invert(inverse, PROJECTION));
+        final float[] inversePose = new float[16];
+        MatrixMath.invertRigid(inversePose, mPose);
+        run("screenRay + transformRay + intersectRect", new Runnable() {
+            @Override
+            public void run() {
+                MatrixMath.screenRay(mRay, inverse, 700, 300, 1280, 720);
+                MatrixMath.transformRay(mRay, inversePose, mRay);
+                mSink += MatrixMath.intersectRect(null, mRay, 1f, 0.5f, 0.1f);
+            }
+        });
+    }
+
+    private void run(String name, Runnable operation) {
+        long threadId = Thread.currentThread().getId();
+        long elapsed = 0;
+        long bytes = 0;
+        // the earlier rounds warm up the JIT, only the last one counts
+        for (int round = 0; round < ROUNDS; round++) {
+            long bytesBefore = mThreads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int i = 0; i < ITERATIONS; i++) {
+                operation.run();
+            }
+            elapsed = System.nanoTime() - start;
+            bytes = mThreads.getThreadAllocatedBytes(threadId) - bytesBefore;
+        }
+
+        assertEquals(name + " bytes allocated at " + (double) elapsed / ITERATIONS + " ns/op, sink " + mSink,
+                0, bytes);
+    }
+}
@@ -0,0 +1,220 @@
+package com.perficient.meetingschedulear.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MatrixMathTest {
+
+    private static final float DELTA = 1e-4f;
+
+    /**
+     * Perspective projection with fovy of 60 degrees, aspect of 16:9, near 0.2 and far 500
+     */
+    private static final float[] PROJECTION = {
+            0.974f, 0, 0, 0,
+            0, 1.732f, 0, 0,
+            0, 0, -1.0008f, -1,
+            0, 0, -0.4002f, 0};
+
+    private float[] mPose;
+    private float[] mOut;
+
+    @Before
+    public void setUp() throws Exception {
+        // rotated 90 degrees around y, then moved 2 units in front of the camera
+        mPose = new float[]{
+                0, 0, -1, 0,
+                0, 1, 0, 0,
+                1, 0, 0, 0,
+                0.5f, -0.25f, -2f, 1};
+        mOut = new float[16];
+    }
+
+    @Test
+    public void multiply_byIdentity_isTheSame() throws Exception {
+        float[] identity = new float[16];
+        MatrixMath.setIdentity(identity);
+
+        MatrixMath.multiply(mOut, identity, mPose);
+        assertArrayEquals(mPose, mOut, 0);
+        MatrixMath.multiply(mOut, mPose, identity);
+        assertArrayEquals(mPose, mOut, 0);
+    }
+
+    @Test
+    public void multiply_matchesTransformingTwice() throws Exception {
+        MatrixMath.multiply(mOut, PROJECTION, mPose);
+
+        float[] eye = new float[4];
+        float[] clip = new float[4];
+        float[] combined = new float[4];
+        MatrixMath.transformPoint(eye, 0, mPose, 0.3f, -0.7f, 0.1f);
+        MatrixMath.transformPoint(combined, 0, mOut, 0.3f, -0.7f, 0.1f);
+        clip[0] = PROJECTION[0] * eye[0] + PROJECTION[4] * eye[1] + PROJECTION[8] * eye[2] + PROJECTION[12] * eye[3];
+        clip[1] = PROJECTION[1] * eye[0] + PROJECTION[5] * eye[1] + PROJECTION[9] * eye[2] + PROJECTION[13] * eye[3];
+        clip[2] = PROJECTION[2] * eye[0] + PROJECTION[6] * eye[1] + PROJECTION[10] * eye[2] + PROJECTION[14] * eye[3];
+        clip[3] = PROJECTION[3] * eye[0] + PROJECTION[7] * eye[1] + PROJECTION[11] * eye[2] + PROJECTION[15] * eye[3];
+        assertArrayEquals(clip, combined, DELTA);
+    }
+
+    @Test
+    public void multiply_intoInput_isTheSame() throws Exception {
+        float[] expected = new float[16];
+        MatrixMath.multiply(expected, PROJECTION, mPose);
+
+        MatrixMath.multiply(mPose, PROJECTION, mPose);
+        assertArrayEquals(expected, mPose, 0);
+    }
+
+    @Test
+    public void invert_timesMatrix_isIdentity() throws Exception {
+        float[] identity = new float[16];
+        MatrixMath.setIdentity(identity);
+
+        assertTrue(MatrixMath.invert(mOut, PROJECTION));
+        float[] product = new float[16];
+        MatrixMath.multiply(product, mOut, PROJECTION);
+        assertArrayEquals(identity, product, DELTA);
+
+        assertTrue(MatrixMath.invert(mOut, mPose));
+        MatrixMath.multiply(product, mPose, mOut);
+        assertArrayEquals(identity, product, DELTA);
+    }
+
+    @Test
+    public void invert_singular_returnsFalse() throws Exception {
+        float[] singular = new float[16];
+        mOut[0] = 42;
+
+        assertFalse(MatrixMath.invert(mOut, singular));
+        assertEquals(42, mOut[0], 0);
+    }
+
+    @Test
+    public void invertRigid_matchesInvert() throws Exception {
+        float[] expected = new float[16];
+        assertTrue(MatrixMath.invert(expected, mPose));
+
+        MatrixMath.invertRigid(mOut, mPose);
+        assertArrayEquals(expected, mOut, DELTA);
+
+        MatrixMath.invertRigid(mPose, mPose);
+        assertArrayEquals(expected, mPose, DELTA);
+    }
+
+    @Test
+    public void project_centerOfView_isCenterOfScreen() throws Exception {
+        float[] identity = new float[16];
+        MatrixMath.setIdentity(identity);
+        MatrixMath.multiply(mOut, PROJECTION, identity);
+
+        float[] screen = new float[3];
+        assertTrue(MatrixMath.project(screen, mOut, 0, 0, -5, 1280, 720));
+        assertEquals(640, screen[0], DELTA);
+        assertEquals(360, screen[1], DELTA);
+        assertTrue(screen[2] > 0 && screen[2] < 1);
+
+        // up in view is up on screen, where y is smaller
+        assertTrue(MatrixMath.project(screen, mOut, 0, 1, -5, 1280, 720));
+        assertTrue(screen[1] < 360);
+    }
+
+    @Test
+    public void project_behindCamera_returnsFalse() throws Exception {
+        float[] screen = new float[3];
+        assertFalse(MatrixMath.project(screen, PROJECTION, 0, 0, 1, 1280, 720));
+    }
+
+    @Test
+    public void screenRay_throughProjectedPoint_hitsIt() throws Exception {
+        float[] screen = new float[3];
+        assertTrue(MatrixMath.project(screen, PROJECTION, 0.4f, -0.3f, -3, 1280, 720));
+
+        float[] inverse = new float[16];
+        assertTrue(MatrixMath.invert(inverse, PROJECTION));
+        float[] ray = new float[6];
+        assertTrue(MatrixMath.screenRay(ray, inverse, screen[0], screen[1], 1280, 720));
+
+        // the direction is normalized, and from the camera through the point
+        assertEquals(1, MatrixMath.dot(ray, 3, ray, 3), DELTA);
+        float t = (-3 - ray[2]) / ray[5];
+        assertEquals(0.4f, ray[0] + ray[3] * t, DELTA);
+        assertEquals(-0.3f, ray[1] + ray[4] * t, DELTA);
+    }
+
+    @Test
+    public void intersectRect_rayInTargetSpace_hitsTheBoard() throws Exception {
+        float[] mvp = new float[16];
+        MatrixMath.multiply(mvp, PROJECTION, mPose);
+        float[] screen = new float[3];
+        // a point on the front face of a 1 x 0.5 board with the depth of 0.2
+        assertTrue(MatrixMath.project(screen, mvp, 0.2f, 0.1f, 0.1f, 1280, 720));
+
+        float[] inverse = new float[16];
+        assertTrue(MatrixMath.invert(inverse, PROJECTION));
+        float[] ray = new float[6];
+        assertTrue(MatrixMath.screenRay(ray, inverse, screen[0], screen[1], 1280, 720));
+        float[] inversePose = new float[16];
+        MatrixMath.invertRigid(inversePose, mPose);
+        MatrixMath.transformRay(ray, inversePose, ray);
+
+        float[] hit = new float[2];
+        assertTrue(MatrixMath.intersectRect(hit, ray, 1f, 0.5f, 0.1f) > 0);
+        assertEquals(0.2f, hit[0], DELTA);
+        assertEquals(0.1f, hit[1], DELTA);
+
+        assertEquals(-1, MatrixMath.intersectRect(hit, ray, 0.2f, 0.1f, 0.1f), 0);
+    }
+
+    @Test
+    public void intersectRect_parallelOrBehind_misses() throws Exception {
+        float[] parallel = {0, 0, 1, 1, 0, 0};
+        assertEquals(-1, MatrixMath.intersectRect(null, parallel, 10, 10, 0), 0);
+
+        float[] away = {0, 0, 1, 0, 0, 1};
+        assertEquals(-1, MatrixMath.intersectRect(null, away, 10, 10, 0), 0);
+    }
+
+    @Test
+    public void normalize_returnsLength() throws Exception {
+        float[] v = {0, 3, 4};
+        assertEquals(5, MatrixMath.normalize(v, 0), DELTA);
+        assertArrayEquals(new float[]{0, 0.6f, 0.8f}, v, DELTA);
+
+        float[] zero = {0, 0, 0};
+        assertEquals(0, MatrixMath.normalize(zero, 0), 0);
+        assertArrayEquals(new float[]{0, 0, 0}, zero, 0);
+    }
+
+    @Test
+    public void lerp_interpolates() throws Exception {
+        float[] a = {0, 10, -2};
+        float[] b = {1, 20, 2};
+        float[] out = new float[3];
+
+        MatrixMath.lerp(out, a, b, 0.25f, 3);
+        assertArrayEquals(new float[]{0.25f, 12.5f, -1}, out, DELTA);
+    }
+
+    @Test
+    public void toQuaternion_roundTrip() throws Exception {
+        float[] q = new float[4];
+        MatrixMath.toQuaternion(q, 0, mPose);
+        MatrixMath.setRotationTranslation(mOut, q, 0, 0.5f, -0.25f, -2f);
+        assertArrayEquals(mPose, mOut, DELTA);
+
+        // half turns, where the trace is -1 and each branch is taken
+        float[][] halfTurns = {
+                {1, 0, 0, 0, 0, -1, 0, 0, 0, 0, -1, 0, 0, 0, 0, 1},
+                {-1, 0, 0, 0, 0, 1, 0, 0, 0, 0, -1, 0, 0, 0, 0, 1},
+                {-1, 0, 0, 0, 0, -1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1}};
+        for (float[] m : halfTurns) {
+            MatrixMath.toQuaternion(q, 0, m);
+            assertEquals(1f, MatrixMath.normalizeQuaternion(q, 0), DELTA);
+            MatrixMath.setRotationTranslation(mOut, q, 0, 0, 0, 0);
+            assertArrayEquals(m, mOut, DELTA);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.perficient.meetingschedulear.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the machine on a synthetic clock at 30 fps, with or without a target in the frames.
+ */
+public class PowerStateMachineTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long FRAME_NANOS = 33333333L;
+
+    /**
+     * Each run ends up to a frame late
+     */
+    private static final long TOLERANCE = 3 * FRAME_NANOS;
+
+    private PowerStateMachine mMachine;
+
+    private long mNow;
+
+    @Before
+    public void setUp() throws Exception {
+        mMachine = new PowerStateMachine();
+        mMachine.setIdleTimeout(10);
+        mMachine.setIdleFrameRate(10);
+        mMachine.reset(mNow);
+    }
+
+    @Test
+    public void targetSeen_staysActive() throws Exception {
+        assertFalse(run(60 * SECOND, 1));
+
+        assertEquals(PowerStateMachine.ACTIVE, mMachine.getState());
+        assertEquals(0, mMachine.getFrameIntervalNanos());
+    }
+
+    @Test
+    public void noTarget_goesIdle_afterTheTimeout() throws Exception {
+        assertTrue(run(60 * SECOND, 0));
+
+        assertEquals(PowerStateMachine.IDLE, mMachine.getState());
+        assertEquals(10 * SECOND, mNow, TOLERANCE);
+        assertEquals(100000000L, mMachine.getFrameIntervalNanos());
+        // stays idle, the trackers are not paused unless enabled
+        assertFalse(run(120 * SECOND, 0));
+    }
+
+    @Test
+    public void targetSeen_wakesAtOnce() throws Exception {
+        run(60 * SECOND, 0);
+
+        assertTrue(run(SECOND, 1));
+        assertEquals(PowerStateMachine.ACTIVE, mMachine.getState());
+        assertEquals(1, mMachine.getWakeCount());
+    }
+
+    @Test
+    public void deepIdle_pausesTheTrackers_andOnlyMotionWakes() throws Exception {
+        mMachine.setDeepIdle(true, 30);
+        run(60 * SECOND, 0);
+        assertTrue(run(60 * SECOND, 0));
+        assertEquals(PowerStateMachine.DEEP_IDLE, mMachine.getState());
+        assertEquals(30 * SECOND, mNow, TOLERANCE);
+
+        mMachine.onMotion();
+        assertTrue(mMachine.isWakePending());
+        assertTrue(run(FRAME_NANOS, 0));
+        assertEquals(PowerStateMachine.ACTIVE, mMachine.getState());
+        assertFalse(mMachine.isWakePending());
+    }
+
+    @Test
+    public void motion_putsOffIdle() throws Exception {
+        run(8 * SECOND, 0);
+        mMachine.onMotion();
+        // motion while active is not pending, the frames are not limited
+        assertFalse(mMachine.isWakePending());
+
+        long moved = mNow;
+        assertTrue(run(60 * SECOND, 0));
+        assertEquals(moved + 10 * SECOND, mNow, TOLERANCE);
+    }
+
+    @Test
+    public void timeInEachState_isRecorded() throws Exception {
+        mMachine.setDeepIdle(true, 30);
+        run(5 * SECOND, 1);
+        run(40 * SECOND, 0);
+        run(40 * SECOND, 0);
+        run(5 * SECOND, 0);
+
+        assertEquals(15 * SECOND, mMachine.getTimeInState(PowerStateMachine.ACTIVE), TOLERANCE);
+        assertEquals(20 * SECOND, mMachine.getTimeInState(PowerStateMachine.IDLE), TOLERANCE);
+        assertEquals(5 * SECOND, mMachine.getTimeInState(PowerStateMachine.DEEP_IDLE), TOLERANCE);
+    }
+
+    @Test
+    public void reset_doesNotCountTheStoppedTime() throws Exception {
+        run(5 * SECOND, 1);
+        mNow += 100 * SECOND;
+        mMachine.reset(mNow);
+        run(5 * SECOND, 1);
+
+        assertEquals(10 * SECOND, mMachine.getTimeInState(PowerStateMachine.ACTIVE), TOLERANCE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setIdleTimeout_rejectsZero() throws Exception {
+        mMachine.setIdleTimeout(0);
+    }
+
+    /**
+     * Run frames until the state changes or the duration is over
+     *
+     * @param targetCount targets seen in each frame
+     * @return the state changed
+     */
+    private boolean run(long duration, int targetCount) {
+        long end = mNow + duration;
+        while (mNow < end) {
+            mNow += FRAME_NANOS;
+            if (mMachine.update(mNow, targetCount)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,151 @@
+package com.perficient.meetingschedulear.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the governor on a synthetic clock, with the camera and the renderer as slow as needed.
+ */
+public class QualityGovernorTest {
+
+    private static final long SECOND = 1000000000L;
+
+    private static final int[] WIDTHS = {1920, 1280, 1024, 960, 800, 640, 640, 320, 176};
+    private static final int[] HEIGHTS = {1080, 720, 768, 540, 600, 480, 360, 240, 144};
+
+    private QualityGovernor mGovernor;
+
+    private long mNow;
+
+    private double mCameraTime;
+
+    @Before
+    public void setUp() throws Exception {
+        mGovernor = new QualityGovernor();
+        mGovernor.setSupportedSizes(WIDTHS, HEIGHTS);
+        mGovernor.setTargetFrameRate(30);
+    }
+
+    @Test
+    public void ladder_startsAt720p_andKeepsTheAspect() throws Exception {
+        assertEquals(3, mGovernor.getTierCount());
+        assertEquals(0, mGovernor.getTier());
+        assertSize(1280, 720);
+        mGovernor.onFrame(0, 0, Double.NaN);
+
+        assertEquals("QualityGovernor{tier=0 of [1280x720, 960x540, 640x360], render=0.0ms, tracking=0.0ms, changes=0}",
+                mGovernor.toString());
+    }
+
+    @Test
+    public void ladder_withoutSizesOfTheSameAspect_takesAny() throws Exception {
+        mGovernor.setSupportedSizes(new int[]{1280, 640, 320}, new int[]{720, 480, 240});
+
+        assertEquals(3, mGovernor.getTierCount());
+        mGovernor.onFrame(0, 0, Double.NaN);
+        assertTrue(mGovernor.toString(), mGovernor.toString().contains("[1280x720, 640x480, 320x240]"));
+    }
+
+    @Test
+    public void ladder_withoutSizes_is720p() throws Exception {
+        mGovernor.setSupportedSizes(new int[0], new int[0]);
+
+        assertEquals(1, mGovernor.getTierCount());
+        assertSize(1280, 720);
+    }
+
+    @Test
+    public void smoothFrames_keepTheTier() throws Exception {
+        assertFalse(run(30 * SECOND, 33, 10));
+
+        assertEquals(0, mGovernor.getTier());
+        assertEquals(33.3f, mGovernor.getTrackingTime(), 0.5f);
+        assertEquals(10f, mGovernor.getRenderTime(), 0.1f);
+    }
+
+    @Test
+    public void slowTracking_stepsDown_afterTheDwell() throws Exception {
+        // 15 fps from the camera, the tracker can't keep up
+        assertTrue(run(10 * SECOND, 66, 10));
+
+        assertEquals(1, mGovernor.getTier());
+        assertSize(960, 540);
+        assertTrue("stepped down before the dwell", mNow >= 2 * SECOND);
+    }
+
+    @Test
+    public void slowRendering_stepsDownToTheLowest() throws Exception {
+        assertTrue(run(10 * SECOND, 33, 30));
+        assertTrue(run(10 * SECOND, 33, 30));
+        assertFalse(run(10 * SECOND, 33, 30));
+
+        assertEquals(2, mGovernor.getTier());
+        assertSize(640, 360);
+        assertEquals(2, mGovernor.getChangeCount());
+    }
+
+    @Test
+    public void fastFrames_stepUp_afterTheHold() throws Exception {
+        run(10 * SECOND, 66, 10);
+        assertEquals(1, mGovernor.getTier());
+
+        long before = mNow;
+        assertTrue(run(20 * SECOND, 33, 5));
+        assertEquals(0, mGovernor.getTier());
+        assertTrue("stepped up before the hold", mNow - before >= 5 * SECOND);
+    }
+
+    @Test
+    public void revertedStepUp_waitsLongerNextTime() throws Exception {
+        run(10 * SECOND, 66, 10);
+        long firstWait = timeToStepUp();
+        // the tier above is too slow again
+        assertTrue(run(5 * SECOND, 66, 10));
+        assertEquals(1, mGovernor.getTier());
+
+        // the dwell is the same, the hold is twice as long
+        long secondWait = timeToStepUp();
+        assertTrue("first " + firstWait + ", second " + secondWait, secondWait - firstWait >= 5 * SECOND);
+    }
+
+    @Test
+    public void cameraPause_isNotSlowTracking() throws Exception {
+        run(5 * SECOND, 33, 10);
+        mCameraTime += 30;
+        assertFalse(run(5 * SECOND, 33, 10));
+
+        assertEquals(0, mGovernor.getTier());
+    }
+
+    private long timeToStepUp() {
+        long start = mNow;
+        assertTrue(run(60 * SECOND, 33, 5));
+        return mNow - start;
+    }
+
+    /**
+     * Run frames until the tier changes or the duration is over
+     *
+     * @param frameMs  interval of the camera frames, a frame is rendered for each of them
+     * @param renderMs time to render a frame
+     * @return the tier changed
+     */
+    private boolean run(long duration, int frameMs, int renderMs) {
+        long end = mNow + duration;
+        while (mNow < end) {
+            mNow += frameMs * 1000000L;
+            mCameraTime += frameMs / 1000.0;
+            if (mGovernor.onFrame(mNow, renderMs * 1000000L, mCameraTime)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void assertSize(int width, int height) {
+        assertEquals(width, mGovernor.getWidth());
+        assertEquals(height, mGovernor.getHeight());
+    }
+}
@@ -0,0 +1,182 @@
+package com.perficient.meetingschedulear.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * A building of six floors in a row, each a neighbour of the next, with a poster on each floor.
+ */
+public class ZoneActivatorTest {
+
+    private static final long SECOND = 1000000000L;
+    private static final long FRAME_NANOS = 33333333L;
+
+    private static final int FLOORS = 6;
+
+    private ZoneCatalog mCatalog;
+    private ZoneActivator mActivator;
+    private long mNow;
+
+    @Before
+    public void setUp() throws Exception {
+        mCatalog = new ZoneCatalog();
+        for (int i = 0; i < FLOORS; i++) {
+            mCatalog.addZone("floor" + i, Collections.singletonList("poster" + i));
+        }
+        for (int i = 1; i < FLOORS; i++) {
+            mCatalog.addNeighbours("floor" + i, "floor" + (i - 1));
+        }
+        mActivator = new ZoneActivator(mCatalog);
+        mActivator.reset(mNow);
+    }
+
+    @Test
+    public void catalog_linksNeighboursBothWays() throws Exception {
+        assertEquals(FLOORS, mCatalog.getZoneCount());
+        assertEquals(Arrays.asList(0, 2), mCatalog.getNeighbours(1));
+        assertEquals(Collections.singletonList(4), mCatalog.getNeighbours(5));
+        assertEquals(3, mCatalog.getZoneOf("poster3"));
+        assertEquals(-1, mCatalog.getZoneOf("unknown"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void catalog_rejectsATargetInTwoZones() throws Exception {
+        mCatalog.addZone("wing", Collections.singletonList("poster0"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void catalog_rejectsAnUnknownNeighbour() throws Exception {
+        mCatalog.addNeighbours("floor0", "roof");
+    }
+
+    @Test
+    public void unknownZone_scansOneZoneAtATime() throws Exception {
+        assertTrue(frame(false, null));
+        assertActive(0);
+
+        run(SECOND, false, null);
+        assertActive(1);
+        for (int zone = 2; zone < FLOORS; zone++) {
+            assertTrue(run(SECOND, false, null));
+            assertActive(zone);
+        }
+        run(SECOND, false, null);
+        assertActive(0);
+    }
+
+    @Test
+    public void unknownZone_smallCatalog_activatesAllZones() throws Exception {
+        ZoneCatalog catalog = new ZoneCatalog();
+        catalog.addZone("floor0", Collections.singletonList("poster0"));
+        catalog.addZone("floor1", Collections.singletonList("poster1"));
+        catalog.addZone("floor2", Collections.singletonList("poster2"));
+        catalog.addNeighbours("floor0", "floor1");
+        ZoneActivator activator = new ZoneActivator(catalog);
+        activator.reset(mNow);
+
+        assertEquals(3, activator.getActiveCount());
+        assertFalse(activator.update(mNow + 5 * SECOND, false, null));
+        assertEquals(3, activator.getActiveCount());
+
+        // only the zone found and its neighbours from then on
+        assertTrue(activator.update(mNow + 6 * SECOND, true, "poster2"));
+        assertEquals(1, activator.getActiveCount());
+        assertTrue(activator.isActive(2));
+    }
+
+    @Test
+    public void targetFound_activatesItsZoneAndNeighbours() throws Exception {
+        assertTrue(frame(true, "poster3"));
+
+        assertEquals(3, mActivator.getCurrentZone());
+        assertActive(2, 3, 4);
+        assertEquals(1, mActivator.getSwitchCount());
+        // stays there while a target is seen
+        assertFalse(run(60 * SECOND, true, "poster3"));
+    }
+
+    @Test
+    public void newDetection_switchesTheZone() throws Exception {
+        frame(true, "poster3");
+        run(5 * SECOND, true, "poster3");
+
+        assertTrue(frame(true, "poster4"));
+        assertActive(3, 4, 5);
+        assertEquals(2, mActivator.getSwitchCount());
+    }
+
+    @Test
+    public void nothingSeen_scansTheOtherZones_thenStops() throws Exception {
+        frame(true, "poster3");
+        assertFalse(run(SECOND, false, "poster3"));
+
+        // after the scan delay, the zones away from floor 3 in turn
+        assertTrue(run(2 * SECOND, false, "poster3"));
+        assertActive(0, 2, 3, 4);
+        run(SECOND, false, "poster3");
+        assertActive(1, 2, 3, 4);
+        run(SECOND, false, "poster3");
+        assertActive(2, 3, 4, 5);
+
+        assertTrue(frame(true, "poster3"));
+        assertActive(2, 3, 4);
+    }
+
+    @Test
+    public void setScan_scansMoreZonesAtOnce() throws Exception {
+        mActivator.setScan(2, 1);
+        frame(false, null);
+        assertActive(0, 1);
+        run(SECOND, false, null);
+        assertActive(2, 3);
+        run(SECOND, false, null);
+        assertActive(4, 5);
+    }
+
+    @Test
+    public void setCurrentZone_startsThere() throws Exception {
+        assertTrue(mActivator.setCurrentZone("floor0"));
+        assertFalse(mActivator.setCurrentZone("roof"));
+
+        assertActive(0, 1);
+        assertFalse(run(SECOND, false, null));
+    }
+
+    /**
+     * Run frames until the active zones change or the duration is over
+     *
+     * @return the active zones changed
+     */
+    private boolean run(long duration, boolean targetSeen, String lastFound) {
+        long end = mNow + duration;
+        while (mNow < end) {
+            if (frame(targetSeen, lastFound)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean frame(boolean targetSeen, String lastFound) {
+        mNow += FRAME_NANOS;
+        return mActivator.update(mNow, targetSeen, lastFound);
+    }
+
+    private void assertActive(int... zones) {
+        boolean[] expected = new boolean[FLOORS];
+        for (int zone : zones) {
+            expected[zone] = true;
+        }
+        boolean[] actual = new boolean[FLOORS];
+        for (int zone = 0; zone < FLOORS; zone++) {
+            actual[zone] = mActivator.isActive(zone);
+        }
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+        assertEquals(zones.length, mActivator.getActiveCount());
+    }
+}